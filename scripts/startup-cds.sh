@@ -0,0 +1,35 @@
+#!/bin/sh
+# Builds a class data sharing (AppCDS) archive for faster startup, then compares
+# startup times with and without it.
+#
+# Run from the project root after building into target/classes (Eclipse does this).
+# Works on JDK 10 and later. JDK 10 also needs AppCDS switched on: JAVA_OPTS=-XX:+UseAppCDS
+#
+# Play with the archive using:
+#   java -XX:SharedArchiveFile=target/alistair.jsa -cp "$CP" alistair_game.App
+set -e
+
+S=:
+case "$(uname -s)" in
+    Darwin) NATIVES=lib/lwjgl-2.9.3/native/macosx ;;
+    MINGW*|MSYS*|CYGWIN*) NATIVES=lib/lwjgl-2.9.3/native/windows; S=';' ;;
+    *) NATIVES=lib/lwjgl-2.9.3/native/linux ;;
+esac
+
+# CDS can only archive classes that come from jars
+jar cf target/alistair.jar -C target/classes .
+CP="target/alistair.jar${S}lib/slick/lib/slick.jar${S}lib/lwjgl-2.9.3/jar/lwjgl.jar"
+CP="$CP${S}lib/lwjgl-2.9.3/jar/lwjgl_util.jar${S}lib/audio/jogg-0.0.7.jar${S}lib/audio/jorbis.jar"
+RUN="java $JAVA_OPTS -Djava.library.path=$NATIVES -cp $CP"
+
+echo "Training run..."
+$RUN -Xshare:off -XX:DumpLoadedClassList=target/alistair.classlist alistair_game.StartupBench > /dev/null
+
+echo "Dumping archive..."
+$RUN -Xshare:dump -XX:SharedClassListFile=target/alistair.classlist \
+    -XX:SharedArchiveFile=target/alistair.jsa > /dev/null
+
+echo "Without archive:"
+$RUN alistair_game.StartupBench | grep -E "^(Time|Audio)"
+echo "With archive:"
+$RUN -XX:SharedArchiveFile=target/alistair.jsa alistair_game.StartupBench | grep -E "^(Time|Audio)"
@@ -3,13 +3,15 @@
 package alistair_game;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.ArrayList;
-import java.util.Scanner;
+import java.io.IOException;
+import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.newdawn.slick.*;
+import org.newdawn.slick.opengl.renderer.ImmediateModeOGLRenderer;
+import org.newdawn.slick.opengl.renderer.Renderer;
+import org.newdawn.slick.opengl.renderer.SGL;
 
 /**
  * Main handler for the game as a program.
@@ -17,15 +19,87 @@ import org.newdawn.slick.*;
  */
 public class App extends BasicGame {
     private static final int
-        WINDOW_W = 1104, WINDOW_H = 672, TILE_SIZE = 48, SIDEBAR_W = TILE_SIZE*3,
-        GRID_W = (WINDOW_W-SIDEBAR_W) / TILE_SIZE, GRID_H = WINDOW_H / TILE_SIZE;
+        WINDOW_W = 1104, WINDOW_H = 672, TILE_SIZE = 48, SIDEBAR_W = TILE_SIZE*3;
+    /** Selectable game speeds (simulation steps per update) */
+    private static final int[] SPEEDS = {1, 2, 4, 8, 16};
+    /** Most time (in ns) the simulation may take per update before we slow it down */
+    private static final long STEP_BUDGET = 15_000_000L;
+    /** Updates in a row over budget before the speed is dropped */
+    private static final int OVER_BUDGET_LIMIT = 5;
+    /** Most time (ms) a frame's update and render should take before quality is reduced */
+    private static final float FRAME_BUDGET = 12f;
+    /** Length of a simulation tick (ms), and the most time we'll try to catch up on at once */
+    private static final int TICK_MS = 20, MAX_CATCH_UP = 250;
+    /** Steps kept for dumping when something goes wrong: 10 seconds' worth even at top speed */
+    private static final int RECENT_TICKS = 10 * 1000 / TICK_MS * 16;
+    /** A step or frame slower than this (ns) dumps the recent ticks, but not more than once per SPIKE_DUMP_GAP */
+    private static final long SLOW_STEP = 20_000_000L, SLOW_FRAME = 100_000_000L, SPIKE_DUMP_GAP = 30_000_000_000L;
     
     private Menu menu = null;
     private World world = null;
+    private AudioController audio;
+    private Assets assets;
+    /** Level that Start opens, and the level being played */
+    private String startLevel = "level1", levelName = null;
+    /** Where to record telemetry (null for off) */
+    private File telemetryFile = null;
+    private TelemetryRecorder telemetry = null;
+    /** Port to serve metrics on (-1 for off), and the metrics */
+    private int metricsPort = -1;
+    private GameMetrics metrics = null;
+    private MetricsServer metricsServer = null;
+    /** The last few seconds of steps, dumped on game over, exceptions and spikes */
+    private TickRing recentTicks = new TickRing(RECENT_TICKS);
+    private long lastSpikeDump = 0;
+    private boolean gameOverDumped = false;
+    /** Counts draw calls and texture binds (wrapping Slick's renderer), and whether to show them */
+    private static DrawCounter draws;
+    private boolean showDrawStats = false;
+    /** Builds the map's vertices on another thread while the next update runs */
+    private RenderPrep renderPrep;
+    /** Picks up edits to the current level's files */
+    private LevelWatcher levelWatcher = null;
+    private QualityController quality = new QualityController(FRAME_BUDGET);
+    /** When the current frame's update started (ns) */
+    private long frameStart;
+    private int speedIndex = 0, overBudget = 0;
+    /** Time (ms) not yet simulated, and how far into the next tick we are (0-1) */
+    private int accumulator = 0;
+    private float alpha = 0;
 
+    /** Args: [--telemetry file] to record every tick of the level being played,
+     * [--level name] to play a different level from assets/levels (see LevelGenerator for big ones),
+     * [--metrics port] to serve metrics on localhost for Prometheus (see GameMetrics),
+     * [--renderer vbo] to batch drawing into a vertex buffer (see VBOGLRenderer) instead of Slick's usual renderer.
+     * Assets are read from assets.pack instead of assets/ if it exists (see AssetPacker). */
     public static void main(String[] args) {
         try {
             App game = new App("Alistair vs The World");
+            SGL renderer = new ImmediateModeOGLRenderer();
+            for (int i = 0; i + 1 < args.length; i += 2) {
+                if (args[i].equals("--telemetry")) {
+                    game.telemetryFile = new File(args[i + 1]);
+                } else if (args[i].equals("--level")) {
+                    game.startLevel = args[i + 1];
+                } else if (args[i].equals("--metrics")) {
+                    game.metricsPort = Integer.parseInt(args[i + 1]);
+                } else if (args[i].equals("--renderer") && args[i + 1].equals("vbo")) {
+                    renderer = new VBOGLRenderer();
+                }
+            }
+            // Slick's classes take the renderer when they're loaded, so before the container
+            draws = new DrawCounter(renderer);
+            Renderer.setRenderer(draws);
+            File pack = new File(AssetFiles.DEFAULT_PACK);
+            if (pack.isFile()) {
+                try {
+                    AssetFiles.usePack(pack);
+                    System.out.println("GAME STATE: Reading assets from " + pack);
+                } catch (IOException e) {
+                    // Carry on with the loose files
+                    e.printStackTrace();
+                }
+            }
             AppGameContainer appgc = new AppGameContainer(game);
             appgc.setDisplayMode(WINDOW_W, WINDOW_H, false);
             appgc.start();
@@ -48,27 +122,62 @@ public class App extends BasicGame {
         System.out.println("GAME STATE: Initialising game...");
         gc.setShowFPS(false);
 
-        // Game update speed. 1 tick every 20 ms (50/sec)
-        gc.setMaximumLogicUpdateInterval(20);
-        gc.setMinimumLogicUpdateInterval(20);
+        // Update and render every frame at the display's rate. The simulation itself
+        // still ticks every 20 ms (50/sec), see update()
+        gc.setVSync(true);
+        
+        // Only the menu is needed for the first frame. Sounds and sprites load in the background
+        audio = new AudioController(new Random());
+        assets = Assets.textured();
+        assets.preload();
+        renderPrep = new RenderPrep(Runtime.getRuntime().availableProcessors() > 1);
         
         // Open Main Menu
         menu = new Menu(getTitle(), WINDOW_W, WINDOW_H);
+        JfrEvents.sampleCounts(() -> world);
+        if (metricsPort >= 0) {
+            startMetrics();
+        }
+    }
+
+    /** Starts serving metrics, with the cache sizes read at scrape time. */
+    private void startMetrics() {
+        metrics = new GameMetrics();
+        metrics.sample("alistair_texture_cache_size", "Sprite images loaded", assets::getImageCount);
+        metrics.sample("alistair_sound_cache_size", "Sounds loaded", audio::getSoundCount);
+        metrics.sample("alistair_draw_calls", "Draw calls in the last frame", draws::getDraws);
+        metrics.sample("alistair_texture_binds", "Texture binds in the last frame", draws::getBinds);
+        try {
+            metricsServer = new MetricsServer(metrics, metricsPort);
+        } catch (IOException e) {
+            e.printStackTrace();
+            metrics = null;
+        }
     }
 
     /**
-     * Should be called every 20ms. Executes a 'tick' operations.
+     * Called once per frame. Runs however many 20 ms ticks are due.
      * @throws SlickException
      */
     @Override
     public void update(GameContainer gc, int delta) throws SlickException {
+        try {
+            updateGame(gc, delta);
+        } catch (RuntimeException | SlickException e) {
+            dumpRecentTicks("update-exception");
+            throw e;
+        }
+    }
+
+    private void updateGame(GameContainer gc, int delta) throws SlickException {
+        frameStart = System.nanoTime();
         // Menu
         Input input = gc.getInput();
         if (menu != null) {
             String action = menu.update(input);
             switch (action) {
                 case "Start":
-                    openLevel("level1");
+                    openLevel(startLevel);
                     break;
                 case "Options":
                     // TODO: Add options (what settings would we have?) or just remove this
@@ -79,24 +188,99 @@ public class App extends BasicGame {
             }
         }
         if (world != null) {
+            JfrEvents.UpdatePhase phase = JfrEvents.beginUpdate("input");
             String action = world.processInput(input);
             switch (action) {
                 case "Exit":
                     // TODO: put this in a function or something?
-                    AudioController.stopAll();
+                    JfrEvents.end(phase);
+                    audio.stopAll();
+                    stopTelemetry();
+                    world.destroy();
                     world = null;
+                    if (metrics != null) {
+                        metrics.clearWorld();
+                    }
                     menu = new Menu(getTitle(), WINDOW_W, WINDOW_H);
                     return; // Terminate the update at this point
+                case "Speed":
+                    setSpeed((speedIndex + 1) % SPEEDS.length);
+                    break;
+                case "Save":
+                    saveLevel();
+                    break;
+                case "DrawStats":
+                    showDrawStats = !showDrawStats;
+                    break;
             }
             
-            world.tick(delta);
-            world.moveEnemies();
-            world.moveProjectiles();
+            // The game is paused while the level is edited. Hold the mouse buttons down to paint
+            if (world.isEditing()) {
+                world.scrollCamera(input, delta);
+                world.processEditor(input.getMouseX(), input.getMouseY(),
+                        input.isMouseButtonDown(Input.MOUSE_LEFT_BUTTON),
+                        input.isMouseButtonDown(Input.MOUSE_RIGHT_BUTTON));
+                input.clearMousePressedRecord();
+                JfrEvents.end(phase);
+                return;
+            }
+            
+            applyEdits();
+            world.scrollCamera(input, delta);
+            JfrEvents.end(phase);
+
+            // Simulate in fixed 20 ms ticks however long the frame was, keeping the
+            // leftover time for next frame. Fast forward runs several ticks' worth of
+            // steps per tick, all the same length, so the outcome doesn't depend on speed
+            accumulator = Math.min(accumulator + delta, MAX_CATCH_UP);
+            long start = System.nanoTime();
+            int inputs = inputFlags(input);
+            while (accumulator >= TICK_MS) {
+                world.savePositions();
+                for (int i = 0; i < SPEEDS[speedIndex]; i++) {
+                    long stepStart = System.nanoTime();
+                    world.step(TICK_MS);
+                    long stepTime = System.nanoTime() - stepStart;
+                    recentTicks.record(world, stepTime, inputs, input.getMouseX(), input.getMouseY());
+                    if (metrics != null) {
+                        metrics.tick(stepTime);
+                    }
+                    if (stepTime > SLOW_STEP) {
+                        dumpSpike("slow-tick");
+                    }
+                    if (telemetry != null) {
+                        telemetry.record(world);
+                    }
+                }
+                accumulator -= TICK_MS;
+            }
+            alpha = (float) accumulator / TICK_MS;
+            if (metrics != null) {
+                metrics.publish(world);
+            }
+            if (world.isGameOver() && !gameOverDumped) {
+                gameOverDumped = true;
+                dumpRecentTicks("game-over");
+            }
+            
+            // Drop the speed if we keep failing to fit the steps into the frame
+            if (System.nanoTime() - start > STEP_BUDGET && speedIndex > 0) {
+                if (++overBudget >= OVER_BUDGET_LIMIT) {
+                    System.out.printf("GAME STATE: Can't keep up at %dx speed, dropping to %dx%n",
+                            SPEEDS[speedIndex], SPEEDS[speedIndex-1]);
+                    setSpeed(speedIndex - 1);
+                }
+            } else {
+                overBudget = 0;
+            }
             
             // Should only call input methods once per update, as per documentation
             boolean clicked = input.isMousePressed(Input.MOUSE_LEFT_BUTTON);
+            boolean rightClicked = input.isMousePressed(Input.MOUSE_RIGHT_BUTTON);
             int mouseX = input.getMouseX(), mouseY = input.getMouseY();
-            world.processTowers(mouseX, mouseY, clicked);
+            phase = JfrEvents.beginUpdate("towers");
+            world.processTowers(mouseX, mouseY, clicked, rightClicked);
+            JfrEvents.end(phase);
         }
     }
 
@@ -106,100 +290,228 @@ public class App extends BasicGame {
      */
     @Override
     public void render(GameContainer gc, Graphics g) throws SlickException {
+        try {
+            renderGame(g);
+            if (showDrawStats && world != null) {
+                g.drawString("Draw calls: " + draws.getDraws() + "  Binds: " + draws.getBinds(), 10, 10);
+            }
+            draws.endFrame();
+        } catch (RuntimeException e) {
+            dumpRecentTicks("render-exception");
+            throw e;
+        }
+    }
+
+    private void renderGame(Graphics g) {
         if (menu != null) {
+            JfrEvents.RenderPhase phase = JfrEvents.beginRender("menu");
             menu.renderTitle();
             menu.renderOptions(g);
+            JfrEvents.end(phase);
         }
         if (world != null) {
-            world.renderTiles();
-            world.renderEnemies();
-            world.renderTowers(g);
-            world.renderProjectiles();
+            // Hand this frame to the render-prep thread, then draw last frame's, which it has prepared
+            JfrEvents.RenderPhase phase = JfrEvents.beginRender("capture");
+            DrawList list;
+            try {
+                renderPrep.capture(world, alpha);
+                list = renderPrep.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            JfrEvents.end(phase);
+
+            // Map first, culled to the camera's view, then the sidebar and HUD over the top
+            world.beginMap(g);
+            phase = JfrEvents.beginRender("tiles");
+            draws.countDraws(list.submit(DrawList.TILES));
+            world.renderEditor(g);
+            JfrEvents.end(phase);
+            phase = JfrEvents.beginRender("enemies");
+            draws.countDraws(list.submit(DrawList.ENEMIES));
+            JfrEvents.end(phase);
+            phase = JfrEvents.beginRender("towers");
+            draws.countDraws(list.submit(DrawList.TOWERS));
+            world.renderRangeOverlays();
+            JfrEvents.end(phase);
+            phase = JfrEvents.beginRender("projectiles");
+            draws.countDraws(list.submit(DrawList.PROJECTILES));
+            JfrEvents.end(phase);
+            world.endMap(g);
+            phase = JfrEvents.beginRender("gui");
             world.drawGUI(g);
+            JfrEvents.end(phase);
+            
+            // Shed or restore optional work based on how long this frame took
+            long frameTime = System.nanoTime() - frameStart;
+            quality.frame(frameTime / 1e6f, System.nanoTime() / 1000000);
+            if (metrics != null) {
+                metrics.frame(frameTime);
+            }
+            if (frameTime > SLOW_FRAME) {
+                dumpSpike("slow-frame");
+            }
+            audio.setVariety(quality.allowAudioVariety());
         }
     }
     
+    /** Changes the game speed to the given entry of SPEEDS. */
+    private void setSpeed(int index) {
+        speedIndex = index;
+        overBudget = 0;
+        if (world != null) {
+            world.setGameSpeed(SPEEDS[speedIndex]);
+        }
+    }
+
     /** Opens a new level and creates a World to manage it.
      * Also minimises the current menu and changes focus to the level.
      */
-    private void openLevel(String levelName) {
+    void openLevel(String levelName) {
         try {
-            // 2D grid array
-            int[][] level = new int[GRID_W][GRID_H];
-
-            // Load map info file
-            Scanner scanner = new Scanner(new File("assets\\levels\\" + levelName + ".txt"));
-            for (int y = 0; y < GRID_H; y++) {
-                assert (scanner.hasNext());
-                char[] line = scanner.next().toCharArray();
-                int x = 0;
-                for (char c : line) {
-                    if (x >= GRID_W)
-                        break;
-                    assert (Character.isDigit(c));
-                    level[x++][y] = Character.getNumericValue(c);
-                }
+            LevelData level;
+            if (levelWatcher != null && levelWatcher.isWatching(levelName, "game1")) {
+                // Already loaded, with any edits since
+                level = levelWatcher.getCurrent();
+                levelWatcher.poll();
+            } else {
+                level = LevelData.load(levelName, "game1", TILE_SIZE);
+                watchLevel(levelName, "game1", level);
             }
+            
+            // Create World
+            this.levelName = levelName;
+            world = new World(WINDOW_W, WINDOW_H, TILE_SIZE, SIDEBAR_W, level.getStartX(), level.getStartY(),
+                    level.newMap(), level.copyWaves(), assets, new PlayerEvents(audio));
+            world.setQuality(quality);
+            world.setPhaseTiming(true);
+            try {
+                renderPrep.start(world, 0);
+            } catch (InterruptedException e) {
+                // The first frame captures it instead
+                Thread.currentThread().interrupt();
+            }
+            recentTicks.clear();
+            gameOverDumped = false;
+            setSpeed(0);
+            accumulator = 0;
+            if (telemetryFile != null) {
+                telemetry = new TelemetryRecorder(telemetryFile);
+            }
+            // Get rid of menu
+            // TODO: there's probably a better way to do this
+            menu = null;
 
-            // Enemy spawn location
-            float startX = (float) scanner.nextInt() * TILE_SIZE + TILE_SIZE / 2;
-            float startY = (float) scanner.nextInt() * TILE_SIZE + TILE_SIZE / 2;
-            scanner.close();
-
-
-            // Load in wave info
-            scanner = new Scanner(new File("assets\\waves\\game1.txt"));
-            // Read line-by-line
-            scanner.useDelimiter("[\\r\\n;]+");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
-            ArrayList<Wave> waves = new ArrayList<>();
+    /** Starts watching a level's files for edits, instead of whichever level was watched before. */
+    private void watchLevel(String levelName, String wavesName, LevelData level) {
+        if (levelWatcher != null) {
+            levelWatcher.close();
+            levelWatcher = null;
+        }
+        try {
+            levelWatcher = new LevelWatcher(levelName, wavesName, level, TILE_SIZE);
+        } catch (IOException e) {
+            // e.g. only the asset pack is there
+            System.out.println("GAME STATE: Not watching level files (" + e + ")");
+        }
+    }
 
-            // Wave-by-wave
-            while (scanner.hasNext()) {
-                String wave = scanner.next();
-                Wave currWave = new Wave();
-                waves.add(currWave);
+    /** Applies any saved edits to the level to the running World. Must be between ticks. */
+    private void applyEdits() {
+        LevelWatcher.Reload reload = levelWatcher == null ? null : levelWatcher.poll();
+        if (reload == null) {
+            return;
+        }
+        if (reload.path != null) {
+            world.reloadLevel(reload.map, reload.level.getStartX(), reload.level.getStartY(), reload.path);
+        }
+        if (reload.wavesChanged != null) {
+            world.reloadWaves(reload.level, reload.wavesChanged);
+        }
+    }
 
-                // Split into spawn sequences - enemytype/enemynum/spawnrate/starttime
-                String[] spawnSequences = wave.split(" ");
-                int seqs = spawnSequences.length;
+    /** TickRing input flags for the buttons and keys held down */
+    private static int inputFlags(Input input) {
+        int flags = 0;
+        flags |= input.isMouseButtonDown(Input.MOUSE_LEFT_BUTTON) ? TickRing.MOUSE_LEFT : 0;
+        flags |= input.isMouseButtonDown(Input.MOUSE_RIGHT_BUTTON) ? TickRing.MOUSE_RIGHT : 0;
+        flags |= input.isKeyDown(Input.KEY_ESCAPE) ? TickRing.KEY_ESCAPE : 0;
+        flags |= input.isKeyDown(Input.KEY_F) ? TickRing.KEY_F : 0;
+        flags |= input.isKeyDown(Input.KEY_R) ? TickRing.KEY_R : 0;
+        flags |= input.isKeyDown(Input.KEY_E) ? TickRing.KEY_E : 0;
+        flags |= input.isKeyDown(Input.KEY_LEFT) || input.isKeyDown(Input.KEY_RIGHT) || input.isKeyDown(Input.KEY_UP)
+                || input.isKeyDown(Input.KEY_DOWN) ? TickRing.KEY_ARROWS : 0;
+        flags |= input.isKeyDown(Input.KEY_LCONTROL) || input.isKeyDown(Input.KEY_RCONTROL) ? TickRing.KEY_CTRL : 0;
+        return flags;
+    }
 
-                for (int i = seqs-1; i >= 0; i--) {
-                    String seq = spawnSequences[i];
+    /** Dumps the recent ticks for a spike, unless one was dumped recently. */
+    private void dumpSpike(String reason) {
+        long now = System.nanoTime();
+        if (lastSpikeDump != 0 && now - lastSpikeDump < SPIKE_DUMP_GAP) {
+            return;
+        }
+        lastSpikeDump = now;
+        dumpRecentTicks(reason);
+    }
 
-                    // Extract info
-                    String[] seqInfo = seq.split("/");
-                    String enemy = seqInfo[0];
-                    int enemyNum = Integer.parseInt(seqInfo[1]);
-                    float spawnRate = Float.parseFloat(seqInfo[2]), spawnTime = Float.parseFloat(seqInfo[3]);
+    private void dumpRecentTicks(String reason) {
+        if (recentTicks.getSize() == 0) {
+            return;
+        }
+        try {
+            recentTicks.dump(reason);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
-                    // Generate and add spawn individual instructions
-                    for (int j = enemyNum; j >= 1; j--) {
-                        currWave.addInstruction(enemy, spawnTime*1000);
-                        spawnTime += spawnRate;
-                    }
-                }
+    /** Saves the level being edited over its file. */
+    private void saveLevel() {
+        try {
+            byte[] text = world.getEditor().save(levelName);
+            if (text != null && levelWatcher != null && levelWatcher.isWatching(levelName, "game1")) {
+                // The World gets the edits when the editor closes, not from the file
+                levelWatcher.saved(text);
             }
-            scanner.close();
-            
-            // Create World
-            world = new World(WINDOW_W, WINDOW_H, TILE_SIZE, SIDEBAR_W, startX, startY, level, waves);
-            // Get rid of menu
-            // TODO: there's probably a better way to do this
-            menu = null;
-
-        } catch (FileNotFoundException e) {
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /** Finishes writing the telemetry file, if we're recording. */
+    private void stopTelemetry() {
+        if (telemetry != null) {
+            try {
+                telemetry.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            telemetry = null;
+        }
+    }
+
     /**
      * Closes the game.
      */
     @Override
     public boolean closeRequested() {
         System.out.println("GAME STATE: Exiting game");
+        stopTelemetry();
+        if (metricsServer != null) {
+            metricsServer.close();
+        }
+        renderPrep.shutdown();
         System.exit(0);
         return false; // only here to placate the compiler
     }
+
+    boolean isPlaying() { return world != null; }
+    AudioController getAudio() { return audio; }
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+package alistair_game;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.newdawn.slick.util.ClasspathLocation;
+import org.newdawn.slick.util.FileSystemLocation;
+import org.newdawn.slick.util.ResourceLoader;
+
+/**
+ * Where the game's data files come from: the asset pack if one is in use, otherwise
+ * the loose files under assets/. Paths always use forward slashes, e.g. assets/levels/level1.txt
+ */
+class AssetFiles {
+    /** Pack used automatically when it's in the game folder */
+    static final String DEFAULT_PACK = "assets.pack";
+
+    private static PackResourceLocation pack = null;
+
+    /** Reads assets from a pack from now on, for the game and for Slick. Loose files are still a fallback. */
+    static void usePack(File file) throws IOException {
+        pack = new PackResourceLocation(file);
+        ResourceLoader.removeAllResourceLocations();
+        ResourceLoader.addResourceLocation(pack);
+        ResourceLoader.addResourceLocation(new ClasspathLocation());
+        ResourceLoader.addResourceLocation(new FileSystemLocation(new File(".")));
+    }
+
+    /** Opens a file for reading. */
+    static InputStream open(String path) throws IOException {
+        if (pack != null && pack.contains(path)) {
+            return pack.getResourceAsStream(path);
+        }
+        File f = new File(path);
+        if (!f.isFile()) {
+            throw new FileNotFoundException(path);
+        }
+        return new FileInputStream(f);
+    }
+
+    /** Every file under a folder (including subfolders), in name order. */
+    static List<String> list(String dir) {
+        if (pack != null) {
+            List<String> names = pack.list(dir);
+            if (!names.isEmpty()) {
+                return names;
+            }
+        }
+        List<String> names = new ArrayList<>();
+        listFiles(new File(dir), dir.endsWith("/") ? dir : dir + "/", names);
+        return names;
+    }
+
+    private static void listFiles(File dir, String prefix, List<String> names) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File f : files) {
+            if (f.isDirectory()) {
+                listFiles(f, prefix + f.getName() + "/", names);
+            } else {
+                names.add(prefix + f.getName());
+            }
+        }
+    }
+
+    static boolean isUsingPack() { return pack != null; }
+}
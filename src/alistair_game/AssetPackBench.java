@@ -0,0 +1,104 @@
+package alistair_game;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.newdawn.slick.opengl.ImageDataFactory;
+import org.newdawn.slick.opengl.LoadableImageData;
+
+/**
+ * Compares cold-start asset loading from loose files against the asset pack. Each run
+ * is a fresh JVM that reads every asset (decoding the sprites, as the game does), so
+ * class loading and first-touch costs are included. On Linux as root the page cache
+ * is dropped before each run so the files really come off the disk; otherwise the
+ * runs are warm-cache only, which the report says.
+ * Args: [pack file] [runs]
+ */
+class AssetPackBench {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 2 && args[0].equals("--child")) {
+            child(args[1]);
+            return;
+        }
+        String pack = args.length > 0 ? args[0] : AssetFiles.DEFAULT_PACK;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        if (!new File(pack).isFile()) {
+            AssetPacker.main(new String[] {"assets", pack});
+        }
+
+        boolean cold = true;
+        double[] loose = new double[runs], packed = new double[runs];
+        for (int i = 0; i < runs; i++) {
+            // Alternate so neither always goes first
+            cold &= dropCaches();
+            loose[i] = run("loose");
+            cold &= dropCaches();
+            packed[i] = run(pack);
+        }
+        Arrays.sort(loose);
+        Arrays.sort(packed);
+        System.out.printf("Median of %d %s runs:%n", runs, cold ? "cold-cache" : "warm-cache (couldn't drop caches)");
+        System.out.printf("Loose files: %.1f ms%n", loose[runs / 2]);
+        System.out.printf("Asset pack:  %.1f ms%n", packed[runs / 2]);
+    }
+
+    /** Runs one load in a new JVM, returning the time it reported (ms). */
+    private static double run(String source) throws IOException, InterruptedException {
+        List<String> cmd = new ArrayList<>();
+        cmd.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add(AssetPackBench.class.getName());
+        cmd.add("--child");
+        cmd.add(source);
+        Process p = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+        String out = new String(p.getInputStream().readAllBytes()).trim();
+        if (p.waitFor() != 0) {
+            throw new IOException("Run failed: " + out);
+        }
+        // Slick may log a line or two first
+        return Double.parseDouble(out.substring(out.lastIndexOf('\n') + 1).trim());
+    }
+
+    /** Reads and decodes every asset, then prints how long it took (ms). */
+    private static void child(String source) throws IOException {
+        long start = System.nanoTime();
+        if (!source.equals("loose")) {
+            AssetFiles.usePack(new File(source));
+        }
+        byte[] buf = new byte[1 << 16];
+        for (String path : AssetFiles.list("assets")) {
+            try (InputStream in = AssetFiles.open(path)) {
+                if (path.startsWith("assets/sprites/")) {
+                    LoadableImageData data = ImageDataFactory.getImageDataFor(path);
+                    data.loadImage(new BufferedInputStream(in), false, null);
+                } else {
+                    while (in.read(buf) >= 0) {
+                    }
+                }
+            }
+        }
+        System.out.println((System.nanoTime() - start) / 1e6);
+    }
+
+    /** Asks Linux to drop the page cache. Returns false if that isn't possible here. */
+    private static boolean dropCaches() {
+        File control = new File("/proc/sys/vm/drop_caches");
+        if (!control.canWrite()) {
+            return false;
+        }
+        try (FileWriter out = new FileWriter(control)) {
+            new ProcessBuilder("sync").start().waitFor();
+            out.write("3");
+            return true;
+        } catch (IOException | InterruptedException e) {
+            return false;
+        }
+    }
+}
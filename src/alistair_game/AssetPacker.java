@@ -0,0 +1,139 @@
+package alistair_game;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Bundles the assets folder into a single pack file that the game reads through
+ * PackResourceLocation (the game uses assets.pack automatically if it's there).
+ * Entries are deflated when that saves at least a tenth of their size; images and
+ * sounds are already compressed so they're usually stored as they are.
+ * Args: [--store] [assets folder] [pack file]
+ */
+class AssetPacker {
+    /** Smallest saving worth inflating for when reading */
+    private static final double MIN_SAVING = 0.1;
+
+    private static class Entry {
+        String name;
+        byte[] bytes;
+        int size;
+        boolean deflated;
+    }
+
+    public static void main(String[] args) {
+        int arg = 0;
+        boolean compress = true;
+        if (args.length > arg && args[arg].equals("--store")) {
+            compress = false;
+            arg++;
+        }
+        File dir = new File(args.length > arg ? args[arg] : "assets");
+        File out = new File(args.length > arg + 1 ? args[arg + 1] : "assets.pack");
+        try {
+            List<Entry> entries = new ArrayList<>();
+            collect(dir, dir.getName() + "/", compress, entries);
+            long size = write(entries, out);
+            System.out.printf("Packed %d files into %s (%d bytes)%n", entries.size(), out, size);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Reads (and maybe compresses) every file under a folder, in name order. */
+    private static void collect(File dir, String prefix, boolean compress, List<Entry> entries) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            throw new IOException("Can't read folder " + dir);
+        }
+        Arrays.sort(files);
+        for (File f : files) {
+            if (f.isDirectory()) {
+                collect(f, prefix + f.getName() + "/", compress, entries);
+                continue;
+            }
+            Entry e = new Entry();
+            e.name = prefix + f.getName();
+            e.bytes = Files.readAllBytes(f.toPath());
+            e.size = e.bytes.length;
+            if (compress) {
+                byte[] deflated = deflate(e.bytes);
+                if (deflated.length <= e.size * (1 - MIN_SAVING)) {
+                    e.bytes = deflated;
+                    e.deflated = true;
+                }
+            }
+            entries.add(e);
+        }
+    }
+
+    private static byte[] deflate(byte[] bytes) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(bytes.length);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(buf, new Deflater(Deflater.BEST_COMPRESSION))) {
+            out.write(bytes);
+        }
+        return buf.toByteArray();
+    }
+
+    /** Writes the header, index and aligned entries. Returns the pack's size. */
+    private static long write(List<Entry> entries, File file) throws IOException {
+        // The index is the same length whatever the offsets are, so lay it out once to measure it
+        int indexLength = index(entries, new long[entries.size()]).length;
+        long[] offsets = new long[entries.size()];
+        long pos = align(16 + indexLength);
+        for (int i = 0; i < entries.size(); i++) {
+            offsets[i] = pos;
+            pos = align(pos + entries.get(i).bytes.length);
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(PackResourceLocation.MAGIC);
+            out.writeInt(PackResourceLocation.VERSION);
+            out.writeInt(entries.size());
+            out.writeInt(indexLength);
+            out.write(index(entries, offsets));
+            for (int i = 0; i < entries.size(); i++) {
+                pad(out, offsets[i]);
+                out.write(entries.get(i).bytes);
+            }
+            pad(out, pos);
+        }
+        return pos;
+    }
+
+    private static byte[] index(List<Entry> entries, long[] offsets) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buf);
+        for (int i = 0; i < entries.size(); i++) {
+            Entry e = entries.get(i);
+            out.writeUTF(e.name);
+            out.writeLong(offsets[i]);
+            out.writeInt(e.bytes.length);
+            out.writeInt(e.size);
+            out.writeByte(e.deflated ? PackResourceLocation.DEFLATED : 0);
+        }
+        return buf.toByteArray();
+    }
+
+    private static long align(long pos) {
+        int a = PackResourceLocation.ALIGN;
+        return (pos + a - 1) / a * a;
+    }
+
+    /** Writes zeros up to the given position */
+    private static void pad(DataOutputStream out, long pos) throws IOException {
+        while (out.size() < pos) {
+            out.write(0);
+        }
+    }
+}
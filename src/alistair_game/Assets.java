@@ -0,0 +1,169 @@
+package alistair_game;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.newdawn.slick.Image;
+import org.newdawn.slick.SlickException;
+import org.newdawn.slick.opengl.ImageData;
+import org.newdawn.slick.opengl.ImageDataFactory;
+import org.newdawn.slick.opengl.LoadableImageData;
+
+/**
+ * Loads and caches the sprite images used by a World, so each file is only loaded once.
+ * Headless assets (for running matches with no window) hand out blank images that only
+ * know their size, which is all the game logic needs.
+ * <p>
+ * Textured assets can decode the image files ahead of time on a background thread and
+ * pack them into one texture (see SpriteAtlas), leaving only the texture upload (which
+ * has to be on the OpenGL thread) for later.
+ */
+class Assets {
+    private static final String SPRITE_DIR = "assets/sprites/";
+    private boolean headless;
+    private Map<String, Image> images = new ConcurrentHashMap<>();
+    private Map<String, SpriteDef> defs = new ConcurrentHashMap<>();
+    /** Sprites being packed by preload(), until they're uploaded */
+    private Future<SpriteAtlas> atlas;
+
+    private Assets(boolean headless) {
+        this.headless = headless;
+    }
+
+    /** Assets backed by real textures. Must be used from the OpenGL thread. */
+    static Assets textured() {
+        return new Assets(false);
+    }
+
+    /** Assets with no textures, safe to share between threads. */
+    static Assets headless() {
+        return new Assets(true);
+    }
+
+    /**
+     * Gets a sprite image, loading it the first time.
+     * @param name Path relative to assets/sprites, e.g. tiles/wall.png
+     */
+    Image get(String name) {
+        if (atlas != null) {
+            uploadAtlas();
+        }
+        return images.computeIfAbsent(name, this::load);
+    }
+
+    /**
+     * Gets the shared sprite definition for an image, loading the image the first time.
+     * @param name Path relative to assets/sprites, e.g. enemies/fbe1.png
+     */
+    SpriteDef def(String name) {
+        SpriteDef def = defs.get(name);
+        if (def == null) {
+            def = new SpriteDef(get(name));
+            SpriteDef raced = defs.putIfAbsent(name, def);
+            def = raced != null ? raced : def;
+        }
+        return def;
+    }
+
+    /**
+     * Starts decoding every sprite image and packing them into one texture on a background
+     * thread. The first image asked for after this waits for the packing to finish, which
+     * only takes a moment, and then every packed sprite comes from the one texture.
+     */
+    void preload() {
+        if (headless) {
+            return;
+        }
+        List<String> names = new ArrayList<>();
+        for (String path : AssetFiles.list(SPRITE_DIR)) {
+            String name = path.substring(SPRITE_DIR.length());
+            if (name.endsWith(".png") && !images.containsKey(name)) {
+                names.add(name);
+            }
+        }
+        FutureTask<SpriteAtlas> task = new FutureTask<>(() -> {
+            Map<String, ImageData> decoded = new LinkedHashMap<>();
+            for (String name : names) {
+                try {
+                    decoded.put(name, decode(name));
+                } catch (IOException e) {
+                    // Left out, and loaded on its own (if it can be) when it's needed
+                    e.printStackTrace();
+                }
+            }
+            return new SpriteAtlas(decoded);
+        });
+        atlas = task;
+        Thread loader = new Thread(task, "sprite-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /** Waits for the sprites to be packed, then turns them into a texture. */
+    private void uploadAtlas() {
+        try {
+            images.putAll(atlas.get().upload());
+        } catch (InterruptedException | ExecutionException e) {
+            // Load them one at a time instead
+            e.printStackTrace();
+        }
+        atlas = null;
+    }
+
+    /** Reads an image file into memory, ready to become a texture. */
+    private static ImageData decode(String name) throws IOException {
+        LoadableImageData data = ImageDataFactory.getImageDataFor(name);
+        try (InputStream in = new BufferedInputStream(AssetFiles.open(SPRITE_DIR + name))) {
+            data.loadImage(in, false, null);
+        }
+        return data;
+    }
+
+    private Image load(String name) {
+        try {
+            if (headless) {
+                return loadSize(name);
+            }
+            return new Image(SPRITE_DIR + name);
+        } catch (SlickException | IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /** Reads just the dimensions from an image file's header. */
+    private static Image loadSize(String name) throws IOException {
+        try (InputStream file = AssetFiles.open(SPRITE_DIR + name);
+                ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Can't read image '" + name + "'");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in);
+                return new HeadlessImage(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    boolean isHeadless() { return headless; }
+    /** Number of images loaded so far. Safe to call from any thread */
+    int getImageCount() { return images.size(); }
+}
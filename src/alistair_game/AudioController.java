@@ -1,43 +1,63 @@
 package alistair_game;
 
-import java.io.File;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 import org.newdawn.slick.*;
 
 /**
  * Stores all sound files, and provides a method to play them.
+ * Decoding every sound takes a while, so it's done on a background thread and sounds
+ * requested before then are skipped.
  */
 public class AudioController {
-    private static HashMap<String, Sound> singleSounds = new HashMap<String, Sound>();
-    private static HashMap<String, Sound[]> multiSounds = new HashMap<String, Sound[]>();
-    static {
-        // Load audio files
-        File folder = new File("assets\\audio");
-        try {
-            for (File f : folder.listFiles()) {
-                if (f.isFile()) {
+    private static final String AUDIO_DIR = "assets/audio/";
+    private HashMap<String, Sound> singleSounds = new HashMap<String, Sound>();
+    private HashMap<String, Sound[]> multiSounds = new HashMap<String, Sound[]>();
+    /** Set once the loader has filled in both maps */
+    private volatile boolean loaded = false;
+    private Random rng;
+    /** Whether to pick a random variation of a sound, or always use the first */
+    private boolean variety = true;
+
+    /**
+     * Starts loading all the sound files in the background.
+     * @param rng Used to pick between the variations of a sound
+     */
+    public AudioController(Random rng) {
+        this.rng = rng;
+        Thread loader = new Thread(this::load, "audio-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    private void load() {
+        // Load audio files. Sounds directly in the folder are single sounds, and each
+        // subfolder holds the variations of one sound
+        Map<String, List<Sound>> variations = new HashMap<>();
+        for (String path : AssetFiles.list(AUDIO_DIR)) {
+            String[] parts = path.substring(AUDIO_DIR.length()).split("/");
+            try {
+                if (parts.length == 1) {
                     // Get file name without extension
-                    String name = f.getName().replaceFirst("[.][^.]+$", "");
+                    String name = parts[0].replaceFirst("[.][^.]+$", "");
                     // Add the sound to the hash map
-                    singleSounds.put(name.toLowerCase(), new Sound(f.getPath()));
+                    singleSounds.put(name.toLowerCase(), new Sound(path));
                 } else {
-                    // Add all the sounds in the subfolder to an array
-                    Sound[] new_sounds = Arrays.stream(f.listFiles()).filter(file -> file.isFile()).map(file -> {
-                        try {
-                            return new Sound(file.getPath());
-                        } catch (SlickException e) {
-                            e.printStackTrace();
-                            return null;
-                        }
-                    }).toArray(Sound[]::new);
-                    multiSounds.put(f.getName().toLowerCase(), new_sounds);
+                    // Add the sound to its subfolder's list
+                    variations.computeIfAbsent(parts[0].toLowerCase(), k -> new ArrayList<>()).add(new Sound(path));
                 }
+            } catch (SlickException e) {
+                e.printStackTrace();
             }
-        } catch (SlickException e) {
-            e.printStackTrace();
         }
+        for (Map.Entry<String, List<Sound>> e : variations.entrySet()) {
+            multiSounds.put(e.getKey(), e.getValue().toArray(new Sound[0]));
+        }
+        loaded = true;
 
         // TODO: Find some music? Can add an array of songs to a musicLoop() method.
     }
@@ -47,11 +67,14 @@ public class AudioController {
      *
      * @param event The name of the game event, and the sound in assets/audio to play. Can specify a folder.
      */
-    public static void play(String event) {
+    public void play(String event) {
         // TODO: Add pitch and volume control
+        if (!loaded) {
+            return;
+        }
         Sound[] list = multiSounds.get(event);
         if (list != null) {
-            list[Util.rand(list.length)].play();
+            list[variety ? rng.nextInt(list.length) : 0].play();
         } else {
             Sound single = singleSounds.get(event);
             if (single != null) {
@@ -62,10 +85,17 @@ public class AudioController {
         }
     }
     
+    void setVariety(boolean variety) {
+        this.variety = variety;
+    }
+
     /**
      * Stops all currently playing sounds.
      */
-    static void stopAll() {
+    void stopAll() {
+        if (!loaded) {
+            return;
+        }
         for (Sound s : singleSounds.values()) {
             s.stop();
         }
@@ -75,4 +105,18 @@ public class AudioController {
             }
         }
     }
+
+    /** True once every sound has been loaded */
+    boolean isLoaded() { return loaded; }
+    /** Number of sounds loaded, counting each variation. 0 until they're all loaded */
+    int getSoundCount() {
+        if (!loaded) {
+            return 0;
+        }
+        int count = singleSounds.size();
+        for (Sound[] list : multiSounds.values()) {
+            count += list.length;
+        }
+        return count;
+    }
 }
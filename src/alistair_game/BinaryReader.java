@@ -0,0 +1,40 @@
+package alistair_game;
+
+/**
+ * Reads back what a BinaryWriter wrote.
+ */
+class BinaryReader {
+    private byte[] buf;
+    private int pos, end;
+
+    BinaryReader(byte[] buf, int off, int len) {
+        this.buf = buf;
+        this.pos = off;
+        this.end = off + len;
+    }
+
+    int readByte() {
+        if (pos >= end) {
+            throw new IllegalStateException("Read past end of data");
+        }
+        return buf[pos++] & 0xFF;
+    }
+
+    int readVarint() {
+        int v = 0, shift = 0, b;
+        do {
+            b = readByte();
+            v |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return v;
+    }
+
+    int readSigned() {
+        int v = readVarint();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    boolean hasMore() { return pos < end; }
+    int position() { return pos; }
+}
@@ -0,0 +1,60 @@
+package alistair_game;
+
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer with varint writes, for compact binary formats.
+ * Reused between writes so steady-state encoding doesn't allocate.
+ */
+class BinaryWriter {
+    private byte[] buf;
+    private int pos = 0;
+
+    BinaryWriter(int capacity) {
+        buf = new byte[capacity];
+    }
+
+    void writeByte(int b) {
+        ensure(1);
+        buf[pos++] = (byte) b;
+    }
+
+    /** Writes an unsigned int in 7-bit groups, small values taking a single byte. */
+    void writeVarint(int v) {
+        ensure(5);
+        while ((v & ~0x7F) != 0) {
+            buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[pos++] = (byte) v;
+    }
+
+    /** Writes a signed int as a varint, mapping small negatives to small positives. */
+    void writeSigned(int v) {
+        writeVarint((v << 1) ^ (v >> 31));
+    }
+
+    void writeBytes(byte[] b, int off, int len) {
+        ensure(len);
+        System.arraycopy(b, off, buf, pos, len);
+        pos += len;
+    }
+
+    void writeAll(BinaryWriter other) {
+        writeBytes(other.buf, 0, other.pos);
+    }
+
+    void reset() {
+        pos = 0;
+    }
+
+    private void ensure(int n) {
+        if (pos + n > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+        }
+    }
+
+    int size() { return pos; }
+    byte[] array() { return buf; }
+    byte[] toByteArray() { return Arrays.copyOf(buf, pos); }
+}
@@ -0,0 +1,59 @@
+package alistair_game;
+
+/**
+ * The part of the map that's on screen. Positions are map pixels, and the top left
+ * of the view is at (x, y). Anything outside the view is culled before it's drawn.
+ */
+class Camera {
+    private float x = 0, y = 0;
+    private int viewW, viewH, mapW, mapH;
+
+    /**
+     * @param viewW Width of the view on screen (pixels)
+     * @param viewH Height of the view on screen (pixels)
+     * @param mapW Width of the whole map (pixels)
+     * @param mapH Height of the whole map (pixels)
+     */
+    Camera(int viewW, int viewH, int mapW, int mapH) {
+        this.viewW = viewW;
+        this.viewH = viewH;
+        this.mapW = mapW;
+        this.mapH = mapH;
+    }
+
+    /** Scrolls the view, without going past the edges of the map. */
+    void move(float dx, float dy) {
+        moveTo(x + dx, y + dy);
+    }
+
+    /** Puts a point in the middle of the view (as near as the map edges allow). */
+    void centreOn(float px, float py) {
+        moveTo(px - viewW / 2f, py - viewH / 2f);
+    }
+
+    private void moveTo(float newX, float newY) {
+        x = Math.max(0, Math.min(newX, mapW - viewW));
+        y = Math.max(0, Math.min(newY, mapH - viewH));
+    }
+
+    /**
+     * Whether any of a box is in view.
+     * @param cx Centre of the box (x-axis)
+     * @param cy Centre of the box (y-axis)
+     * @param halfW Half the box's width
+     * @param halfH Half the box's height
+     */
+    boolean isVisible(float cx, float cy, float halfW, float halfH) {
+        return cx + halfW >= x && cx - halfW < x + viewW && cy + halfH >= y && cy - halfH < y + viewH;
+    }
+
+    /** Whether a point on screen is over the map view */
+    boolean isOnView(int screenX, int screenY) {
+        return screenX >= 0 && screenY >= 0 && screenX < viewW && screenY < viewH;
+    }
+
+    float getX() { return x; }
+    float getY() { return y; }
+    int getViewWidth() { return viewW; }
+    int getViewHeight() { return viewH; }
+}
@@ -0,0 +1,31 @@
+package alistair_game;
+
+import org.newdawn.slick.geom.Vector2f;
+
+/**
+ * Projectile that stuns the enemy it hits and arcs from it to the nearest enemy not yet hit,
+ * and from that one to the next, a set number of times.
+ */
+class ChainProjectile extends Projectile {
+    private int jumps;
+    private float range;
+    private int stunMs;
+
+    /**
+     * @param jumps How many more enemies it can arc on to after the first
+     * @param range Furthest it can arc between two enemies (pixels)
+     * @param stunMs How long the enemy it hits is stunned for
+     */
+    ChainProjectile(float startx, float starty, Vector2f vec, SpriteDef def, int jumps, float range, int stunMs) {
+        super(startx, starty, vec, def);
+        this.jumps = jumps;
+        this.range = range;
+        this.stunMs = stunMs;
+    }
+
+    @Override
+    void hit(Enemy e, World world) {
+        world.damageChain(e, jumps, range, getDamage());
+        world.stunEnemy(e, stunMs);
+    }
+}
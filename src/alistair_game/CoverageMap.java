@@ -0,0 +1,161 @@
+package alistair_game;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tracks which towers can reach each path cell, and which enemies are in each cell.
+ * Towers never move once placed and enemies only walk the path, so a tower's range
+ * can be resolved once into a fixed list of path cells. Targeting then only has to
+ * look at the enemies standing in those cells.
+ */
+class CoverageMap {
+    private int gridW, gridH, tSize;
+    private TileMap map;
+    /** Towers whose range reaches each cell (null until a tower covers it, always null for walls) */
+    private List<Tower>[] coveringTowers;
+    /** Enemies whose centre is currently in each cell (null until an enemy or tower needs it) */
+    private List<Enemy>[] occupants;
+
+    /**
+     * Create an empty coverage map for a level. Cells get their lists the first time a
+     * tower covers them or an enemy walks in, so big maps only pay for the cells in play.
+     * @param map The level's layout. Only non-wall tiles are tracked
+     * @param tSize Side length of each tile in pixels
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    CoverageMap(TileMap map, int tSize) {
+        this.gridW = map.getWidth();
+        this.gridH = map.getHeight();
+        this.tSize = tSize;
+        this.map = map;
+        coveringTowers = new List[gridW * gridH];
+        occupants = new List[gridW * gridH];
+    }
+
+    /** Works out which path cells a newly placed tower covers and registers it with them. */
+    void addTower(Tower t) {
+        float range = t.getRange();
+        int minX = Math.max(0, (int) ((t.getX() - range) / tSize)),
+            maxX = Math.min(gridW - 1, (int) ((t.getX() + range) / tSize)),
+            minY = Math.max(0, (int) ((t.getY() - range) / tSize)),
+            maxY = Math.min(gridH - 1, (int) ((t.getY() + range) / tSize));
+
+        List<Integer> covered = new ArrayList<>();
+        List<Boolean> inside = new ArrayList<>();
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                int cell = cellIndex(x, y);
+                if (map.isWall(x, y)) {
+                    continue;
+                }
+                float left = x * tSize, top = y * tSize, right = left + tSize, bottom = top + tSize;
+                // Closest point of the cell to the tower decides whether it's in range at all
+                float nearX = Math.max(left, Math.min(t.getX(), right));
+                float nearY = Math.max(top, Math.min(t.getY(), bottom));
+                if (Util.dist(nearX, nearY, t.getX(), t.getY()) > range) {
+                    continue;
+                }
+                // Furthest corner decides whether every enemy in the cell is in range
+                float farX = Math.abs(t.getX() - left) > Math.abs(t.getX() - right) ? left : right;
+                float farY = Math.abs(t.getY() - top) > Math.abs(t.getY() - bottom) ? top : bottom;
+                covered.add(cell);
+                inside.add(Util.dist(farX, farY, t.getX(), t.getY()) <= range);
+                if (coveringTowers[cell] == null) {
+                    coveringTowers[cell] = new ArrayList<>();
+                }
+                if (occupants[cell] == null) {
+                    occupants[cell] = new ArrayList<>();
+                }
+                coveringTowers[cell].add(t);
+            }
+        }
+
+        int[] cells = new int[covered.size()];
+        boolean[] fullyCovered = new boolean[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = covered.get(i);
+            fullyCovered[i] = inside.get(i);
+        }
+        t.setCoverage(cells, fullyCovered);
+    }
+
+    /** Unregisters a tower that has been sold. */
+    void removeTower(Tower t) {
+        for (int cell : t.getCoveredCells()) {
+            coveringTowers[cell].remove(t);
+        }
+        t.setCoverage(new int[0], new boolean[0]);
+    }
+
+    /**
+     * Moves an enemy into the bucket for the cell it now occupies.
+     * Should be called whenever the enemy moves.
+     * @return The path cell it just moved into, or -1 if it's still in the same cell (or off the path)
+     */
+    int updateEnemy(Enemy e) {
+        int x = toGrid(e.getX()), y = toGrid(e.getY());
+        int cell = -1;
+        if (x >= 0 && y >= 0 && x < gridW && y < gridH && !map.isWall(x, y)) {
+            cell = cellIndex(x, y);
+        }
+        if (cell == e.getCell()) {
+            return -1;
+        }
+        if (e.getCell() >= 0) {
+            occupants[e.getCell()].remove(e);
+        }
+        if (cell >= 0) {
+            if (occupants[cell] == null) {
+                occupants[cell] = new ArrayList<>();
+            }
+            occupants[cell].add(e);
+        }
+        e.setCell(cell);
+        return cell;
+    }
+
+    /**
+     * Finds the enemies whose centres are within a radius of a point, only looking at
+     * the path cells the circle overlaps.
+     * @param out Where to add them (not cleared first)
+     */
+    void findEnemies(float x, float y, float radius, List<Enemy> out) {
+        int minX = Math.max(0, toGrid(x - radius)), maxX = Math.min(gridW - 1, toGrid(x + radius)),
+            minY = Math.max(0, toGrid(y - radius)), maxY = Math.min(gridH - 1, toGrid(y + radius));
+        for (int cx = minX; cx <= maxX; cx++) {
+            for (int cy = minY; cy <= maxY; cy++) {
+                List<Enemy> cell = occupants[cellIndex(cx, cy)];
+                if (cell == null) {
+                    continue;
+                }
+                for (Enemy e : cell) {
+                    if (Util.dist(x, y, e.getX(), e.getY()) <= radius) {
+                        out.add(e);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Removes a dead (or despawned) enemy from its cell. */
+    void removeEnemy(Enemy e) {
+        if (e.getCell() >= 0) {
+            occupants[e.getCell()].remove(e);
+            e.setCell(-1);
+        }
+    }
+
+    /** Enemies currently in the given cell (null if nothing has ever used it) */
+    List<Enemy> getOccupants(int cell) { return occupants[cell]; }
+    /** Towers that can reach the given cell (null if none ever could) */
+    List<Tower> getCoveringTowers(int cell) { return coveringTowers[cell]; }
+
+    private int cellIndex(int x, int y) {
+        return x * gridH + y;
+    }
+
+    private int toGrid(float pos) {
+        return (int) Math.floor(pos / tSize);
+    }
+}
@@ -0,0 +1,192 @@
+package alistair_game;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import org.newdawn.slick.opengl.renderer.SGL;
+
+/**
+ * Wraps the renderer Slick draws with, counting draw calls, texture binds and vertices
+ * each frame so the effect of batching can be seen. A draw call is a glBegin for Slick's
+ * usual renderer, or a batch sent to the card for VBOGLRenderer. Slick only binds a
+ * texture when it isn't already bound, so every bind counted is a real one.
+ * <p>
+ * Has to be given to Renderer.setRenderer before Slick draws anything.
+ */
+class DrawCounter implements SGL {
+    private final SGL gl;
+    /** glBegins, draws made straight through OpenGL, binds and vertices this frame */
+    private int begins = 0, direct = 0, binds = 0, vertices = 0;
+    /** Batches VBOGLRenderer had drawn at the end of the last frame */
+    private int lastFlushes = 0;
+    /** Counts for the last whole frame. Written by the OpenGL thread, read by anyone */
+    private volatile int lastDraws = 0, lastBinds = 0, lastVertices = 0;
+
+    DrawCounter(SGL gl) {
+        this.gl = gl;
+    }
+
+    @Override
+    public void glBegin(int geomType) {
+        begins++;
+        gl.glBegin(geomType);
+    }
+
+    @Override
+    public void glBindTexture(int target, int id) {
+        binds++;
+        gl.glBindTexture(target, id);
+    }
+
+    @Override
+    public void glVertex2f(float x, float y) {
+        vertices++;
+        gl.glVertex2f(x, y);
+    }
+
+    @Override
+    public void glVertex3f(float x, float y, float z) {
+        vertices++;
+        gl.glVertex3f(x, y, z);
+    }
+
+    /** Counts draw calls made straight through OpenGL rather than through Slick. */
+    void countDraws(int n) {
+        direct += n;
+    }
+
+    /** Call at the end of every frame. */
+    void endFrame() {
+        int draws = begins;
+        if (gl instanceof VBOGLRenderer) {
+            // A glBegin only adds to a batch here, so count the batches instead
+            int flushes = ((VBOGLRenderer) gl).getFlushCount();
+            draws = flushes - lastFlushes;
+            lastFlushes = flushes;
+        }
+        lastDraws = draws + direct;
+        lastBinds = binds;
+        lastVertices = vertices;
+        begins = direct = binds = vertices = 0;
+    }
+
+    // Everything else goes straight through
+
+    @Override
+    public void flush() { gl.flush(); }
+    @Override
+    public void initDisplay(int width, int height) { gl.initDisplay(width, height); }
+    @Override
+    public void enterOrtho(int xsize, int ysize) { gl.enterOrtho(xsize, ysize); }
+    @Override
+    public void glClearColor(float r, float g, float b, float a) { gl.glClearColor(r, g, b, a); }
+    @Override
+    public void glClipPlane(int plane, DoubleBuffer buffer) { gl.glClipPlane(plane, buffer); }
+    @Override
+    public void glScissor(int x, int y, int width, int height) { gl.glScissor(x, y, width, height); }
+    @Override
+    public void glLineWidth(float width) { gl.glLineWidth(width); }
+    @Override
+    public void glClear(int value) { gl.glClear(value); }
+    @Override
+    public void glColorMask(boolean red, boolean green, boolean blue, boolean alpha) {
+        gl.glColorMask(red, green, blue, alpha);
+    }
+    @Override
+    public void glLoadIdentity() { gl.glLoadIdentity(); }
+    @Override
+    public void glGetInteger(int id, IntBuffer ret) { gl.glGetInteger(id, ret); }
+    @Override
+    public void glGetFloat(int id, FloatBuffer ret) { gl.glGetFloat(id, ret); }
+    @Override
+    public void glEnable(int item) { gl.glEnable(item); }
+    @Override
+    public void glDisable(int item) { gl.glDisable(item); }
+    @Override
+    public void glGetTexImage(int target, int level, int format, int type, ByteBuffer pixels) {
+        gl.glGetTexImage(target, level, format, type, pixels);
+    }
+    @Override
+    public void glDeleteTextures(IntBuffer buffer) { gl.glDeleteTextures(buffer); }
+    @Override
+    public void glColor4f(float r, float g, float b, float a) { gl.glColor4f(r, g, b, a); }
+    @Override
+    public void glTexCoord2f(float u, float v) { gl.glTexCoord2f(u, v); }
+    @Override
+    public void glRotatef(float angle, float x, float y, float z) { gl.glRotatef(angle, x, y, z); }
+    @Override
+    public void glTranslatef(float x, float y, float z) { gl.glTranslatef(x, y, z); }
+    @Override
+    public void glEnd() { gl.glEnd(); }
+    @Override
+    public void glTexEnvi(int target, int mode, int value) { gl.glTexEnvi(target, mode, value); }
+    @Override
+    public void glPointSize(float size) { gl.glPointSize(size); }
+    @Override
+    public void glScalef(float x, float y, float z) { gl.glScalef(x, y, z); }
+    @Override
+    public void glPushMatrix() { gl.glPushMatrix(); }
+    @Override
+    public void glPopMatrix() { gl.glPopMatrix(); }
+    @Override
+    public void glBlendFunc(int src, int dest) { gl.glBlendFunc(src, dest); }
+    @Override
+    public int glGenLists(int count) { return gl.glGenLists(count); }
+    @Override
+    public void glNewList(int id, int option) { gl.glNewList(id, option); }
+    @Override
+    public void glEndList() { gl.glEndList(); }
+    @Override
+    public void glCallList(int id) { gl.glCallList(id); }
+    @Override
+    public void glCopyTexImage2D(int target, int level, int internalFormat, int x, int y, int width, int height,
+            int border) {
+        gl.glCopyTexImage2D(target, level, internalFormat, x, y, width, height, border);
+    }
+    @Override
+    public void glReadPixels(int x, int y, int width, int height, int format, int type, ByteBuffer pixels) {
+        gl.glReadPixels(x, y, width, height, format, type, pixels);
+    }
+    @Override
+    public void glTexParameteri(int target, int param, int value) { gl.glTexParameteri(target, param, value); }
+    @Override
+    public float[] getCurrentColor() { return gl.getCurrentColor(); }
+    @Override
+    public void glDeleteLists(int list, int count) { gl.glDeleteLists(list, count); }
+    @Override
+    public void glDepthMask(boolean mask) { gl.glDepthMask(mask); }
+    @Override
+    public void glClearDepth(float value) { gl.glClearDepth(value); }
+    @Override
+    public void glDepthFunc(int func) { gl.glDepthFunc(func); }
+    @Override
+    public void setGlobalAlphaScale(float alphaScale) { gl.setGlobalAlphaScale(alphaScale); }
+    @Override
+    public void glLoadMatrix(FloatBuffer buffer) { gl.glLoadMatrix(buffer); }
+    @Override
+    public void glGenTextures(IntBuffer ids) { gl.glGenTextures(ids); }
+    @Override
+    public void glGetError() { gl.glGetError(); }
+    @Override
+    public void glTexImage2D(int target, int i, int dstPixelFormat, int width, int height, int j, int srcPixelFormat,
+            int glUnsignedByte, ByteBuffer textureBuffer) {
+        gl.glTexImage2D(target, i, dstPixelFormat, width, height, j, srcPixelFormat, glUnsignedByte, textureBuffer);
+    }
+    @Override
+    public void glTexSubImage2D(int glTexture2d, int i, int pageX, int pageY, int width, int height, int glBgra,
+            int glUnsignedByte, ByteBuffer scratchByteBuffer) {
+        gl.glTexSubImage2D(glTexture2d, i, pageX, pageY, width, height, glBgra, glUnsignedByte, scratchByteBuffer);
+    }
+    @Override
+    public boolean canTextureMirrorClamp() { return gl.canTextureMirrorClamp(); }
+    @Override
+    public boolean canSecondaryColor() { return gl.canSecondaryColor(); }
+    @Override
+    public void glSecondaryColor3ubEXT(byte b, byte c, byte d) { gl.glSecondaryColor3ubEXT(b, c, d); }
+
+    int getDraws() { return lastDraws; }
+    int getBinds() { return lastBinds; }
+    int getVertices() { return lastVertices; }
+}
@@ -0,0 +1,226 @@
+package alistair_game;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+import org.newdawn.slick.Color;
+import org.newdawn.slick.opengl.Texture;
+import org.newdawn.slick.opengl.renderer.Renderer;
+
+/**
+ * One frame's map sprites, in two stages. The OpenGL thread copies what it needs out of
+ * the World (capture), another thread turns that into quads (prepare), then the OpenGL
+ * thread draws them with one glDrawArrays per layer and texture (submit).
+ * <p>
+ * Only one thread has a DrawList at a time (see RenderPrep), so none of it is locked.
+ */
+class DrawList {
+    /** Layers, in the order they're drawn */
+    static final int TILES = 0, ENEMIES = 1, TOWERS = 2, PROJECTILES = 3, LAYERS = 4;
+    /** Floats per vertex: x, y, u, v, r, g, b, a */
+    private static final int FLOATS = 8, STRIDE = FLOATS * 4;
+
+    // Captured from the World
+    /** Fraction of the next tick that had passed, for interpolating */
+    private float alpha;
+    /** Part of the map on screen (pixels) */
+    private float viewX, viewY, viewW, viewH;
+    /** Tile types in view, a column at a time, starting from (tileX, tileY) */
+    private byte[] tiles = new byte[0];
+    private int tileX, tileY, tileW, tileH, tSize;
+    private SpriteDef[] tileDefs;
+    /** Sprites, a layer at a time: start of tick position, position, look */
+    private float[] fromX = new float[64], fromY = new float[64], toX = new float[64], toY = new float[64];
+    private SpriteDef[] defs = new SpriteDef[64];
+    private Color[] cols = new Color[64];
+    private int sprites = 0;
+    private int[] layerEnd = new int[LAYERS];
+
+    // Prepared
+    private FloatBuffer vertices = BufferUtils.createFloatBuffer(64 * 4 * FLOATS);
+    /** Runs of quads sharing a texture: texture, first quad, number of quads */
+    private Texture[] runTexture = new Texture[16];
+    private int[] runFirst = new int[16], runCount = new int[16];
+    private int runs = 0, quads = 0;
+    private int[] layerRunEnd = new int[LAYERS];
+    /** Whether the next quad starts a run whatever its texture, because it's in the next layer */
+    private boolean newLayer;
+
+    /**
+     * Starts a capture, forgetting the last one.
+     * @param alpha Fraction of the next tick that has passed
+     * @param view Part of the map on screen
+     */
+    void begin(float alpha, Camera view) {
+        this.alpha = alpha;
+        viewX = view.getX();
+        viewY = view.getY();
+        viewW = view.getViewWidth();
+        viewH = view.getViewHeight();
+        sprites = 0;
+        Arrays.fill(layerEnd, 0);
+    }
+
+    /**
+     * Copies the tiles in a region of the map.
+     * @param defs Image for each tile type
+     */
+    void addTiles(TileMap map, int minX, int minY, int maxX, int maxY, int tSize, SpriteDef[] defs) {
+        tileX = minX;
+        tileY = minY;
+        tileW = Math.max(0, maxX - minX + 1);
+        tileH = Math.max(0, maxY - minY + 1);
+        this.tSize = tSize;
+        tileDefs = defs;
+        if (tiles.length < tileW * tileH) {
+            tiles = new byte[tileW * tileH];
+        }
+        for (int x = 0; x < tileW; x++) {
+            for (int y = 0; y < tileH; y++) {
+                tiles[x * tileH + y] = (byte) map.get(minX + x, minY + y);
+            }
+        }
+    }
+
+    /**
+     * Adds a sprite to a layer. Layers have to be added in order.
+     * @param fromX Where it was at the start of the tick (x-axis)
+     * @param fromY Where it was at the start of the tick (y-axis)
+     */
+    void add(int layer, Sprite s, float fromX, float fromY) {
+        if (sprites == defs.length) {
+            int n = sprites * 2;
+            this.fromX = Arrays.copyOf(this.fromX, n);
+            this.fromY = Arrays.copyOf(this.fromY, n);
+            toX = Arrays.copyOf(toX, n);
+            toY = Arrays.copyOf(toY, n);
+            defs = Arrays.copyOf(defs, n);
+            cols = Arrays.copyOf(cols, n);
+        }
+        this.fromX[sprites] = fromX;
+        this.fromY[sprites] = fromY;
+        toX[sprites] = s.getX();
+        toY[sprites] = s.getY();
+        defs[sprites] = s.getDef();
+        cols[sprites] = s.getColor();
+        sprites++;
+        for (int l = layer; l < LAYERS; l++) {
+            layerEnd[l] = sprites;
+        }
+    }
+
+    /** Adds a sprite that doesn't move. */
+    void add(int layer, Sprite s) {
+        add(layer, s, s.getX(), s.getY());
+    }
+
+    /** Turns what was captured into quads: interpolated, culled to the view, in runs by texture. Any thread. */
+    void prepare() {
+        vertices.clear();
+        runs = quads = 0;
+        newLayer = true;
+        // Tiles, a pass per type so they still share runs if they're in different textures
+        for (int type = 0; tileDefs != null && type < tileDefs.length; type++) {
+            SpriteDef def = tileDefs[type];
+            float offX = (tSize - def.getWidth()) / 2f, offY = (tSize - def.getHeight()) / 2f;
+            for (int x = 0; x < tileW; x++) {
+                for (int y = 0; y < tileH; y++) {
+                    if (tiles[x * tileH + y] == type) {
+                        quad(def, (tileX + x) * tSize + offX, (tileY + y) * tSize + offY, Color.white);
+                    }
+                }
+            }
+        }
+        layerRunEnd[TILES] = runs;
+        newLayer = true;
+        int i = 0;
+        for (int layer = ENEMIES; layer < LAYERS; layer++) {
+            for (; i < layerEnd[layer]; i++) {
+                float x = fromX[i] + (toX[i] - fromX[i]) * alpha, y = fromY[i] + (toY[i] - fromY[i]) * alpha;
+                int w = defs[i].getHalfWidth(), h = defs[i].getHalfHeight();
+                if (x + w >= viewX && x - w < viewX + viewW && y + h >= viewY && y - h < viewY + viewH) {
+                    quad(defs[i], x - w, y - h, cols[i]);
+                }
+            }
+            layerRunEnd[layer] = runs;
+            newLayer = true;
+        }
+        vertices.flip();
+    }
+
+    /** Forgets the prepared quads, so nothing gets drawn. */
+    void clearPrepared() {
+        vertices.clear();
+        runs = quads = 0;
+        Arrays.fill(layerRunEnd, 0);
+    }
+
+    /** Adds a quad with its top left corner at (x, y), starting a run if the texture changes */
+    private void quad(SpriteDef def, float x, float y, Color col) {
+        if (newLayer || runTexture[runs - 1] != def.getTexture()) {
+            if (runs == runTexture.length) {
+                runTexture = Arrays.copyOf(runTexture, runs * 2);
+                runFirst = Arrays.copyOf(runFirst, runs * 2);
+                runCount = Arrays.copyOf(runCount, runs * 2);
+            }
+            runTexture[runs] = def.getTexture();
+            runFirst[runs] = quads;
+            runCount[runs++] = 0;
+            newLayer = false;
+        }
+        if (vertices.remaining() < 4 * FLOATS) {
+            FloatBuffer bigger = BufferUtils.createFloatBuffer(vertices.capacity() * 2);
+            vertices.flip();
+            bigger.put(vertices);
+            vertices = bigger;
+        }
+        float w = def.getWidth(), h = def.getHeight();
+        vertex(x, y, def.getU0(), def.getV0(), col);
+        vertex(x, y + h, def.getU0(), def.getV1(), col);
+        vertex(x + w, y + h, def.getU1(), def.getV1(), col);
+        vertex(x + w, y, def.getU1(), def.getV0(), col);
+        runCount[runs - 1]++;
+        quads++;
+    }
+
+    private void vertex(float x, float y, float u, float v, Color col) {
+        vertices.put(x).put(y).put(u).put(v).put(col.r).put(col.g).put(col.b).put(col.a);
+    }
+
+    /**
+     * Draws a prepared layer. Must be called from the OpenGL thread.
+     * @return Draw calls made
+     */
+    int submit(int layer) {
+        int from = layer == 0 ? 0 : layerRunEnd[layer - 1], to = layerRunEnd[layer];
+        if (from == to) {
+            return 0;
+        }
+        // Anything Slick's renderer has buffered has to go first
+        Renderer.get().flush();
+        GL11.glEnableClientState(GL11.GL_VERTEX_ARRAY);
+        GL11.glEnableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+        GL11.glEnableClientState(GL11.GL_COLOR_ARRAY);
+        vertices.position(0);
+        GL11.glVertexPointer(2, STRIDE, vertices);
+        vertices.position(2);
+        GL11.glTexCoordPointer(2, STRIDE, vertices);
+        vertices.position(4);
+        GL11.glColorPointer(4, STRIDE, vertices);
+        vertices.position(0);
+        for (int r = from; r < to; r++) {
+            runTexture[r].bind();
+            GL11.glDrawArrays(GL11.GL_QUADS, runFirst[r] * 4, runCount[r] * 4);
+        }
+        GL11.glDisableClientState(GL11.GL_COLOR_ARRAY);
+        GL11.glDisableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+        GL11.glDisableClientState(GL11.GL_VERTEX_ARRAY);
+        Color.white.bind();
+        return to - from;
+    }
+
+    /** Quads prepared, after culling */
+    int getQuadCount() { return quads; }
+}
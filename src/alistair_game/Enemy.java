@@ -1,29 +1,39 @@
 package alistair_game;
 
-import java.util.Iterator;
-
-import org.newdawn.slick.Image;
-import org.newdawn.slick.SlickException;
-import org.newdawn.slick.geom.Vector2f;
-
 /**
  * Sprite that moves down the path and does damage to Alistair.
  */
 class Enemy extends Movable {
     private String name;
     private int health;
+    /** Damage taken this tick, not yet applied */
+    private int pendingDamage = 0;
+    private int cell = -1; // Index of the path cell this enemy is bucketed under
+    private boolean removed = false; // Dead or reached Alistair
+    /** Null until the enemy is first stunned or burnt, most never are */
+    private Effects effects = null;
+
+    /** Status effects, and the timers that end them (made by the World the first time they're needed) */
+    private static class Effects {
+        boolean stunned = false;
+        int burnDamage = 0;
+        long burnUntil = 0;
+        TimingWheel.Timer stunTimer, burnTimer;
+    }
 
     /**
      * Create an enemy
      * @param startx x-position of start
      * @param starty y-position of start
-     * @param v Initial movement vector (dirirection and speed)
+     * @param vx Initial movement (x-axis)
+     * @param vy Initial movement (y-axis)
      * @param name Enemy type, e.g. Python
+     * @param assets Where to get the sprite image from
      */
-    Enemy(float startx, float starty, Vector2f v, String name) {
-        super(startx, starty, v, null, 0);
+    Enemy(float startx, float starty, float vx, float vy, String name, Assets assets) {
+        super(startx, starty, vx, vy, null, 0);
         this.name = name;
-        String imPath = "assets\\sprites\\enemies\\";
+        String imPath = "enemies/";
         switch (name) {
             case "python":
                 imPath += "python-icon.png";
@@ -38,11 +48,7 @@ class Enemy extends Movable {
             default:
                 throw new IllegalArgumentException("No such enemy '" + name + "'");
         }
-        try {
-            setImage(new Image(imPath));
-        } catch (SlickException e) {
-            e.printStackTrace();
-        }
+        setDef(assets.def(imPath));
     }
     
     /** Moves enemy along the precalculated path.
@@ -50,31 +56,63 @@ class Enemy extends Movable {
      * @param world Game's world instance
      * */
     void advance(float speed, World world) {
-        int nextx = world.toGrid(getX() + world.getTileSize() / 2 * Math.signum(getV().x));
-        int nexty = world.toGrid(getY() + world.getTileSize() / 2 * Math.signum(getV().y));
+        float factor = getSpeedFactor();
+        if (factor == 0) {
+            return;
+        }
+        int nextx = world.toGrid(getX() + world.getTileSize() / 2 * Math.signum(getVX()));
+        int nexty = world.toGrid(getY() + world.getTileSize() / 2 * Math.signum(getVY()));
         // If we're about to hit a wall, change direction
-        if (!world.inGridBounds(nextx, nexty) || world.getTile(nextx, nexty).isWall()) {
+        if (world.isWall(nextx, nexty)) {
             int gridx = world.toGrid(getX()), gridy = world.toGrid(getY());
             if (world.inGridBounds(gridx, gridy)) {
                 setV(speed * world.getPathXDir(gridx, gridy), speed * world.getPathYDir(gridx, gridy));
             } else {
-                setV(speed * world.defaultDir(gridx), speed * world.defaultDir(gridy));
+                setV(speed * world.defaultDir(gridx, world.getGridWidth()),
+                        speed * world.defaultDir(gridy, world.getGridHeight()));
             }
         }
-        super.advance();
+        move(getVX() * factor, getVY() * factor);
     }
 
     /**
-     * Make an enemy take damage
+     * Make an enemy take damage. Check isDead() afterwards to see if it needs removing.
      * @param damage Amount to be deducted from health
-     * @param itr The enemy to deduct from, as an iterator. (Use .iterator() on a list of enemies to convert)
      */
-    void takeDamage(int damage, Iterator<Enemy> itr) {
+    void takeDamage(int damage) {
         health -= damage;
-        if (health <= 0) {
-            itr.remove();
-        }
     }
     
+    boolean isDead() { return health <= 0; }
+    /** Whether the damage it's taken this tick will kill it */
+    boolean isDoomed() { return health - pendingDamage <= 0; }
+    int getPendingDamage() { return pendingDamage; }
+    /** Fraction of its normal speed it's moving at, 0 if stunned */
+    float getSpeedFactor() { return effects != null && effects.stunned ? 0 : 1f; }
+    int getBurnDamage() { return effects == null ? 0 : effects.burnDamage; }
+    long getBurnUntil() { return effects == null ? 0 : effects.burnUntil; }
+    TimingWheel.Timer getStunTimer() { return effects == null ? null : effects.stunTimer; }
+    TimingWheel.Timer getBurnTimer() { return effects == null ? null : effects.burnTimer; }
+    int getHealth() { return health; }
+    boolean isRemoved() { return removed; }
     String getName() { return name; }
+    int getCell() { return cell; }
+
+    void setCell(int cell) { this.cell = cell; }
+    void setRemoved() { removed = true; }
+    void setPendingDamage(int damage) { pendingDamage = damage; }
+    void setStunned(boolean stunned) { effects().stunned = stunned; }
+    void setBurn(int damage, long until) {
+        effects().burnDamage = damage;
+        effects().burnUntil = until;
+    }
+    void setStunTimer(TimingWheel.Timer t) { effects().stunTimer = t; }
+    void setBurnTimer(TimingWheel.Timer t) { effects().burnTimer = t; }
+
+    private Effects effects() {
+        if (effects == null) {
+            effects = new Effects();
+        }
+        return effects;
+    }
 }
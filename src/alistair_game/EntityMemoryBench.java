@@ -0,0 +1,74 @@
+package alistair_game;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.ObjectName;
+
+import org.newdawn.slick.geom.Vector2f;
+
+/**
+ * Measures how many bytes each enemy and projectile costs, from heap histograms taken
+ * before and after adding a batch of them to a headless World. Everything whose count
+ * grew by at least one per entity is charged to it, including the list nodes holding it.
+ * Args: [entities]
+ */
+class EntityMemoryBench {
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        LevelData level = LevelData.load("level1", "game1", MatchHost.TILE_SIZE);
+        World world = new World(MatchHost.WINDOW_W, MatchHost.WINDOW_H, MatchHost.TILE_SIZE, MatchHost.SIDEBAR_W,
+                level.getStartX(), level.getStartY(), level.newMap(), level.copyWaves(), Assets.headless(),
+                GameEvents.NONE);
+        SpriteDef projDef = world.getAssets().def("defaultproj.png");
+        // Load every class involved before the first histogram
+        world.spawnEnemy(level.getStartX(), level.getStartY(), "python");
+        world.newProjectile(new Projectile(0, 0, new Vector2f(1, 0), projDef));
+
+        Map<String, long[]> before = histogram();
+        for (int i = 0; i < n; i++) {
+            world.spawnEnemy(level.getStartX(), level.getStartY(), i % 2 == 0 ? "python" : "commerce");
+        }
+        Map<String, long[]> enemies = histogram();
+        report("enemy", n, before, enemies);
+
+        for (int i = 0; i < n; i++) {
+            world.newProjectile(new Projectile(i % 500, i % 300, new Vector2f(1, 0), projDef));
+        }
+        report("projectile", n, enemies, histogram());
+        // Keeps the world reachable until the last histogram
+        System.out.printf("%d enemies, %d projectiles%n", world.getEnemies().size(), world.getProjectiles().size());
+    }
+
+    /** Prints what grew between two histograms, per entity. */
+    private static void report(String what, int n, Map<String, long[]> from, Map<String, long[]> to) {
+        System.out.printf("Per %s (%d added):%n", what, n);
+        long total = 0;
+        for (Map.Entry<String, long[]> e : to.entrySet()) {
+            long[] old = from.getOrDefault(e.getKey(), new long[2]);
+            long count = e.getValue()[0] - old[0], bytes = e.getValue()[1] - old[1];
+            if (count >= n) {
+                System.out.printf("  %-45s %6.1f objects %6.1f bytes%n", e.getKey(), (double) count / n,
+                        (double) bytes / n);
+                total += bytes;
+            }
+        }
+        System.out.printf("  %-45s %21.1f bytes%n", "total", (double) total / n);
+    }
+
+    /** Live objects per class (after a full GC): class name to {instances, bytes}. */
+    private static Map<String, long[]> histogram() throws Exception {
+        String text = (String) ManagementFactory.getPlatformMBeanServer().invoke(
+                new ObjectName("com.sun.management:type=DiagnosticCommand"), "gcClassHistogram",
+                new Object[] {new String[0]}, new String[] {String[].class.getName()});
+        Map<String, long[]> classes = new HashMap<>();
+        for (String line : text.split("\n")) {
+            String[] cols = line.trim().split("\\s+");
+            if (cols.length >= 4 && cols[0].endsWith(":")) {
+                classes.put(cols[3], new long[] {Long.parseLong(cols[1]), Long.parseLong(cols[2])});
+            }
+        }
+        return classes;
+    }
+}
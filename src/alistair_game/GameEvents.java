@@ -0,0 +1,28 @@
+package alistair_game;
+
+/**
+ * Receives notable events from a World, e.g. to play sounds or report progress.
+ * Everything does nothing by default, so headless matches can just ignore them.
+ */
+interface GameEvents {
+    /** Sink that ignores everything */
+    GameEvents NONE = new GameEvents() {};
+
+    /**
+     * Something happened that has a sound.
+     * @param event Name of the sound in assets/audio, e.g. intro
+     */
+    default void onSound(String event) {}
+
+    /**
+     * A wave has been cleared.
+     * @param waveNum The wave that just ended
+     * @param shotsFired Projectiles fired during the wave
+     * @param shotsHit Projectiles that hit an enemy
+     * @param peakProjectiles Most projectiles alive at once
+     */
+    default void onWaveOver(int waveNum, int shotsFired, int shotsHit, int peakProjectiles) {}
+
+    /** Alistair has run out of health. */
+    default void onGameOver(int waveNum) {}
+}
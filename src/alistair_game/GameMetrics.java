@@ -0,0 +1,169 @@
+package alistair_game;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Numbers for soak tests to scrape, in Prometheus text format (see MetricsServer).
+ * <p>
+ * The game and match threads only ever bump lock-free counters and set gauges here, so
+ * recording costs a few atomic adds. Everything else, like cache sizes and per-thread
+ * allocation, is read when a scrape asks for it.
+ */
+class GameMetrics {
+    /** Histogram bucket upper bounds (seconds) for a tick, and for a whole frame */
+    private static final double[] TICK_BUCKETS = {0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.02, 0.05},
+        FRAME_BUCKETS = {0.002, 0.004, 0.008, 0.0167, 0.025, 0.033, 0.05, 0.1, 0.25};
+    /** Gauges set from the World being played */
+    private static final int ENEMIES = 0, PROJECTILES = 1, TOWERS = 2, SPAWNS_LEFT = 3, SPAWNS_OVERDUE = 4;
+    private static final String[][] GAUGES = {
+        {"alistair_enemies", "Live enemies"},
+        {"alistair_projectiles", "Live projectiles"},
+        {"alistair_towers", "Placed towers"},
+        {"alistair_wave_spawns_left", "Spawns left in the current wave"},
+        {"alistair_wave_spawns_overdue", "Spawns in the current wave that are due but haven't happened yet"},
+    };
+
+    /** Latency histogram. Safe to observe from any number of threads at once */
+    static class Histogram {
+        /** Upper bounds as they're written out, and in ns */
+        private final String[] bounds;
+        private final long[] boundNanos;
+        /** Observations per bucket (not cumulative), the last one past every bound */
+        private final LongAdder[] counts;
+        private final LongAdder sumNanos = new LongAdder();
+
+        Histogram(double[] bounds) {
+            this.bounds = new String[bounds.length];
+            boundNanos = new long[bounds.length];
+            counts = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new LongAdder();
+                if (i < bounds.length) {
+                    this.bounds[i] = BigDecimal.valueOf(bounds[i]).stripTrailingZeros().toPlainString();
+                    boundNanos[i] = Math.round(bounds[i] * 1e9);
+                }
+            }
+        }
+
+        void observe(long nanos) {
+            int i = 0;
+            while (i < boundNanos.length && nanos > boundNanos[i]) {
+                i++;
+            }
+            counts[i].increment();
+            sumNanos.add(nanos);
+        }
+
+        private void write(StringBuilder out, String name, String help) {
+            header(out, name, help, "histogram");
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                total += counts[i].sum();
+                out.append(name).append("_bucket{le=\"").append(i < bounds.length ? bounds[i] : "+Inf")
+                    .append("\"} ").append(total).append('\n');
+            }
+            out.append(name).append("_sum ").append(sumNanos.sum() / 1e9).append('\n');
+            out.append(name).append("_count ").append(total).append('\n');
+        }
+    }
+
+    private final Histogram tickTime = new Histogram(TICK_BUCKETS), frameTime = new Histogram(FRAME_BUCKETS);
+    private final LongAdder ticks = new LongAdder();
+    private final AtomicLongArray gauges = new AtomicLongArray(GAUGES.length);
+    /** Gauges read at scrape time */
+    private final List<String[]> sampledNames = new ArrayList<>();
+    private final List<LongSupplier> sampled = new ArrayList<>();
+
+    /** A simulation step has run. */
+    void tick(long nanos) {
+        ticks.increment();
+        tickTime.observe(nanos);
+    }
+
+    /** A frame (update and render) has finished. */
+    void frame(long nanos) {
+        frameTime.observe(nanos);
+    }
+
+    /** Copies the entity counts and spawn backlog of the World being played. Call from its thread. */
+    void publish(World world) {
+        gauges.lazySet(ENEMIES, world.getEnemyCount());
+        gauges.lazySet(PROJECTILES, world.getProjectileCount());
+        gauges.lazySet(TOWERS, world.getTowerCount());
+        gauges.lazySet(SPAWNS_LEFT, world.getSpawnsLeft());
+        gauges.lazySet(SPAWNS_OVERDUE, world.getSpawnsOverdue());
+    }
+
+    /** Clears the World gauges, e.g. when going back to the menu. */
+    void clearWorld() {
+        for (int i = 0; i < GAUGES.length; i++) {
+            gauges.lazySet(i, 0);
+        }
+    }
+
+    /**
+     * Adds a gauge that's read when scraped, from the server's thread. Add them all
+     * before the server starts.
+     * @param value Must be safe to call from any thread
+     */
+    void sample(String name, String help, LongSupplier value) {
+        sampledNames.add(new String[] {name, help});
+        sampled.add(value);
+    }
+
+    /** Everything, in Prometheus text format */
+    String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        tickTime.write(out, "alistair_tick_seconds", "Time taken by each simulation step");
+        frameTime.write(out, "alistair_frame_seconds", "Time taken by each frame's update and render");
+        header(out, "alistair_ticks_total", "Simulation steps run", "counter");
+        out.append("alistair_ticks_total ").append(ticks.sum()).append('\n');
+        for (int i = 0; i < GAUGES.length; i++) {
+            header(out, GAUGES[i][0], GAUGES[i][1], "gauge");
+            out.append(GAUGES[i][0]).append(' ').append(gauges.get(i)).append('\n');
+        }
+        for (int i = 0; i < sampled.size(); i++) {
+            String[] name = sampledNames.get(i);
+            header(out, name[0], name[1], "gauge");
+            out.append(name[0]).append(' ').append(sampled.get(i).getAsLong()).append('\n');
+        }
+        writeAllocations(out);
+        return out.toString();
+    }
+
+    /** Bytes allocated by each live thread so far. Prometheus' rate() turns this into an allocation rate */
+    private static void writeAllocations(StringBuilder out) {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+            return;
+        }
+        long[] ids = threads.getAllThreadIds();
+        long[] bytes = threads.getThreadAllocatedBytes(ids);
+        ThreadInfo[] infos = threads.getThreadInfo(ids);
+        header(out, "alistair_thread_allocated_bytes_total", "Bytes allocated by each thread", "counter");
+        for (int i = 0; i < ids.length; i++) {
+            if (infos[i] == null || bytes[i] < 0) {
+                // Thread ended since the ids were read
+                continue;
+            }
+            out.append("alistair_thread_allocated_bytes_total{thread=\"")
+                .append(infos[i].getThreadName().replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                .append("\",id=\"").append(ids[i]).append("\"} ").append(bytes[i]).append('\n');
+        }
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+}
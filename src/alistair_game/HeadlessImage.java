@@ -0,0 +1,20 @@
+package alistair_game;
+
+import org.newdawn.slick.Color;
+import org.newdawn.slick.Image;
+
+/**
+ * Image with a size but no texture, for sprites in a World that is never drawn.
+ */
+class HeadlessImage extends Image {
+    HeadlessImage(int width, int height) {
+        this.width = width;
+        this.height = height;
+        inited = true;
+    }
+
+    @Override
+    public void draw(float x, float y, Color filter) {
+        // Nothing to draw
+    }
+}
@@ -0,0 +1,34 @@
+package alistair_game;
+
+import org.newdawn.slick.geom.Vector2f;
+
+/**
+ * Projectile that steers towards its target every tick, so it can't miss
+ * unless the target dies first.
+ */
+class HomingProjectile extends Projectile {
+    private Enemy target;
+    private float speed;
+
+    HomingProjectile(float startx, float starty, Vector2f vec, SpriteDef def, Enemy target) {
+        super(startx, starty, vec, def);
+        this.target = target;
+        this.speed = vec.length();
+    }
+
+    /** Turn towards the target, then move. Flies straight on once the target is gone. */
+    @Override
+    void advance() {
+        if (target != null && (target.isRemoved() || target.isDoomed())) {
+            target = null;
+        }
+        if (target != null) {
+            float dx = target.getX() - getX(), dy = target.getY() - getY();
+            float len = (float) Math.sqrt(dx * dx + dy * dy);
+            if (len > 0) {
+                setV(dx / len * speed, dy / len * speed);
+            }
+        }
+        super.advance();
+    }
+}
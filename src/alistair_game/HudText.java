@@ -0,0 +1,111 @@
+package alistair_game;
+
+import org.newdawn.slick.Font;
+import org.newdawn.slick.Graphics;
+
+/**
+ * A line of HUD text made of a fixed label, a number and a fixed suffix, e.g. "Wave: 3".
+ * <p>
+ * Building the string every frame allocates, and so does the font's per-string cache
+ * when the number keeps changing. Instead the label, suffix and each digit are drawn
+ * as separate constant strings, which the font compiles once and replays from then on.
+ * Widths are measured once per font, and the digits and total width are only worked
+ * out again when the number changes, so drawing allocates nothing.
+ */
+class HudText {
+    private static final String[] DIGITS = {"0", "1", "2", "3", "4", "5", "6", "7", "8", "9"};
+    private static final String MINUS = "-";
+
+    private final String label, suffix;
+
+    /** Font the widths were measured with */
+    private Font font = null;
+    /** How far each piece moves the pen along, and the width of the last glyph drawn */
+    private int labelAdvance, suffixWidth, minusAdvance;
+    private int[] digitAdvance = new int[10], digitWidth = new int[10];
+
+    /** Layout of the number last drawn */
+    private int value;
+    private boolean laidOut = false, negative;
+    private int[] digits = new int[10]; // Least significant first
+    private int digitCount, width;
+
+    /**
+     * @param label Text before the number (can be empty)
+     * @param suffix Text after the number (can be empty)
+     */
+    HudText(String label, String suffix) {
+        this.label = label;
+        this.suffix = suffix;
+    }
+
+    /** Writes the line horizontally centred, in the Graphics' current font and colour. */
+    void drawCentered(Graphics g, int value, float x, float y) {
+        if (g.getFont() != font) {
+            measure(g.getFont());
+        }
+        if (!laidOut || value != this.value) {
+            layout(value);
+        }
+
+        float pen = x - width / 2;
+        if (!label.isEmpty()) {
+            g.drawString(label, pen, y);
+            pen += labelAdvance;
+        }
+        if (negative) {
+            g.drawString(MINUS, pen, y);
+            pen += minusAdvance;
+        }
+        for (int i = digitCount - 1; i >= 0; i--) {
+            g.drawString(DIGITS[digits[i]], pen, y);
+            pen += digitAdvance[digits[i]];
+        }
+        if (!suffix.isEmpty()) {
+            g.drawString(suffix, pen, y);
+        }
+    }
+
+    /** Splits the number into digits and works out the width of the whole line. */
+    private void layout(int value) {
+        this.value = value;
+        laidOut = true;
+        negative = value < 0;
+        // Work in negatives so Integer.MIN_VALUE doesn't overflow
+        int rest = negative ? value : -value;
+        digitCount = 0;
+        do {
+            digits[digitCount++] = -(rest % 10);
+            rest /= 10;
+        } while (rest != 0);
+
+        width = labelAdvance + (negative ? minusAdvance : 0);
+        for (int i = 0; i < digitCount; i++) {
+            width += digitAdvance[digits[i]];
+        }
+        if (suffix.isEmpty()) {
+            // The last digit only takes up its own width, not its advance
+            width += digitWidth[digits[0]] - digitAdvance[digits[0]];
+        } else {
+            width += suffixWidth;
+        }
+    }
+
+    /** Measures every piece with a new font. */
+    private void measure(Font font) {
+        this.font = font;
+        laidOut = false;
+        labelAdvance = advance(font, label);
+        minusAdvance = advance(font, MINUS);
+        suffixWidth = font.getWidth(suffix);
+        for (int d = 0; d < 10; d++) {
+            digitAdvance[d] = advance(font, DIGITS[d]);
+            digitWidth[d] = font.getWidth(DIGITS[d]);
+        }
+    }
+
+    /** How far the pen moves after drawing some text (getWidth stops at the last glyph's edge) */
+    private static int advance(Font font, String text) {
+        return text.isEmpty() ? 0 : font.getWidth(text + "0") - font.getWidth("0");
+    }
+}
@@ -0,0 +1,124 @@
+package alistair_game;
+
+import org.newdawn.slick.geom.Vector2f;
+
+/**
+ * Closed-form aiming for projectiles. Enemies walk the precalculated path at a
+ * constant speed and only turn at cell centres, so their future position is known
+ * exactly. The path is split into straight segments and, for each one, the time
+ * at which a projectile fired now could meet the enemy is a quadratic.
+ */
+class Intercept {
+    /** Longest flight time (in ticks) worth aiming for */
+    private static final float MAX_FLIGHT = 250f;
+
+    /**
+     * Works out the velocity to fire a projectile at so it meets the target.
+     * @param ox Projectile origin (x-axis)
+     * @param oy Projectile origin (y-axis)
+     * @param projSpeed Projectile speed (pixels per tick)
+     * @param target Enemy to hit
+     * @param world Game's world instance (for the enemy path)
+     * @return The projectile velocity, or null if no intercept was found
+     */
+    static Vector2f solve(float ox, float oy, float projSpeed, Enemy target, World world) {
+        float speed = target.getSpeed() * target.getSpeedFactor();
+        float px = target.getX(), py = target.getY();
+        int dx = (int) Math.signum(target.getVX()), dy = (int) Math.signum(target.getVY());
+        float t0 = 0; // Time at which the enemy starts the current segment
+
+        int gx = world.toGrid(px), gy = world.toGrid(py);
+        if (speed == 0 || !world.inGridBounds(gx, gy)) {
+            // Off the map (or stopped) so there's no path to follow, assume a straight line
+            return aimAt(ox, oy, projSpeed, px, py, dx * speed, dy * speed, 0, MAX_FLIGHT);
+        }
+
+        // If the enemy hasn't reached the centre of its cell yet, it'll get there first
+        float cx = world.toPos(gx), cy = world.toPos(gy);
+        float ahead = (cx - px) * dx + (cy - py) * dy;
+        if (ahead > 0) {
+            Vector2f hit = aimAt(ox, oy, projSpeed, px, py, dx * speed, dy * speed, t0, ahead / speed);
+            if (hit != null) {
+                return hit;
+            }
+            t0 += ahead / speed;
+            px = cx;
+            py = cy;
+        } else if (ahead < 0) {
+            // Already past the centre, so it's heading for the next cell
+            t0 += ahead / speed; // Negative, it passed the centre in the past
+            px = cx;
+            py = cy;
+        }
+
+        // Walk the path one straight run at a time
+        while (t0 < MAX_FLIGHT) {
+            dx = world.getPathXDir(gx, gy);
+            dy = world.getPathYDir(gx, gy);
+            if (dx == 0 && dy == 0) {
+                // End of the path
+                break;
+            }
+            int cells = 0;
+            while (world.inGridBounds(gx + dx, gy + dy)
+                    && world.getPathXDir(gx, gy) == dx && world.getPathYDir(gx, gy) == dy) {
+                gx += dx;
+                gy += dy;
+                cells++;
+            }
+            if (cells == 0) {
+                break;
+            }
+            float duration = cells * world.getTileSize() / speed;
+            Vector2f hit = aimAt(ox, oy, projSpeed, px, py, dx * speed, dy * speed, t0, duration);
+            if (hit != null) {
+                return hit;
+            }
+            t0 += duration;
+            px = world.toPos(gx);
+            py = world.toPos(gy);
+        }
+        return null;
+    }
+
+    /**
+     * Solves |S + V*t - O| = w * (t0 + t) for the earliest t in [0, duration].
+     * @return The projectile velocity to get there, or null if there's no root
+     */
+    private static Vector2f aimAt(float ox, float oy, float w, float sx, float sy,
+            float vx, float vy, float t0, float duration) {
+        float dx = sx - ox, dy = sy - oy;
+        float a = vx * vx + vy * vy - w * w;
+        float b = 2 * (dx * vx + dy * vy - w * w * t0);
+        float c = dx * dx + dy * dy - w * w * t0 * t0;
+
+        // Can't meet the enemy before the projectile has been fired
+        float earliest = Math.max(0, -t0);
+        float t;
+        if (Math.abs(a) < 1e-6f) {
+            // Same speed as the projectile, so the equation is linear
+            if (b == 0) {
+                return null;
+            }
+            t = -c / b;
+        } else {
+            float disc = b * b - 4 * a * c;
+            if (disc < 0) {
+                return null;
+            }
+            float root = (float) Math.sqrt(disc);
+            float t1 = (-b - root) / (2 * a), t2 = (-b + root) / (2 * a);
+            float lo = Math.min(t1, t2), hi = Math.max(t1, t2);
+            t = lo >= earliest ? lo : hi;
+        }
+        if (t < earliest || t > duration) {
+            return null;
+        }
+
+        Vector2f vec = new Vector2f(dx + vx * t, dy + vy * t);
+        if (vec.lengthSquared() == 0) {
+            return null;
+        }
+        return vec.normalise().scale(w);
+    }
+}
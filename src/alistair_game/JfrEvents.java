@@ -0,0 +1,172 @@
+package alistair_game;
+
+import java.util.function.Supplier;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder events for the game loop, so a recording can line GC pauses and
+ * JIT activity up with what the game was doing. Record with e.g.
+ * -XX:StartFlightRecording=filename=game.jfr,settings=profile and look under
+ * "Alistair vs The World" in JDK Mission Control.
+ * <p>
+ * Every event is checked with isEnabled() before it's created, so when nothing is
+ * recording they cost a flag check and don't allocate. Phases only get recorded if they
+ * take over 1 ms by default, since there are several a tick; set a lower threshold in
+ * the recording's settings to see them all.
+ */
+class JfrEvents {
+    private static final String CATEGORY = "Alistair vs The World";
+
+    @Name("alistair.UpdatePhase")
+    @Label("Update Phase")
+    @Description("Part of a game update: input, a simulation tick's steps, or tower placement")
+    @Category({CATEGORY, "Game Loop"})
+    @StackTrace(false)
+    @Threshold("1 ms")
+    static class UpdatePhase extends Event {
+        @Label("Phase")
+        String phase;
+    }
+
+    @Name("alistair.RenderPhase")
+    @Label("Render Phase")
+    @Description("Part of drawing a frame")
+    @Category({CATEGORY, "Game Loop"})
+    @StackTrace(false)
+    @Threshold("1 ms")
+    static class RenderPhase extends Event {
+        @Label("Phase")
+        String phase;
+    }
+
+    @Name("alistair.WaveStart")
+    @Label("Wave Start")
+    @Category({CATEGORY, "Waves"})
+    @StackTrace(false)
+    static class WaveStart extends Event {
+        @Label("Wave")
+        int wave;
+    }
+
+    @Name("alistair.WaveEnd")
+    @Label("Wave End")
+    @Category({CATEGORY, "Waves"})
+    @StackTrace(false)
+    static class WaveEnd extends Event {
+        @Label("Wave")
+        int wave;
+        @Label("Shots Fired")
+        int shotsFired;
+        @Label("Shots Hit")
+        int shotsHit;
+        @Label("Peak Projectiles")
+        int peakProjectiles;
+    }
+
+    @Name("alistair.EntityCounts")
+    @Label("Entity Counts")
+    @Description("How many of each thing the level being played has")
+    @Category({CATEGORY, "Entities"})
+    @Period("1 s")
+    @StackTrace(false)
+    static class EntityCounts extends Event {
+        @Label("Enemies")
+        int enemies;
+        @Label("Projectiles")
+        int projectiles;
+        @Label("Towers")
+        int towers;
+        @Label("Ticks")
+        long ticks;
+    }
+
+    private static final EventType UPDATE = EventType.getEventType(UpdatePhase.class),
+        RENDER = EventType.getEventType(RenderPhase.class), WAVE_START = EventType.getEventType(WaveStart.class),
+        WAVE_END = EventType.getEventType(WaveEnd.class);
+
+    /**
+     * Starts timing part of an update.
+     * @param phase Constant name for the part, e.g. "tick"
+     * @return The event to pass to end, or null if it's not being recorded
+     */
+    static UpdatePhase beginUpdate(String phase) {
+        if (!UPDATE.isEnabled()) {
+            return null;
+        }
+        UpdatePhase e = new UpdatePhase();
+        e.phase = phase;
+        e.begin();
+        return e;
+    }
+
+    /**
+     * Starts timing part of drawing a frame.
+     * @param phase Constant name for the part, e.g. "tiles"
+     * @return The event to pass to end, or null if it's not being recorded
+     */
+    static RenderPhase beginRender(String phase) {
+        if (!RENDER.isEnabled()) {
+            return null;
+        }
+        RenderPhase e = new RenderPhase();
+        e.phase = phase;
+        e.begin();
+        return e;
+    }
+
+    /** Finishes timing a phase, if it's being recorded. */
+    static void end(Event e) {
+        if (e != null) {
+            e.commit();
+        }
+    }
+
+    static void waveStart(int wave) {
+        if (WAVE_START.isEnabled()) {
+            WaveStart e = new WaveStart();
+            e.wave = wave;
+            e.commit();
+        }
+    }
+
+    static void waveEnd(int wave, int shotsFired, int shotsHit, int peakProjectiles) {
+        if (WAVE_END.isEnabled()) {
+            WaveEnd e = new WaveEnd();
+            e.wave = wave;
+            e.shotsFired = shotsFired;
+            e.shotsHit = shotsHit;
+            e.peakProjectiles = peakProjectiles;
+            e.commit();
+        }
+    }
+
+    /**
+     * Samples entity counts once a second while a recording wants them. The counts are
+     * read from the recorder's thread, so they can be a tick out.
+     * @param world The World being played, or null in the menu
+     */
+    static void sampleCounts(Supplier<World> world) {
+        FlightRecorder.addPeriodicEvent(EntityCounts.class, () -> {
+            World w = world.get();
+            EntityCounts e = new EntityCounts();
+            if (w == null || !e.isEnabled()) {
+                return;
+            }
+            e.enemies = w.getEnemies().size();
+            e.projectiles = w.getProjectiles().size();
+            e.towers = w.getTowers().size();
+            e.ticks = w.getTicks();
+            e.commit();
+        });
+    }
+}
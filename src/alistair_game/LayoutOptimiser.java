@@ -0,0 +1,377 @@
+package alistair_game;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Searches for the best tower layout for a level and wave file, given a number of towers
+ * to place. Layouts are scored by playing the real game headlessly to the end: waves
+ * cleared first, then Alistair's health, then how quickly it was cleared (or how long
+ * Alistair held out).
+ * <p>
+ * The search is a genetic algorithm that keeps the best few layouts found so far. Each
+ * generation breeds a batch of new layouts from them and plays them all in parallel.
+ * A new layout only survives if it beats the worst one being kept. Alistair's health
+ * never goes back up and the clock never goes back, so a match is stopped as soon as it
+ * can no longer do that. Stopping them early doesn't change the result, only how long it
+ * takes, and neither does the number of threads.
+ * <p>
+ * Towers can go on any wall cell whose range reaches the path (see CoverageMap), and
+ * cells covering more of the path are tried more often.
+ */
+class LayoutOptimiser {
+    /** How often a match checks whether it can still win a place (ticks) */
+    private static final int CUT_OFF_CHECK = 50;
+    /** Tiebreaks (clear time or time survived) are in the low bits of a score */
+    private static final int TIEBREAK_BITS = 32;
+
+    private final LevelData level;
+    private final Assets assets;
+    private final int towers;
+    private final Random random;
+    /** Wall cells a tower can go on, how much of the path each covers, and the others within 2 cells of each */
+    private final int[] slotX, slotY;
+    private final long[] slotWeight;
+    private final int[][] nearSlots;
+    /** Scores of every layout played so far, by key. Layouts that were cut off are listed as Long.MIN_VALUE */
+    private final Map<String, Long> played = new HashMap<>();
+    /** Matches played and stopped early, and ticks simulated */
+    private long evaluations = 0, cutOff = 0, ticks = 0;
+
+    /** A tower layout: a slot and tower type per tower, sorted by slot */
+    private static class Layout {
+        final int[] slots, types;
+        long score;
+
+        Layout(int[] slots, int[] types) {
+            this.slots = slots;
+            this.types = types;
+        }
+
+        String key() {
+            return Arrays.toString(slots) + Arrays.toString(types);
+        }
+    }
+
+    /**
+     * @param level Parsed level and waves
+     * @param assets Headless assets
+     * @param towers Towers to place
+     * @param seed Seed for the search, the same seed always finds the same layout
+     */
+    LayoutOptimiser(LevelData level, Assets assets, int towers, long seed) {
+        this.level = level;
+        this.assets = assets;
+        this.towers = towers;
+        random = new Random(seed);
+
+        // Let the World work out each tower's coverage, with a tower on every wall cell
+        World world = MatchHost.newWorld(level, assets);
+        List<int[]> slots = new ArrayList<>();
+        for (int x = 0; x < world.getGridWidth(); x++) {
+            for (int y = 0; y < world.getGridHeight(); y++) {
+                world.placeTower(x, y, World.TOWER_TYPES[0]);
+            }
+        }
+        for (Tower t : world.getTowers()) {
+            int covered = t.getCoveredCells().length;
+            if (covered > 0) {
+                slots.add(new int[] {world.toGrid(t.getX()), world.toGrid(t.getY()), covered});
+            }
+        }
+        if (slots.size() < towers) {
+            throw new IllegalArgumentException("Only " + slots.size() + " cells can reach the path, not "
+                    + towers);
+        }
+        slotX = new int[slots.size()];
+        slotY = new int[slots.size()];
+        slotWeight = new long[slots.size()];
+        long total = 0;
+        for (int i = 0; i < slotX.length; i++) {
+            slotX[i] = slots.get(i)[0];
+            slotY[i] = slots.get(i)[1];
+            total += slots.get(i)[2];
+            slotWeight[i] = total;
+        }
+        nearSlots = new int[slotX.length][];
+        for (int i = 0; i < slotX.length; i++) {
+            List<Integer> near = new ArrayList<>();
+            for (int j = 0; j < slotX.length; j++) {
+                if (j != i && Math.abs(slotX[i] - slotX[j]) <= 2 && Math.abs(slotY[i] - slotY[j]) <= 2) {
+                    near.add(j);
+                }
+            }
+            nearSlots[i] = near.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * Runs the search.
+     * @param keep Layouts kept each generation
+     * @param children New layouts played each generation
+     * @param generations Generations to run
+     * @param workers Plays the new layouts, one match per task
+     * @return The best layout found
+     */
+    Layout search(int keep, int children, int generations, ExecutorService workers)
+            throws InterruptedException, ExecutionException {
+        List<Layout> kept = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int gen = 0; gen <= generations; gen++) {
+            // The first generation is all random, after that they're bred from what's kept
+            List<Layout> batch = new ArrayList<>();
+            for (int i = 0; i < (gen == 0 ? keep + children : children); i++) {
+                batch.add(gen == 0 ? randomLayout() : breed(pick(kept), pick(kept)));
+            }
+            long threshold = kept.size() < keep ? Long.MIN_VALUE : kept.get(keep - 1).score;
+            play(batch, threshold, workers);
+
+            // Keep the best, the old ones first when scores tie
+            Map<String, Layout> unique = new HashMap<>();
+            for (Layout l : kept) {
+                unique.put(l.key(), l);
+            }
+            for (Layout l : batch) {
+                if (l.score != Long.MIN_VALUE && unique.putIfAbsent(l.key(), l) == null) {
+                    kept.add(l);
+                }
+            }
+            kept.sort((a, b) -> Long.compare(b.score, a.score));
+            kept.subList(Math.min(keep, kept.size()), kept.size()).clear();
+
+            double secs = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Generation %d: best %s, %d played (%d cut off), %.0f evals/sec, %.0f ticks/sec%n",
+                    gen, describe(kept.get(0).score), evaluations, cutOff, evaluations / secs, ticks / secs);
+        }
+        return kept.get(0);
+    }
+
+    /**
+     * Plays every layout in a batch that hasn't been played before, in parallel.
+     * @param threshold Score a layout has to beat to be kept. Matches stop once they can't
+     */
+    private void play(List<Layout> batch, long threshold, ExecutorService workers)
+            throws InterruptedException, ExecutionException {
+        Map<String, Future<long[]>> matches = new HashMap<>();
+        for (Layout l : batch) {
+            String key = l.key();
+            if (!played.containsKey(key) && !matches.containsKey(key)) {
+                Callable<long[]> match = () -> play(l, threshold);
+                matches.put(key, workers.submit(match));
+            }
+        }
+        for (Map.Entry<String, Future<long[]>> m : matches.entrySet()) {
+            long[] result = m.getValue().get();
+            played.put(m.getKey(), result[0]);
+            evaluations++;
+            ticks += result[1];
+            if (result[0] == Long.MIN_VALUE) {
+                cutOff++;
+            }
+        }
+        for (Layout l : batch) {
+            l.score = played.get(l.key());
+        }
+    }
+
+    /**
+     * Plays a layout to the end, or until it can't beat the threshold.
+     * @return The score (Long.MIN_VALUE if it was stopped), and the ticks played
+     */
+    private long[] play(Layout l, long threshold) {
+        World world = MatchHost.newWorld(level, assets);
+        for (int i = 0; i < l.slots.length; i++) {
+            world.placeTower(slotX[l.slots[i]], slotY[l.slots[i]], World.TOWER_TYPES[l.types[i]]);
+        }
+        while (!world.isGameOver() && !world.isCleared()) {
+            world.step(MatchHost.TICK_MS);
+            if (world.getTicks() % CUT_OFF_CHECK == 0 && bestPossible(world) <= threshold) {
+                return new long[] {Long.MIN_VALUE, world.getTicks()};
+            }
+        }
+        return new long[] {score(world), world.getTicks()};
+    }
+
+    /** Score of a finished match. Waves cleared and health, then a tiebreak */
+    private long score(World world) {
+        long main = (world.getWaveNum() - 1) * 101L + Math.max(0, world.getHealth());
+        // Clearing sooner is better. Failing later is better
+        long tiebreak = world.isCleared() ? Integer.MAX_VALUE - world.getTicks() : world.getTicks();
+        return main << TIEBREAK_BITS | tiebreak;
+    }
+
+    /**
+     * The best score a match still being played could end up with: every wave cleared right
+     * now, with the health it has
+     */
+    private long bestPossible(World world) {
+        return (level.getWaveCount() * 101L + world.getHealth()) << TIEBREAK_BITS
+                | Integer.MAX_VALUE - world.getTicks();
+    }
+
+    private String describe(long score) {
+        long main = score >> TIEBREAK_BITS, tiebreak = score & 0xffffffffL;
+        boolean cleared = main / 101 == level.getWaveCount();
+        long ms = (cleared ? Integer.MAX_VALUE - tiebreak : tiebreak) * MatchHost.TICK_MS;
+        return (main / 101) + " waves, " + (main % 101) + " health, " + (cleared ? "cleared in " : "lost after ")
+                + ms / 1000 + "s";
+    }
+
+    private Layout randomLayout() {
+        int[] slots = new int[towers], types = new int[towers];
+        for (int i = 0; i < towers; i++) {
+            slots[i] = weightedSlot(slots, i);
+            types[i] = random.nextInt(World.TOWER_TYPES.length);
+        }
+        return sorted(slots, types);
+    }
+
+    /** Picks a kept layout, the better of two at random */
+    private Layout pick(List<Layout> kept) {
+        Layout a = kept.get(random.nextInt(kept.size())), b = kept.get(random.nextInt(kept.size()));
+        return a.score >= b.score ? a : b;
+    }
+
+    /**
+     * A new layout from two others: towers chosen from both, then a few mutations. A
+     * mutation moves a tower to a nearby cell or anywhere on the map, or changes its type.
+     */
+    private Layout breed(Layout a, Layout b) {
+        // Towers from both, shuffled, first come first served for each slot
+        int[] order = new int[towers * 2];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1), o = order[i];
+            order[i] = order[j];
+            order[j] = o;
+        }
+        int[] slots = new int[towers], types = new int[towers];
+        int n = 0;
+        for (int i = 0; i < order.length && n < towers; i++) {
+            Layout from = order[i] < towers ? a : b;
+            int slot = from.slots[order[i] % towers];
+            if (indexOf(slots, n, slot) < 0) {
+                slots[n] = slot;
+                types[n++] = from.types[order[i] % towers];
+            }
+        }
+        for (; n < towers; n++) {
+            slots[n] = weightedSlot(slots, n);
+            types[n] = random.nextInt(World.TOWER_TYPES.length);
+        }
+
+        // At least one mutation, so it's not just a parent again
+        do {
+            int i = random.nextInt(towers);
+            switch (random.nextInt(3)) {
+                case 0:
+                    int[] near = nearSlots[slots[i]];
+                    int to = near.length > 0 ? near[random.nextInt(near.length)] : -1;
+                    if (to >= 0 && indexOf(slots, towers, to) < 0) {
+                        slots[i] = to;
+                    }
+                    break;
+                case 1:
+                    slots[i] = -1;
+                    slots[i] = weightedSlot(slots, towers);
+                    break;
+                default:
+                    types[i] = random.nextInt(World.TOWER_TYPES.length);
+            }
+        } while (random.nextInt(2) == 0);
+        return sorted(slots, types);
+    }
+
+    /** A random slot not among the first n, more likely the more path it covers */
+    private int weightedSlot(int[] taken, int n) {
+        while (true) {
+            long r = (long) (random.nextDouble() * slotWeight[slotWeight.length - 1]);
+            int i = Arrays.binarySearch(slotWeight, r + 1);
+            i = i < 0 ? -i - 1 : i;
+            if (indexOf(taken, n, i) < 0) {
+                return i;
+            }
+        }
+    }
+
+    private static int indexOf(int[] a, int n, int value) {
+        for (int i = 0; i < n; i++) {
+            if (a[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** A layout with its towers sorted by slot, so the same layout always has the same key */
+    private static Layout sorted(int[] slots, int[] types) {
+        Integer[] order = new Integer[slots.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(slots[a], slots[b]));
+        int[] s = new int[slots.length], t = new int[slots.length];
+        for (int i = 0; i < order.length; i++) {
+            s[i] = slots[order[i]];
+            t[i] = types[order[i]];
+        }
+        return new Layout(s, t);
+    }
+
+    /** Prints a layout's towers, and the map with them on it (first letter of each type) */
+    private void print(Layout best) {
+        System.out.println("Best layout: " + describe(best.score));
+        char[][] rows = new char[level.getGridHeight()][level.getGridWidth()];
+        TileMap map = level.newMap();
+        for (int y = 0; y < rows.length; y++) {
+            for (int x = 0; x < rows[y].length; x++) {
+                rows[y][x] = (char) ('0' + map.get(x, y));
+            }
+        }
+        for (int i = 0; i < best.slots.length; i++) {
+            String type = World.TOWER_TYPES[best.types[i]];
+            int x = slotX[best.slots[i]], y = slotY[best.slots[i]];
+            System.out.println("  " + type + " at " + x + "," + y);
+            rows[y][x] = Character.toUpperCase(type.charAt(0));
+        }
+        for (char[] row : rows) {
+            System.out.println(new String(row));
+        }
+    }
+
+    /**
+     * Finds the best layout for a level.
+     * Args: [level] [waves] [towers] [generations] [threads] [seed]
+     */
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        String levelName = args.length > 0 ? args[0] : "level1";
+        String wavesName = args.length > 1 ? args[1] : "game1";
+        int towers = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int generations = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : 1;
+
+        LevelData level = LevelData.load(levelName, wavesName, MatchHost.TILE_SIZE);
+        LayoutOptimiser optimiser = new LayoutOptimiser(level, Assets.headless(), towers, seed);
+        System.out.printf("%s with %s: %d towers, %d cells reach the path, %d threads%n", levelName, wavesName,
+                towers, optimiser.slotX.length, threads);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            optimiser.print(optimiser.search(16, 32, generations, workers));
+        } finally {
+            workers.shutdown();
+        }
+    }
+}
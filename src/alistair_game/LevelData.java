@@ -0,0 +1,232 @@
+package alistair_game;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * A level layout and its waves, as read from the level and wave files.
+ * Waves are used up as they're played, so every World gets its own copy.
+ * <p>
+ * The map's size comes from the level file itself: one row of tile digits per line,
+ * then the spawn cell's x and y. Rows are only indexed when the file is read. Tiles are
+ * decoded straight from the file's bytes a chunk at a time, when a TileMap first needs
+ * them, so a huge level doesn't cost an object (or even a byte) per cell up front.
+ * <p>
+ * An edited file can be re-read with withLevel or withWaves, which keep whichever half
+ * didn't change. Unchanged waves are shared with the old LevelData, not re-parsed.
+ */
+class LevelData {
+    private int gridW, gridH, tSize;
+    /** The level file, and where each row starts in it */
+    private byte[] text;
+    private int[] rowStart;
+    private float startX, startY;
+    private List<Wave> waves = new ArrayList<>();
+    /** Text each wave was parsed from, to spot what an edit changed */
+    private List<String> waveSources = new ArrayList<>();
+
+    private LevelData(int tSize) {
+        this.tSize = tSize;
+    }
+
+    /**
+     * Reads a level and wave file.
+     * @param levelName Level file in assets/levels (no extension)
+     * @param wavesName Wave file in assets/waves (no extension)
+     * @param tSize Side length of each tile in pixels
+     */
+    static LevelData load(String levelName, String wavesName, int tSize) throws IOException {
+        LevelData level = new LevelData(tSize);
+        level.parseLevel(read(levelPath(levelName)));
+        level.parseWaves(new String(read(wavesPath(wavesName)), StandardCharsets.UTF_8), null);
+        return level;
+    }
+
+    /** Re-reads an edited level file, keeping these waves. */
+    LevelData withLevel(byte[] text) {
+        LevelData level = new LevelData(tSize);
+        level.parseLevel(text);
+        level.waves = waves;
+        level.waveSources = waveSources;
+        return level;
+    }
+
+    /** Re-reads an edited wave file, keeping this layout. Unchanged waves are shared, not re-parsed. */
+    LevelData withWaves(String text) {
+        LevelData level = new LevelData(tSize);
+        level.gridW = gridW;
+        level.gridH = gridH;
+        level.text = this.text;
+        level.rowStart = rowStart;
+        level.startX = startX;
+        level.startY = startY;
+        level.parseWaves(text, this);
+        return level;
+    }
+
+    /** Indexes the rows and reads the spawn cell. The rows themselves are checked, not decoded. */
+    private void parseLevel(byte[] text) {
+        this.text = text;
+        int pos = skipSpace(text, 0);
+        gridW = tokenEnd(text, pos) - pos;
+        if (gridW == 0) {
+            throw new IllegalArgumentException("Level file is empty");
+        }
+
+        // Every line the same length as the first is a row, the first one that isn't is the spawn x
+        int[] starts = new int[64];
+        gridH = 0;
+        while (pos < text.length && tokenEnd(text, pos) - pos == gridW && isDigits(text, pos, pos + gridW)) {
+            if (gridH == starts.length) {
+                starts = Arrays.copyOf(starts, gridH * 2);
+            }
+            starts[gridH++] = pos;
+            pos = skipSpace(text, pos + gridW);
+        }
+        rowStart = Arrays.copyOf(starts, gridH);
+
+        // Enemy spawn location
+        Scanner scanner = new Scanner(new String(text, pos, text.length - pos, StandardCharsets.US_ASCII));
+        startX = (float) scanner.nextInt() * tSize + tSize / 2;
+        startY = (float) scanner.nextInt() * tSize + tSize / 2;
+        scanner.close();
+    }
+
+    /** Decodes one chunk of tiles from the file, for a TileMap. */
+    private void loadChunk(int cx, int cy, byte[] cells) {
+        int x0 = cx * TileMap.CHUNK, y0 = cy * TileMap.CHUNK;
+        for (int y = y0; y < Math.min(gridH, y0 + TileMap.CHUNK); y++) {
+            int row = rowStart[y], i = (y - y0) * TileMap.CHUNK;
+            for (int x = x0; x < Math.min(gridW, x0 + TileMap.CHUNK); x++) {
+                cells[i++] = (byte) (text[row + x] - '0');
+            }
+        }
+    }
+
+    private static int skipSpace(byte[] text, int pos) {
+        while (pos < text.length && Character.isWhitespace(text[pos])) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int tokenEnd(byte[] text, int pos) {
+        while (pos < text.length && !Character.isWhitespace(text[pos])) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean isDigits(byte[] text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (text[i] < '0' || text[i] > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void parseWaves(String text, LevelData previous) {
+        // Load in wave info
+        Scanner scanner = new Scanner(text);
+        // Read line-by-line
+        scanner.useDelimiter("[\\r\\n;]+");
+
+        // Wave-by-wave
+        while (scanner.hasNext()) {
+            String wave = scanner.next();
+            int index = waves.size();
+            waveSources.add(wave);
+            if (previous != null && index < previous.waves.size() && wave.equals(previous.waveSources.get(index))) {
+                waves.add(previous.waves.get(index));
+                continue;
+            }
+            Wave currWave = new Wave();
+            waves.add(currWave);
+
+            // Split into spawn sequences - enemytype/enemynum/spawnrate/starttime
+            String[] spawnSequences = wave.split(" ");
+            int seqs = spawnSequences.length;
+
+            for (int i = seqs-1; i >= 0; i--) {
+                String seq = spawnSequences[i];
+
+                // Extract info
+                String[] seqInfo = seq.split("/");
+                String enemy = seqInfo[0];
+                int enemyNum = Integer.parseInt(seqInfo[1]);
+                float spawnRate = Float.parseFloat(seqInfo[2]), spawnTime = Float.parseFloat(seqInfo[3]);
+
+                // Generate and add spawn individual instructions
+                for (int j = enemyNum; j >= 1; j--) {
+                    currWave.addInstruction(enemy, spawnTime*1000);
+                    spawnTime += spawnRate;
+                }
+            }
+        }
+        scanner.close();
+    }
+
+    private static byte[] read(String path) throws IOException {
+        try (InputStream in = AssetFiles.open(path)) {
+            return in.readAllBytes();
+        }
+    }
+
+    static String levelPath(String levelName) {
+        return "assets/levels/" + levelName + ".txt";
+    }
+
+    static String wavesPath(String wavesName) {
+        return "assets/waves/" + wavesName + ".txt";
+    }
+
+    /** Returns a fresh copy of the waves, for a new World to use up. */
+    ArrayList<Wave> copyWaves() {
+        ArrayList<Wave> copy = new ArrayList<>();
+        for (Wave w : waves) {
+            copy.add(w.copy());
+        }
+        return copy;
+    }
+
+    /** Whether the wave at an index was re-parsed since the given (older) LevelData */
+    boolean isWaveChanged(int index, LevelData older) {
+        return index >= older.waves.size() || waves.get(index) != older.waves.get(index);
+    }
+
+    /** A fresh map of the layout. Tiles are decoded from the file as the map is looked at */
+    TileMap newMap() {
+        return new TileMap(gridW, gridH, this::loadChunk);
+    }
+
+    /** Whether the layout or spawn point differs from the given LevelData */
+    boolean isLayoutChanged(LevelData older) {
+        if (text == older.text) {
+            return false;
+        }
+        if (startX != older.startX || startY != older.startY || gridW != older.gridW || gridH != older.gridH) {
+            return true;
+        }
+        for (int y = 0; y < gridH; y++) {
+            if (!Arrays.equals(text, rowStart[y], rowStart[y] + gridW,
+                    older.text, older.rowStart[y], older.rowStart[y] + gridW)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int getGridWidth() { return gridW; }
+    int getGridHeight() { return gridH; }
+    float getStartX() { return startX; }
+    float getStartY() { return startY; }
+    int getWaveCount() { return waves.size(); }
+    /** A wave as it was parsed. Copy it before playing it */
+    Wave getWave(int index) { return waves.get(index); }
+}
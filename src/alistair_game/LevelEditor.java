@@ -0,0 +1,115 @@
+package alistair_game;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Paints a copy of a level's layout while the game is paused. Every edit updates the
+ * enemy path straight away (see LivePath), so problems show up as they're made. The
+ * World only takes the edited layout once its path reaches Alistair.
+ */
+class LevelEditor {
+    /** Brush that moves the spawn point instead of painting a tile */
+    static final int SPAWN = -1;
+    /** Name of each brush, tile types first (see World.TILE_NAMES) */
+    private static final String[] BRUSH_NAMES = {"Wall", "Path", "Alistair"};
+
+    private final TileMap map;
+    private final LivePath path;
+    private int brush = 1;
+    /** The problem last reported, to only report changes */
+    private String reported;
+
+    /**
+     * @param live The World's layout. It's copied, not changed
+     * @param startX Spawn cell (x-axis)
+     * @param startY Spawn cell (y-axis)
+     */
+    LevelEditor(TileMap live, int startX, int startY) {
+        map = live.copy();
+        path = new LivePath(map, startX, startY);
+        reported = path.getProblem();
+    }
+
+    /**
+     * Paints a cell with the current brush, or with wall if erasing. With the spawn brush,
+     * the spawn point moves to just off whichever edge of the map is nearest the cell.
+     */
+    void paint(int x, int y, boolean erase) {
+        if (x < 0 || y < 0 || x >= map.getWidth() || y >= map.getHeight()) {
+            return;
+        }
+        if (brush == SPAWN && !erase) {
+            int toRight = map.getWidth() - 1 - x, toBottom = map.getHeight() - 1 - y;
+            int nearest = Math.min(Math.min(x, toRight), Math.min(y, toBottom));
+            int sx = nearest == x ? -1 : (nearest == toRight ? map.getWidth() : x),
+                sy = nearest == x || nearest == toRight ? y : (nearest == y ? -1 : map.getHeight());
+            if (sx != path.getStartX() || sy != path.getStartY()) {
+                path.setStart(sx, sy);
+                report();
+            }
+            return;
+        }
+        int type = erase ? PathTrace.WALL : brush;
+        if (map.get(x, y) != type) {
+            map.set(x, y, type);
+            if (path.cellChanged(x, y)) {
+                report();
+            }
+        }
+    }
+
+    /** Prints the path's problem when it changes, or that it's fixed */
+    private void report() {
+        String problem = path.getProblem();
+        if (problem == null ? reported != null : !problem.equals(reported)) {
+            System.out.println("GAME STATE: Level path " + (problem == null ? "reaches Alistair"
+                    : "broken: " + problem + " at " + path.getStopX() + "," + path.getStopY()));
+        }
+        reported = problem;
+    }
+
+    /** The layout in the level file format: a row of tile digits per line, then the spawn cell */
+    byte[] toText() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(map.getHeight() * (map.getWidth() + 2) + 16);
+        byte[] row = new byte[map.getWidth() + 2];
+        row[map.getWidth()] = '\r';
+        row[map.getWidth() + 1] = '\n';
+        for (int y = 0; y < map.getHeight(); y++) {
+            for (int x = 0; x < map.getWidth(); x++) {
+                row[x] = (byte) ('0' + map.get(x, y));
+            }
+            out.write(row, 0, row.length);
+        }
+        byte[] start = (path.getStartX() + "\r\n" + path.getStartY()).getBytes(StandardCharsets.US_ASCII);
+        out.write(start, 0, start.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes the layout over a level file. Only a layout whose path reaches Alistair is saved.
+     * @param levelName Level file in assets/levels (no extension)
+     * @return What was written, or null if the path is broken
+     */
+    byte[] save(String levelName) throws IOException {
+        if (path.getProblem() != null) {
+            System.out.println("GAME STATE: Not saving " + levelName + ", its path is broken (" + path.getProblem()
+                    + ")");
+            return null;
+        }
+        byte[] text = toText();
+        try (OutputStream out = new FileOutputStream(LevelData.levelPath(levelName))) {
+            out.write(text);
+        }
+        System.out.println("GAME STATE: Saved " + levelName);
+        return text;
+    }
+
+    TileMap getMap() { return map; }
+    LivePath getPath() { return path; }
+    void setBrush(int brush) { this.brush = brush; }
+    String getBrushName() { return brush == SPAWN ? "Spawn" : BRUSH_NAMES[brush]; }
+}
@@ -0,0 +1,59 @@
+package alistair_game;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes a big level for trying out scrolling maps. The path snakes left and right
+ * across the whole map with walls in between for towers, and ends at Alistair in
+ * the last row. Play it with App --level name.
+ * Args: [name] [width] [height]
+ */
+class LevelGenerator {
+    /** Rows from one pass of the path to the next */
+    private static final int SPACING = 4;
+
+    public static void main(String[] args) throws IOException {
+        String name = args.length > 0 ? args[0] : "huge";
+        int width = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int height = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        if (width < 3 || height < 3) {
+            throw new IllegalArgumentException("Map must be at least 3x3");
+        }
+
+        // Passes go along rows 1, 1 + SPACING, ... and are joined at alternate ends
+        int passes = (height - 3) / SPACING + 1, lastRow = 1 + (passes - 1) * SPACING;
+        byte[] row = new byte[width + 2];
+        row[width] = '\r';
+        row[width + 1] = '\n';
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(LevelData.levelPath(name)))) {
+            for (int y = 0; y < height; y++) {
+                int pass = (y - 1) / SPACING;
+                for (int x = 0; x < width; x++) {
+                    boolean path;
+                    if (y < 1 || y > lastRow) {
+                        path = false;
+                    } else if ((y - 1) % SPACING == 0) {
+                        // The first pass starts at the edge, where enemies walk in
+                        path = x >= (y == 1 ? 0 : 1) && x <= width - 2;
+                    } else {
+                        // Join to the next pass on the right after even passes, on the left after odd ones
+                        path = x == (pass % 2 == 0 ? width - 2 : 1);
+                    }
+                    row[x] = (byte) (path ? '1' : '0');
+                }
+                if (y == lastRow) {
+                    // Last pass runs right on even passes, left on odd ones
+                    row[passes % 2 == 1 ? width - 2 : 1] = '2';
+                }
+                out.write(row);
+            }
+            // Enemies come in from the left, on the first pass
+            out.write(("-1\r\n1").getBytes(StandardCharsets.US_ASCII));
+        }
+        System.out.printf("Wrote %dx%d level %s with %d passes%n", width, height, name, passes);
+    }
+}
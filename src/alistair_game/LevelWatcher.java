@@ -0,0 +1,209 @@
+package alistair_game;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Watches a level's files in assets/ and re-reads them when they're saved, so levels
+ * and waves can be tweaked while the game is running.
+ * <p>
+ * Edits are parsed (and the path traced) on a background thread. The result waits
+ * here until the game thread picks it up with poll() between ticks, so a World only
+ * ever sees a complete edit. Edits that don't parse, or leave no path to Alistair,
+ * are reported and ignored.
+ */
+class LevelWatcher {
+    /** How long to wait for an editor to finish saving before reading the file (ms) */
+    private static final int SETTLE_MS = 50;
+
+    /** An edit waiting to be applied to the running World */
+    static class Reload {
+        final LevelData level;
+        /** The new layout and its path. Both null if the layout didn't change */
+        final TileMap map;
+        final PathTrace path;
+        /** Which waves changed (null if none did) */
+        final boolean[] wavesChanged;
+
+        Reload(LevelData level, TileMap map, PathTrace path, boolean[] wavesChanged) {
+            this.level = level;
+            this.map = map;
+            this.path = path;
+            this.wavesChanged = wavesChanged;
+        }
+
+        /** Combines with a newer edit that came in before this one was applied */
+        Reload then(Reload next) {
+            boolean[] waves = wavesChanged;
+            if (next.wavesChanged != null) {
+                waves = waves == null ? next.wavesChanged : or(waves, next.wavesChanged);
+            }
+            return next.path != null ? new Reload(next.level, next.map, next.path, waves)
+                    : new Reload(next.level, map, path, waves);
+        }
+
+        private static boolean[] or(boolean[] a, boolean[] b) {
+            boolean[] c = new boolean[Math.max(a.length, b.length)];
+            for (int i = 0; i < c.length; i++) {
+                c[i] = (i < a.length && a[i]) || (i < b.length && b[i]);
+            }
+            return c;
+        }
+    }
+
+    private final String levelName, wavesName;
+    private final int tSize;
+    private volatile LevelData current;
+    private final AtomicReference<Reload> pending = new AtomicReference<>();
+    private WatchService watcher;
+
+    /**
+     * Starts watching the files a level was loaded from.
+     * @param level The level as it was loaded
+     */
+    LevelWatcher(String levelName, String wavesName, LevelData level, int tSize) throws IOException {
+        this.levelName = levelName;
+        this.wavesName = wavesName;
+        this.tSize = tSize;
+        this.current = level;
+
+        watcher = FileSystems.getDefault().newWatchService();
+        Paths.get(LevelData.levelPath(levelName)).getParent().register(watcher,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        Paths.get(LevelData.wavesPath(wavesName)).getParent().register(watcher,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        Thread thread = new Thread(this::watchLoop, "level-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Takes the latest edit, if there's one waiting. Call from the game thread between ticks. */
+    Reload poll() {
+        return pending.getAndSet(null);
+    }
+
+    /**
+     * Takes note of a level file the game itself has just written, so it isn't reloaded
+     * as an edit.
+     * @param text What was written to the level file
+     */
+    void saved(byte[] text) {
+        current = current.withLevel(text);
+    }
+
+    /** Whether this is watching the given level and wave files */
+    boolean isWatching(String levelName, String wavesName) {
+        return this.levelName.equals(levelName) && this.wavesName.equals(wavesName);
+    }
+
+    /** Stops watching. */
+    void close() {
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void watchLoop() {
+        Path levelFile = Paths.get(LevelData.levelPath(levelName)).getFileName(),
+            wavesFile = Paths.get(LevelData.wavesPath(wavesName)).getFileName();
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                // Editors often write a file in a few goes, so let it settle and collect everything
+                Thread.sleep(SETTLE_MS);
+                boolean levelChanged = false, wavesChanged = false;
+                while (key != null) {
+                    Path dir = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        Path name = (Path) event.context();
+                        if (name == null) {
+                            continue;
+                        }
+                        levelChanged |= name.equals(levelFile) && dir.endsWith("levels");
+                        wavesChanged |= name.equals(wavesFile) && dir.endsWith("waves");
+                    }
+                    key.reset();
+                    key = watcher.poll(SETTLE_MS, TimeUnit.MILLISECONDS);
+                }
+                if (levelChanged || wavesChanged) {
+                    reload(levelChanged, wavesChanged);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    /** Re-reads the changed files and queues the edit for the game thread. */
+    private void reload(boolean levelChanged, boolean wavesChanged) {
+        LevelData old = current, level = old;
+        try {
+            if (levelChanged) {
+                level = level.withLevel(readLoose(LevelData.levelPath(levelName)));
+            }
+            if (wavesChanged) {
+                level = level.withWaves(new String(readLoose(LevelData.wavesPath(wavesName)),
+                        StandardCharsets.UTF_8));
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("GAME STATE: Couldn't reload " + levelName + "/" + wavesName + ": " + e);
+            return;
+        }
+
+        TileMap map = null;
+        PathTrace path = null;
+        if (level.isLayoutChanged(old)) {
+            map = level.newMap();
+            path = PathTrace.trace(map, toGrid(level.getStartX()), toGrid(level.getStartY()));
+            if (path == null) {
+                System.err.println("GAME STATE: Ignoring edit to " + levelName + ", its path doesn't reach Alistair");
+                return;
+            }
+        }
+        boolean[] changed = null;
+        if (level.getWaveCount() != old.getWaveCount()) {
+            changed = new boolean[level.getWaveCount()];
+        }
+        for (int i = 0; i < level.getWaveCount(); i++) {
+            if (level.isWaveChanged(i, old)) {
+                changed = changed == null ? new boolean[level.getWaveCount()] : changed;
+                changed[i] = true;
+            }
+        }
+        if (path == null && changed == null) {
+            return;
+        }
+
+        current = level;
+        Reload reload = new Reload(level, map, path, changed);
+        pending.getAndUpdate(waiting -> waiting == null ? reload : waiting.then(reload));
+        System.out.println("GAME STATE: Reloaded " + (path != null ? levelName : "")
+                + (path != null && changed != null ? " and " : "") + (changed != null ? wavesName : ""));
+    }
+
+    /** Edits are made to the loose files, even if the game is reading from a pack */
+    private static byte[] readLoose(String path) throws IOException {
+        return Files.readAllBytes(Paths.get(path));
+    }
+
+    private int toGrid(float pos) {
+        return Math.round((pos - tSize / 2) / tSize);
+    }
+
+    /** The level as of the latest edit, for the next World to start from */
+    LevelData getCurrent() { return current; }
+}
@@ -0,0 +1,206 @@
+package alistair_game;
+
+import java.util.Arrays;
+
+/**
+ * The enemy path through a level that's being edited, kept up to date one edit at a
+ * time. It follows the same rule as PathTrace, but remembers every step and where each
+ * cell is first stepped in. A step only depends on its own cell and the ones next to
+ * it, so after an edit the path is kept up to the first step next to the edited cell
+ * and only traced again from there. Edits nowhere near the path cost nothing.
+ * <p>
+ * Instead of just failing, it says where and why the path goes wrong, and counts the
+ * forks along the way (cells where more than one way on is open, so some of the path
+ * tiles are never walked on).
+ */
+class LivePath {
+    private final TileMap level;
+    private final int gridW, gridH;
+    /** Spawn cell, just off the edge of the map */
+    private int startX, startY;
+    /** Cell of each step (x * gridH + y), the directions it came in and left by, and whether it forks */
+    private int[] cells = new int[256];
+    private byte[] inDirs = new byte[256], outDirs = new byte[256];
+    private boolean[] forks = new boolean[256];
+    private int steps = 0, forkCount = 0;
+    /** First step in each cell (-1 for none) */
+    private final int[] firstStep;
+    /** Directions each cell has been stepped into from, a bit each. Coming in the same way twice is a loop */
+    private final byte[] entered;
+    /** Where the path stops (Alistair, or where it goes wrong) and the way it came in */
+    private int stopX, stopY, stopI, stopJ;
+    /** What's wrong with the path, null if it reaches Alistair */
+    private String problem;
+
+    /**
+     * Traces the path for the first time.
+     * @param level Layout being edited. Tell this about every cell that's changed
+     * @param startX Spawn cell (x-axis)
+     * @param startY Spawn cell (y-axis)
+     */
+    LivePath(TileMap level, int startX, int startY) {
+        this.level = level;
+        gridW = level.getWidth();
+        gridH = level.getHeight();
+        firstStep = new int[gridW * gridH];
+        Arrays.fill(firstStep, -1);
+        entered = new byte[gridW * gridH];
+        setStart(startX, startY);
+    }
+
+    /** Moves the spawn cell and traces the whole path again. */
+    void setStart(int x, int y) {
+        startX = x;
+        startY = y;
+        retrace(0);
+    }
+
+    /**
+     * Brings the path up to date after a cell's tile has changed.
+     * @return Whether the path had to be traced again from some point
+     */
+    boolean cellChanged(int x, int y) {
+        int from = Integer.MAX_VALUE;
+        boolean affected = Math.abs(x - stopX) + Math.abs(y - stopY) <= 1;
+        for (int n = 0; n < 5; n++) {
+            int nx = x + (n == 1 ? 1 : n == 2 ? -1 : 0), ny = y + (n == 3 ? 1 : n == 4 ? -1 : 0);
+            if (PathTrace.inBounds(nx, ny, gridW, gridH) && firstStep[nx * gridH + ny] >= 0) {
+                from = Math.min(from, firstStep[nx * gridH + ny]);
+                affected = true;
+            }
+        }
+        if (!affected) {
+            return false;
+        }
+        retrace(Math.min(from, steps));
+        return true;
+    }
+
+    /** Throws away the path from a step on and traces it again from there. */
+    private void retrace(int from) {
+        int x = stopX, y = stopY, i = stopI, j = stopJ;
+        if (from < steps) {
+            x = cells[from] / gridH;
+            y = cells[from] % gridH;
+            i = inDirs[from] / 3 - 1;
+            j = inDirs[from] % 3 - 1;
+        }
+        for (int s = steps - 1; s >= from; s--) {
+            entered[cells[s]] &= ~(1 << inDirs[s] / 2);
+            if (firstStep[cells[s]] == s) {
+                firstStep[cells[s]] = -1;
+            }
+            if (forks[s]) {
+                forkCount--;
+            }
+        }
+        steps = from;
+        if (from == 0) {
+            walkIn();
+        } else {
+            trace(x, y, i, j);
+        }
+    }
+
+    /** Walks from the spawn cell onto the map, then traces the path. */
+    private void walkIn() {
+        int x = startX, y = startY;
+        int i = PathTrace.inwards(x, gridW), j = PathTrace.inwards(y, gridH);
+        if (i == 0 && j == 0 || i != 0 && j != 0) {
+            stop(x, y, i, j, "Spawn isn't off an edge");
+            return;
+        }
+        while (!PathTrace.inBounds(x, y, gridW, gridH)) {
+            x += i;
+            y += j;
+            if (Math.abs(x - startX) > gridW || Math.abs(y - startY) > gridH) {
+                stop(startX, startY, i, j, "Spawn is off the map");
+                return;
+            }
+        }
+        trace(x, y, i, j);
+    }
+
+    /** Follows the path from a cell (entered going i, j) to wherever it stops. */
+    private void trace(int x, int y, int i, int j) {
+        while (level.get(x, y) != PathTrace.ALISTAIR) {
+            if (level.isWall(x, y)) {
+                stop(x, y, i, j, "Runs into a wall");
+                return;
+            }
+            int cell = x * gridH + y, in = (i + 1) * 3 + (j + 1);
+            if ((entered[cell] & 1 << in / 2) != 0) {
+                stop(x, y, i, j, "Goes round in circles");
+                return;
+            }
+            int out = PathTrace.leave(level, x, y, i, j);
+            if (out < 0) {
+                stop(x, y, i, j, "Dead end");
+                return;
+            }
+            // Open ways on: straight, left and right
+            int open = (level.isWall(x + i, y + j) ? 0 : 1) + (level.isWall(x + j, y - i) ? 0 : 1)
+                    + (level.isWall(x - j, y + i) ? 0 : 1);
+            addStep(cell, in, out, open > 1);
+            entered[cell] |= 1 << in / 2;
+            i = out / 3 - 1;
+            j = out % 3 - 1;
+            x += i;
+            y += j;
+        }
+        stop(x, y, i, j, null);
+    }
+
+    private void addStep(int cell, int in, int out, boolean fork) {
+        if (steps == cells.length) {
+            cells = Arrays.copyOf(cells, steps * 2);
+            inDirs = Arrays.copyOf(inDirs, steps * 2);
+            outDirs = Arrays.copyOf(outDirs, steps * 2);
+            forks = Arrays.copyOf(forks, steps * 2);
+        }
+        cells[steps] = cell;
+        inDirs[steps] = (byte) in;
+        outDirs[steps] = (byte) out;
+        forks[steps] = fork;
+        if (firstStep[cell] < 0) {
+            firstStep[cell] = steps;
+        }
+        if (fork) {
+            forkCount++;
+        }
+        steps++;
+    }
+
+    private void stop(int x, int y, int i, int j, String problem) {
+        stopX = x;
+        stopY = y;
+        stopI = i;
+        stopJ = j;
+        this.problem = problem;
+    }
+
+    /** The path for a World to use, or null if it doesn't reach Alistair */
+    PathTrace toPath() {
+        return problem != null ? null : PathTrace.fromSteps(gridW, gridH, cells, outDirs, steps, stopX, stopY);
+    }
+
+    /** Whether the path goes through a cell */
+    boolean isOnPath(int x, int y) {
+        return PathTrace.inBounds(x, y, gridW, gridH) && firstStep[x * gridH + y] >= 0;
+    }
+
+    /** Whether the path forks the first time it goes through a cell */
+    boolean isFork(int x, int y) {
+        return isOnPath(x, y) && forks[firstStep[x * gridH + y]];
+    }
+
+    int getStartX() { return startX; }
+    int getStartY() { return startY; }
+    /** Where the path stops: Alistair, or where it goes wrong */
+    int getStopX() { return stopX; }
+    int getStopY() { return stopY; }
+    /** What's wrong with the path, null if it reaches Alistair */
+    String getProblem() { return problem; }
+    int getForkCount() { return forkCount; }
+    int getSteps() { return steps; }
+}
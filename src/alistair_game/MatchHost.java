@@ -0,0 +1,194 @@
+package alistair_game;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Runs many headless matches at once on a fixed pool of worker threads, e.g. for
+ * a match server. Each match is its own World and gets ticked every 20 ms until
+ * Alistair dies or the last wave is cleared.
+ */
+class MatchHost {
+    static final int TICK_MS = 20;
+    /** Same layout as the windowed game */
+    static final int
+        WINDOW_W = 1104, WINDOW_H = 672, TILE_SIZE = 48, SIDEBAR_W = TILE_SIZE*3;
+
+    private ScheduledExecutorService pool;
+    /** Where tick times go (null for nowhere), and how many matches are running */
+    private GameMetrics metrics;
+    private AtomicInteger running = new AtomicInteger();
+    /** Ticks run, and how many of them started more than a whole tick after they were due */
+    private LongAdder ticks = new LongAdder(), lateTicks = new LongAdder();
+
+    /** @param threads Number of worker threads, usually one per core */
+    MatchHost(int threads) {
+        this(threads, null);
+    }
+
+    /**
+     * @param threads Number of worker threads, usually one per core
+     * @param metrics Records every match's tick times, and the number of matches running
+     */
+    MatchHost(int threads, GameMetrics metrics) {
+        pool = Executors.newScheduledThreadPool(threads);
+        this.metrics = metrics;
+        if (metrics != null) {
+            metrics.sample("alistair_matches_running", "Matches being ticked", running::get);
+        }
+    }
+
+    /** A running match. Ticks itself until it's over, then stops. */
+    private class Match implements Runnable {
+        private World world;
+        private Consumer<World> onFinish;
+        private volatile ScheduledFuture<?> future;
+        private boolean finished = false;
+        /** When the next tick should start (System.nanoTime) */
+        private long due;
+
+        Match(World world, Consumer<World> onFinish) {
+            this.world = world;
+            this.onFinish = onFinish;
+        }
+
+        @Override
+        public void run() {
+            if (finished) {
+                return;
+            }
+            long start = System.nanoTime();
+            // The pool runs ticks that are behind back to back to catch up, so lateness adds up
+            if (start - due > TICK_MS * 1000000L) {
+                lateTicks.increment();
+            }
+            due += TICK_MS * 1000000L;
+            ticks.increment();
+            world.step(TICK_MS);
+            if (metrics != null) {
+                metrics.tick(System.nanoTime() - start);
+            }
+            if (world.isGameOver() || world.isCleared()) {
+                finished = true;
+                running.decrementAndGet();
+                if (future != null) {
+                    future.cancel(false);
+                }
+                onFinish.accept(world);
+            }
+        }
+    }
+
+    /**
+     * Starts ticking a match in real time.
+     * @param world A headless World, not shared with anything else
+     * @param onFinish Called (on a worker thread) once the match is over
+     */
+    void start(World world, Consumer<World> onFinish) {
+        Match m = new Match(world, onFinish);
+        running.incrementAndGet();
+        m.due = System.nanoTime() + TICK_MS * 1000000L;
+        m.future = pool.scheduleAtFixedRate(m, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /** Starts a match on a level, and a new one each time it finishes. */
+    private void keepRunning(LevelData level, Assets assets) {
+        start(newMatch(level, assets, 3), world -> keepRunning(level, assets));
+    }
+
+    /** Stops all matches and the worker threads. */
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Creates a headless World for a level, with towers along the path so it's a real match.
+     * @param level Parsed level and waves (shared, each World gets its own waves)
+     * @param assets Headless assets (shared)
+     * @param towerSpacing Place a tower on every nth wall cell next to the path
+     */
+    static World newMatch(LevelData level, Assets assets, int towerSpacing) {
+        World world = newWorld(level, assets);
+        int n = 0;
+        for (int x = 0; x < world.getGridWidth(); x++) {
+            for (int y = 0; y < world.getGridHeight(); y++) {
+                if (world.isWall(x, y) && nextToPath(world, x, y) && n++ % towerSpacing == 0) {
+                    world.placeTower(x, y, "alistair");
+                }
+            }
+        }
+        return world;
+    }
+
+    /**
+     * Creates a headless World for a level, with no towers.
+     * @param level Parsed level and waves (shared, each World gets its own waves)
+     * @param assets Headless assets (shared)
+     */
+    static World newWorld(LevelData level, Assets assets) {
+        return new World(WINDOW_W, WINDOW_H, TILE_SIZE, SIDEBAR_W, level.getStartX(), level.getStartY(),
+                level.newMap(), level.copyWaves(), assets, GameEvents.NONE);
+    }
+
+    private static boolean nextToPath(World world, int x, int y) {
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                if (!world.isWall(x + dx, y + dy)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Measures how many matches one core can keep ticking on time through start().
+     * Starts matches in steps, a quarter more each time, replacing any that finish,
+     * and stops at the first step where more than 1% of ticks started over a tick late
+     * or ticks went missing.
+     * Args: [matches to start with] [seconds per step] [metrics port, to watch it run]
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int matches = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int cores = Runtime.getRuntime().availableProcessors();
+        GameMetrics metrics = args.length > 2 ? new GameMetrics() : null;
+        MetricsServer server = metrics != null ? new MetricsServer(metrics, Integer.parseInt(args[2])) : null;
+
+        LevelData level = LevelData.load("level1", "game1", TILE_SIZE);
+        Assets assets = Assets.headless();
+        MatchHost host = new MatchHost(cores, metrics);
+        int started = 0, sustained = 0;
+        while (true) {
+            for (; started < matches; started++) {
+                host.keepRunning(level, assets);
+            }
+            // Let the new matches settle in before measuring
+            Thread.sleep(1000);
+            long ticks = host.ticks.sum(), late = host.lateTicks.sum();
+            Thread.sleep(seconds * 1000L);
+            ticks = host.ticks.sum() - ticks;
+            late = host.lateTicks.sum() - late;
+            long needed = (long) matches * seconds * 1000 / TICK_MS;
+            System.out.printf("%d matches: %d of %d ticks run, %.2f%% late%n", matches, ticks, needed,
+                    100.0 * late / Math.max(1, ticks));
+            if (late > ticks / 100 || ticks < needed * 99 / 100) {
+                break;
+            }
+            sustained = matches;
+            matches += matches / 4;
+        }
+        host.shutdown();
+        if (server != null) {
+            server.close();
+        }
+        System.out.printf("%d matches kept on time on %d cores = %d matches per core%n", sustained, cores,
+                sustained / cores);
+    }
+}
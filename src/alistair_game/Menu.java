@@ -15,12 +15,8 @@ public class Menu {
     private String[] choices = {"Start", "Options", "Quit"};
     private String title;
     
-    private static final Font
-        OPTION_FONT = new Font("Verdana", Font.BOLD, 40),
-        TITLE_FONT = new Font("Verdana", Font.BOLD, 45);
-    private static final TrueTypeFont
-        OPTION_TTF = new TrueTypeFont(OPTION_FONT, true),
-        TITLE_TTF = new TrueTypeFont(TITLE_FONT, true);
+    /** Built the first time a menu is opened (they need AWT and an OpenGL context), then shared */
+    private static TrueTypeFont optionTtf = null, titleTtf = null;
     private static final Color
         NOT_CHOSEN_COL = new Color(153, 204, 255),
         CHOSEN_COL = Color.yellow,
@@ -31,6 +27,24 @@ public class Menu {
         this.title = title;
         this.w = w;
         this.h = h;
+        if (optionTtf == null) {
+            optionTtf = new TrueTypeFont(new Font("Verdana", Font.BOLD, 40), true);
+            titleTtf = new TrueTypeFont(new Font("Verdana", Font.BOLD, 45), true);
+        }
+
+        // Create the buttons
+        for (int i = 0; i < choices.length; i++) {
+            int fontX = (w/2) - optionTtf.getWidth(choices[i])/2, 
+                fontY = i*56+252, 
+                bnW = optionTtf.getWidth(choices[i]) + 4,
+                bnH = optionTtf.getHeight() + 4;
+            
+            float bnX = (w/2) - (optionTtf.getWidth(choices[i])/2)-2, 
+                  bnY = i*56 + 250;
+            
+            buttons.add(new Button(bnX, bnY, bnW, bnH, choices[i]));
+            buttons.get(i).setText(optionTtf, fontX, fontY);
+        }
     }
     
     /** 
@@ -80,23 +94,11 @@ public class Menu {
     }
     
     void renderTitle() {
-        TITLE_TTF.drawString((w/2) - (TITLE_TTF.getWidth(title)/2), 125, title, TITLE_COL);
+        titleTtf.drawString((w/2) - (titleTtf.getWidth(title)/2), 125, title, TITLE_COL);
     }
     
     void renderOptions(Graphics g) {
         for (int i = 0; i < choices.length; i++) {
-            int fontX = (w/2) - OPTION_TTF.getWidth(choices[i])/2, 
-                fontY = i*56+252, 
-                bnW = OPTION_TTF.getWidth(choices[i]) + 4,
-                bnH = OPTION_TTF.getHeight() + 4;
-            
-            float bnX = (w/2) - (OPTION_TTF.getWidth(choices[i])/2)-2, 
-                  bnY = i*56 + 250;
-            
-            // Generates the instances of the buttons.
-            buttons.add(new Button(bnX, bnY, bnW, bnH, choices[i]));
-            buttons.get(i).setText(OPTION_TTF, fontX, fontY);
-                
             if (currentChoice == i) {
                 buttons.get(i).drawButton(g, CHOSEN_COL);
             } else {
@@ -0,0 +1,55 @@
+package alistair_game;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves GameMetrics at http://localhost:port/metrics for Prometheus to scrape. Only
+ * listens on the loopback address, so nothing off the machine can reach it.
+ */
+class MetricsServer {
+    private final HttpServer server;
+    private final GameMetrics metrics;
+
+    /**
+     * Starts serving on its own thread.
+     * @param port Port to listen on, 0 for any free one
+     */
+    MetricsServer(GameMetrics metrics, int port) throws IOException {
+        this.metrics = metrics;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", this::handle);
+        server.start();
+        System.out.println("GAME STATE: Serving metrics at http://localhost:" + getPort() + "/metrics");
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = metrics.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /** Stops serving. */
+    void close() {
+        server.stop(0);
+    }
+
+    int getPort() { return server.getAddress().getPort(); }
+}
@@ -1,38 +1,55 @@
 package alistair_game;
 
-import org.newdawn.slick.Image;
-import org.newdawn.slick.geom.Vector2f;
 
 /**
  * Object that is automatically "movable" i.e. it has a set speed.
  */
 abstract class Movable extends Sprite {
-    private Vector2f v;
+    /** Velocity (pixels per tick) */
+    private float vx, vy;
     private int damage;
+    /** Position at the start of the current tick, for interpolating between ticks */
+    private float prevX, prevY;
 
     /**
      * Create a sprite that can move.
      * @param startx start x-coord
      * @param starty start y-coord
-     * @param v initial velocity
-     * @param im sprite image file
+     * @param vx initial velocity (x-axis)
+     * @param vy initial velocity (y-axis)
+     * @param def sprite image and size
      * @param damage arbritrary int counter always >= 0
      */
-    Movable(float startx, float starty, Vector2f v, Image im, int damage) {
-        super(startx, starty, im);
-        this.v = v;
+    Movable(float startx, float starty, float vx, float vy, SpriteDef def, int damage) {
+        super(startx, starty, def);
+        this.vx = vx;
+        this.vy = vy;
         this.damage = damage;
+        prevX = startx;
+        prevY = starty;
     }
     
     /** Move according to current speed. */
     void advance() {
-        move(v.x, v.y);
+        move(vx, vy);
     }
-    
-    Vector2f getV() { return v; }
+
+    /** Remembers the current position as the start of the next tick. */
+    void savePosition() {
+        prevX = getX();
+        prevY = getY();
+    }
+
+    /** Where it was at the start of the tick, for drawing part way between */
+    float getPrevX() { return prevX; }
+    float getPrevY() { return prevY; }
+    float getVX() { return vx; }
+    float getVY() { return vy; }
+    /** Length of the velocity */
+    float getSpeed() { return (float) Math.sqrt(vx * vx + vy * vy); }
     int getDamage() { return damage; }
     
-    void setV(float x, float y) { v.x = x; v.y = y; }
+    void setV(float x, float y) { vx = x; vy = y; }
     void setDamage(int d) {
         if (d < 0) {
             throw new IllegalArgumentException("Damage must be >= 0");
@@ -0,0 +1,192 @@
+package alistair_game;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.newdawn.slick.util.ResourceLocation;
+
+/**
+ * Serves files out of an asset pack made by AssetPacker. The whole pack is memory
+ * mapped once, and each entry is read straight out of the mapping without copying it
+ * into a buffer first.
+ * <pre>
+ * header: "AVTP", version, entry count, index length (ints)
+ * index:  per entry - name (UTF), offset (long), stored length, original length (ints),
+ *         flags (byte)
+ * data:   each entry starts on a multiple of ALIGN bytes
+ * </pre>
+ */
+class PackResourceLocation implements ResourceLocation {
+    static final int MAGIC = 0x41565450, VERSION = 1; // "AVTP"
+    /** Entry data starts on a multiple of this */
+    static final int ALIGN = 64;
+    /** Entry flag for deflated data */
+    static final int DEFLATED = 1;
+
+    private static class Entry {
+        int offset, stored, size;
+        boolean deflated;
+    }
+
+    private final File file;
+    private final MappedByteBuffer data;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final URLStreamHandler urls = new URLStreamHandler() {
+        @Override
+        protected URLConnection openConnection(URL url) {
+            return new URLConnection(url) {
+                @Override
+                public void connect() {
+                }
+
+                @Override
+                public InputStream getInputStream() throws IOException {
+                    InputStream in = getResourceAsStream(url.getPath());
+                    if (in == null) {
+                        throw new IOException("No entry '" + url.getPath() + "' in " + file);
+                    }
+                    return in;
+                }
+            };
+        }
+    };
+
+    /** Maps a pack file and reads its index. */
+    PackResourceLocation(File file) throws IOException {
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (data.getInt() != MAGIC || data.getInt() != VERSION) {
+            throw new IOException(file + " isn't an asset pack (or is from another version)");
+        }
+        int count = data.getInt(), indexLength = data.getInt();
+        DataInputStream index = new DataInputStream(new SliceInputStream(slice(data.position(), indexLength)));
+        for (int i = 0; i < count; i++) {
+            String name = index.readUTF();
+            Entry e = new Entry();
+            e.offset = (int) index.readLong();
+            e.stored = index.readInt();
+            e.size = index.readInt();
+            e.deflated = (index.readByte() & DEFLATED) != 0;
+            entries.put(name, e);
+        }
+    }
+
+    /** Whether the pack has a file, e.g. assets/levels/level1.txt */
+    boolean contains(String ref) {
+        return entries.containsKey(normalise(ref));
+    }
+
+    /** Names of all the files in the pack under a folder, in order. */
+    List<String> list(String dir) {
+        String prefix = normalise(dir);
+        prefix = prefix.endsWith("/") ? prefix : prefix + "/";
+        List<String> names = new ArrayList<>();
+        for (String name : entries.keySet()) {
+            if (name.startsWith(prefix)) {
+                names.add(name);
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    @Override
+    public InputStream getResourceAsStream(String ref) {
+        Entry e = entries.get(normalise(ref));
+        if (e == null) {
+            return null;
+        }
+        InputStream in = new SliceInputStream(slice(e.offset, e.stored));
+        return e.deflated ? new InflaterInputStream(in, new Inflater(), 8192) : in;
+    }
+
+    @Override
+    public URL getResource(String ref) {
+        String name = normalise(ref);
+        if (!entries.containsKey(name)) {
+            return null;
+        }
+        try {
+            return new URL("avtpack", null, -1, name, urls);
+        } catch (MalformedURLException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /** A view of part of the mapping, sharing its memory */
+    private ByteBuffer slice(int offset, int length) {
+        ByteBuffer view = data.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice();
+    }
+
+    /** Pack names always use forward slashes and are relative to the game folder */
+    static String normalise(String ref) {
+        String name = ref.replace('\\', '/');
+        while (name.startsWith("./") || name.startsWith("/")) {
+            name = name.substring(name.startsWith("/") ? 1 : 2);
+        }
+        return name;
+    }
+
+    /** Reads straight out of a buffer. */
+    private static class SliceInputStream extends InputStream {
+        private final ByteBuffer buf;
+
+        SliceInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buf.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buf.remaining());
+            buf.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buf.remaining()));
+            buf.position(buf.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
+    }
+}
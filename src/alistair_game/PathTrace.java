@@ -0,0 +1,131 @@
+package alistair_game;
+
+import java.util.Arrays;
+
+/**
+ * The enemy path through a level layout. Enemies walk in from the start, keep going
+ * straight until they're about to hit a wall, then turn left if they can and right
+ * otherwise, until they reach Alistair.
+ * <p>
+ * Directions are stored one byte per cell, so even a huge map's path is cheap to keep.
+ */
+class PathTrace {
+    /** Meaning of integers in level file (see World.TILE_NAMES) */
+    static final int WALL = 0, ALISTAIR = 2;
+
+    private final int gridH;
+    /** Direction to move in from each cell, as (dx + 1) * 3 + (dy + 1). 4 is standing still */
+    private final byte[] dirs;
+    private int endX, endY;
+
+    private PathTrace(int gridW, int gridH) {
+        this.gridH = gridH;
+        dirs = new byte[gridW * gridH];
+        Arrays.fill(dirs, (byte) 4);
+    }
+
+    /**
+     * Traces the path.
+     * @param level Level layout. Only the cells along the path are looked at
+     * @param startX Grid cell enemies spawn in (x-axis), can be just off the map
+     * @param startY Grid cell enemies spawn in (y-axis), can be just off the map
+     * @return The path, or null if it doesn't lead to Alistair (it runs off the map,
+     *         hits a dead end or goes round in circles)
+     */
+    static PathTrace trace(TileMap level, int startX, int startY) {
+        int gridW = level.getWidth(), gridH = level.getHeight();
+        PathTrace path = new PathTrace(gridW, gridH);
+        int x = startX, y = startY;
+        int i = inwards(x, gridW), j = inwards(y, gridH);
+        if (i == 0 && j == 0 && !inBounds(x, y, gridW, gridH)) {
+            return null;
+        }
+        while (!inBounds(x, y, gridW, gridH)) {
+            x += i;
+            y += j;
+            if (Math.abs(x - startX) > gridW || Math.abs(y - startY) > gridH) {
+                return null;
+            }
+        }
+
+        // Each cell can only be left in one direction, so visiting a cell more than
+        // four times means the path is going round in circles
+        byte[] visits = new byte[gridW * gridH];
+        while (level.get(x, y) != ALISTAIR) {
+            if (level.isWall(x, y) || ++visits[x * gridH + y] > 4) {
+                return null;
+            }
+            int dir = leave(level, x, y, i, j);
+            if (dir < 0) {
+                // Dead end
+                return null;
+            }
+            path.dirs[x * gridH + y] = (byte) dir;
+            i = dir / 3 - 1;
+            j = dir % 3 - 1;
+            x += i;
+            y += j;
+        }
+        path.endX = x;
+        path.endY = y;
+        return path;
+    }
+
+    /**
+     * Which way the path leaves a cell, given the way it came in. It keeps going straight
+     * unless that's a wall, then turns left if it can and right otherwise.
+     * @param i Direction it came in (x-axis)
+     * @param j Direction it came in (y-axis)
+     * @return Direction as (dx + 1) * 3 + (dy + 1), or -1 at a dead end
+     */
+    static int leave(TileMap level, int x, int y, int i, int j) {
+        // Check if we've hit a wall yet
+        if (level.isWall(x + i, y + j)) {
+            // OK, try turning left (anti-clockwise)
+            int oldI = i;
+            i = j;
+            j = -oldI;
+
+            // Check again
+            if (level.isWall(x + i, y + j)) {
+                // Failed, turn right then (need to do a 180)
+                i = -i;
+                j = -j;
+            }
+        }
+        if (level.isWall(x + i, y + j)) {
+            return -1;
+        }
+        return (i + 1) * 3 + (j + 1);
+    }
+
+    /**
+     * Builds a path from the steps along it, in order (see LivePath).
+     * @param cells Cell of each step, as x * gridH + y
+     * @param dirs Direction each step leaves its cell by
+     */
+    static PathTrace fromSteps(int gridW, int gridH, int[] cells, byte[] dirs, int steps, int endX, int endY) {
+        PathTrace path = new PathTrace(gridW, gridH);
+        for (int s = 0; s < steps; s++) {
+            path.dirs[cells[s]] = dirs[s];
+        }
+        path.endX = endX;
+        path.endY = endY;
+        return path;
+    }
+
+    static boolean inBounds(int x, int y, int gridW, int gridH) {
+        return x >= 0 && y >= 0 && x < gridW && y < gridH;
+    }
+
+    /** Direction that points back onto the map from just off it */
+    static int inwards(int val, int size) {
+        return val < 0 ? 1 : (val >= size ? -1 : 0);
+    }
+
+    int getXDir(int x, int y) { return dirs[x * gridH + y] / 3 - 1; }
+    int getYDir(int x, int y) { return dirs[x * gridH + y] % 3 - 1; }
+    /** Alistair's cell, where the path ends */
+    int getEndX() { return endX; }
+    int getEndY() { return endY; }
+}
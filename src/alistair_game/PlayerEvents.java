@@ -0,0 +1,28 @@
+package alistair_game;
+
+/**
+ * Events for a game being played on screen: plays sounds and logs progress.
+ */
+class PlayerEvents implements GameEvents {
+    private AudioController audio;
+
+    PlayerEvents(AudioController audio) {
+        this.audio = audio;
+    }
+
+    @Override
+    public void onSound(String event) {
+        audio.play(event);
+    }
+
+    @Override
+    public void onWaveOver(int waveNum, int shotsFired, int shotsHit, int peakProjectiles) {
+        System.out.printf("GAME STATE: Wave %d over. Shots fired: %d, hits: %d (%.0f%%), peak live projectiles: %d%n",
+                waveNum, shotsFired, shotsHit, shotsFired == 0 ? 0f : 100f * shotsHit / shotsFired, peakProjectiles);
+    }
+
+    @Override
+    public void onGameOver(int waveNum) {
+        System.out.println("we ded");
+    }
+}
@@ -1,13 +1,17 @@
 package alistair_game;
 
-import org.newdawn.slick.Image;
 import org.newdawn.slick.geom.Vector2f;
 
 /** 
  * Moving item fired by a tower.
  */
 public class Projectile extends Movable {
-    Projectile(float startx, float starty, Vector2f vec, Image im) {
-        super(startx, starty, vec, im, 1);
+    Projectile(float startx, float starty, Vector2f vec, SpriteDef def) {
+        super(startx, starty, vec.x, vec.y, def, 1);
+    }
+
+    /** Damages whatever the projectile hit. The damage is applied once the tick's hits are all in. */
+    void hit(Enemy e, World world) {
+        world.damage(e, getDamage());
     }
 }
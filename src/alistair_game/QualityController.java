@@ -0,0 +1,75 @@
+package alistair_game;
+
+/**
+ * Watches how long each frame's work takes and, when the moving average goes over
+ * budget, sheds optional work one level at a time. Once there's enough headroom
+ * again it brings it back, one level at a time. Every change is logged with a
+ * timestamp so it can be lined up with profiler data.
+ */
+class QualityController {
+    /** What's been dropped at each level. Each level also drops everything before it */
+    static final int FULL = 0, NO_RANGE_OVERLAYS = 1, NO_PROJECTILE_SPRITES = 2, NO_AUDIO_VARIETY = 3,
+        SLOW_HUD = 4;
+    private static final String[] LEVEL_NAMES = {
+        "full quality", "range overlays off", "projectile sprites off", "audio variety off", "slow HUD refresh"
+    };
+    /** Frames in the moving average */
+    private static final int WINDOW = 30;
+    /** Least time between changes, so each one has time to show up in the average */
+    private static final long HOLD_MS = 1000;
+    /** Fraction of the budget the average must drop below before restoring anything */
+    private static final float HEADROOM = 0.7f;
+    /** How often the HUD is refreshed once it's been slowed down (ms) */
+    private static final int SLOW_HUD_INTERVAL = 250;
+
+    private float budgetMs;
+    private float[] samples = new float[WINDOW];
+    private float sum = 0;
+    private int next = 0, count = 0, level = FULL;
+    private long lastChange = 0;
+
+    /** @param budgetMs Most time a frame's work should take (ms) */
+    QualityController(float budgetMs) {
+        this.budgetMs = budgetMs;
+    }
+
+    /**
+     * Adds a frame to the moving average, and changes level if needed.
+     * @param workMs Time spent updating and rendering (not waiting for vsync)
+     * @param nowMs Current time
+     */
+    void frame(float workMs, long nowMs) {
+        if (count == WINDOW) {
+            sum -= samples[next];
+        } else {
+            count++;
+        }
+        samples[next] = workMs;
+        sum += workMs;
+        next = (next + 1) % WINDOW;
+
+        if (count < WINDOW || nowMs - lastChange < HOLD_MS) {
+            return;
+        }
+        float avg = sum / count;
+        if (avg > budgetMs && level < SLOW_HUD) {
+            setLevel(level + 1, avg, nowMs);
+        } else if (avg < budgetMs * HEADROOM && level > FULL) {
+            setLevel(level - 1, avg, nowMs);
+        }
+    }
+
+    private void setLevel(int newLevel, float avg, long nowMs) {
+        System.out.printf("QUALITY: %d -> %d (%s) at %d, avg frame work %.1f ms, budget %.1f ms%n",
+                level, newLevel, LEVEL_NAMES[newLevel], System.currentTimeMillis(), avg, budgetMs);
+        level = newLevel;
+        lastChange = nowMs;
+    }
+
+    boolean showRangeOverlays() { return level < NO_RANGE_OVERLAYS; }
+    boolean showProjectileSprites() { return level < NO_PROJECTILE_SPRITES; }
+    boolean allowAudioVariety() { return level < NO_AUDIO_VARIETY; }
+    /** Time between HUD refreshes (ms), 0 for every frame */
+    int getHudInterval() { return level < SLOW_HUD ? 0 : SLOW_HUD_INTERVAL; }
+    int getLevel() { return level; }
+}
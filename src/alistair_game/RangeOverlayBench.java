@@ -0,0 +1,110 @@
+package alistair_game;
+
+import java.util.Random;
+
+import org.lwjgl.opengl.GL11;
+import org.newdawn.slick.AppGameContainer;
+import org.newdawn.slick.BasicGame;
+import org.newdawn.slick.Color;
+import org.newdawn.slick.GameContainer;
+import org.newdawn.slick.Graphics;
+import org.newdawn.slick.SlickException;
+
+/**
+ * Compares drawing 1000 range circles with Graphics ovals (the old Tower.drawRange)
+ * against the cached, batched RangeOverlays. Opens a window, alternates between the
+ * two for a few rounds and prints the best time of each per 1000 overlays.
+ * Args: [overlays] [frames per round]
+ */
+class RangeOverlayBench extends BasicGame {
+    private static final int ROUNDS = 6;
+
+    private int overlays, frames, frame = 0;
+    private float[] xs, ys;
+    private RangeOverlays cached = new RangeOverlays();
+    private double[] best = {Double.MAX_VALUE, Double.MAX_VALUE};
+    private long roundTime = 0;
+
+    RangeOverlayBench(int overlays, int frames) {
+        super("Range overlay benchmark");
+        this.overlays = overlays;
+        this.frames = frames;
+        Random rng = new Random(1);
+        xs = new float[overlays];
+        ys = new float[overlays];
+        for (int i = 0; i < overlays; i++) {
+            xs[i] = rng.nextFloat() * MatchHost.WINDOW_W;
+            ys[i] = rng.nextFloat() * MatchHost.WINDOW_H;
+        }
+    }
+
+    @Override
+    public void init(GameContainer gc) throws SlickException {
+        gc.setShowFPS(false);
+        gc.setVSync(false);
+    }
+
+    @Override
+    public void update(GameContainer gc, int delta) throws SlickException {
+    }
+
+    @Override
+    public void render(GameContainer gc, Graphics g) throws SlickException {
+        int round = frame / frames, mode = round % 2;
+        // Wait for earlier frames, so only this frame's drawing is timed
+        GL11.glFinish();
+        long start = System.nanoTime();
+        if (mode == 0) {
+            drawOvals(g);
+        } else {
+            for (int i = 0; i < overlays; i++) {
+                cached.add(xs[i], ys[i], 150f);
+            }
+            cached.flush();
+        }
+        GL11.glFinish();
+        roundTime += System.nanoTime() - start;
+
+        frame++;
+        if (frame % frames == 0) {
+            // The first round of each is warm-up
+            if (round >= 2) {
+                double ms = roundTime / 1e6 / frames * 1000 / overlays;
+                best[mode] = Math.min(best[mode], ms);
+            }
+            roundTime = 0;
+        }
+        if (frame == ROUNDS * frames) {
+            System.out.printf("Ovals:   %.3f ms per 1000 overlays%n", best[0]);
+            System.out.printf("Batched: %.3f ms per 1000 overlays (%.1fx faster)%n", best[1], best[0] / best[1]);
+            cached.destroy();
+            gc.exit();
+        }
+    }
+
+    /** What Tower.drawRange used to do for each tower */
+    private void drawOvals(Graphics g) {
+        float range = 150f;
+        for (int i = 0; i < overlays; i++) {
+            Color oldcol = g.getColor();
+            float xcorner = xs[i] - range, ycorner = ys[i] - range;
+            g.setColor(new Color(110, 110, 110, 110));
+            g.drawOval(xcorner, ycorner, range * 2, range * 2);
+            g.setColor(new Color(80, 80, 80, 80));
+            g.fillOval(xcorner, ycorner, range * 2, range * 2);
+            g.setColor(oldcol);
+        }
+    }
+
+    public static void main(String[] args) {
+        int overlays = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        try {
+            AppGameContainer app = new AppGameContainer(new RangeOverlayBench(overlays, frames));
+            app.setDisplayMode(MatchHost.WINDOW_W, MatchHost.WINDOW_H, false);
+            app.start();
+        } catch (SlickException e) {
+            e.printStackTrace();
+        }
+    }
+}
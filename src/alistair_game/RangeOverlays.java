@@ -0,0 +1,134 @@
+package alistair_game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.newdawn.slick.Image;
+import org.newdawn.slick.ImageBuffer;
+
+/**
+ * Draws tower range circles. Each distinct range is rasterised once into a shared
+ * texture, so an overlay is just one textured quad, and every overlay queued in a
+ * frame goes out together with a single texture bind.
+ */
+class RangeOverlays {
+    /** Ring and fill colours (RGBA) */
+    private static final int[] EDGE = {110, 110, 110, 110}, FILL = {80, 80, 80, 80};
+    /** Gap between circles in the texture, so filtering doesn't bleed between them */
+    private static final int PAD = 2;
+
+    /** Ranges that have a circle in the texture, and the circle for each */
+    private float[] ranges = new float[0];
+    private Image[] circles = new Image[0];
+    private Image texture;
+
+    /** Overlays queued for this frame: x, y, and index into circles */
+    private float[] queued = new float[3 * 64];
+    private int count = 0;
+
+    /** Queues a range circle centred on the tower. */
+    void add(Tower t) {
+        add(t.getX(), t.getY(), t.getRange());
+    }
+
+    /** Queues a range circle. */
+    void add(float x, float y, float range) {
+        int circle = circleFor(range);
+        if (3 * count == queued.length) {
+            queued = Arrays.copyOf(queued, queued.length * 2);
+        }
+        queued[3 * count] = x;
+        queued[3 * count + 1] = y;
+        queued[3 * count + 2] = circle;
+        count++;
+    }
+
+    /** Draws everything queued since the last flush in one batch. */
+    void flush() {
+        if (count == 0) {
+            return;
+        }
+        texture.startUse();
+        for (int i = 0; i < count; i++) {
+            Image circle = circles[(int) queued[3 * i + 2]];
+            float r = ranges[(int) queued[3 * i + 2]];
+            circle.drawEmbedded(queued[3 * i] - r, queued[3 * i + 1] - r, 2 * r, 2 * r);
+        }
+        texture.endUse();
+        count = 0;
+    }
+
+    /** Frees the texture. */
+    void destroy() {
+        if (texture != null) {
+            try {
+                texture.destroy();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            texture = null;
+        }
+    }
+
+    /** Index of the circle for a range, rebuilding the texture if it's a new one. */
+    private int circleFor(float range) {
+        for (int i = 0; i < ranges.length; i++) {
+            if (ranges[i] == range) {
+                return i;
+            }
+        }
+        // Anything already queued refers to the old texture
+        flush();
+        ranges = Arrays.copyOf(ranges, ranges.length + 1);
+        ranges[ranges.length - 1] = range;
+        rebuild();
+        return ranges.length - 1;
+    }
+
+    /** Rasterises every known range side by side into a new texture. */
+    private void rebuild() {
+        int width = 0, height = 0;
+        List<Integer> offsets = new ArrayList<>();
+        for (float r : ranges) {
+            int size = diameter(r);
+            offsets.add(width);
+            width += size + PAD;
+            height = Math.max(height, size);
+        }
+
+        ImageBuffer buf = new ImageBuffer(width, height);
+        for (int i = 0; i < ranges.length; i++) {
+            rasterise(buf, offsets.get(i), ranges[i]);
+        }
+        destroy();
+        texture = buf.getImage();
+
+        circles = new Image[ranges.length];
+        for (int i = 0; i < ranges.length; i++) {
+            int size = diameter(ranges[i]);
+            circles[i] = texture.getSubImage(offsets.get(i), 0, size, size);
+        }
+    }
+
+    /** Draws a filled circle with a one pixel ring, softening the outer edge. */
+    private static void rasterise(ImageBuffer buf, int left, float range) {
+        int size = diameter(range);
+        float c = size / 2f;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                float d = Util.dist(x + 0.5f, y + 0.5f, c, c);
+                if (d > range) {
+                    continue;
+                }
+                int[] col = d > range - 1 ? EDGE : FILL;
+                float coverage = Math.min(1, range - d + 0.5f);
+                buf.setRGBA(left + x, y, col[0], col[1], col[2], Math.round(col[3] * coverage));
+            }
+        }
+    }
+
+    private static int diameter(float range) {
+        return (int) Math.ceil(2 * range);
+    }
+}
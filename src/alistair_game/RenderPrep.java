@@ -0,0 +1,123 @@
+package alistair_game;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Builds each frame's map sprites on a worker thread, so that work overlaps with the next
+ * update's ticks instead of adding to the frame.
+ * <p>
+ * Every frame the OpenGL thread captures the World into a free DrawList and hands it to
+ * the worker, then draws the list it captured the frame before, which the worker has had
+ * a whole update to prepare. What's on screen is a frame behind the simulation.
+ * <p>
+ * There are two lists, and each belongs to one thread at a time: they're handed over
+ * through the queues, so the threads never touch the same one.
+ */
+class RenderPrep {
+    /** Lists waiting for the worker, and lists it's finished with (oldest first) */
+    private final BlockingQueue<DrawList> toPrepare = new ArrayBlockingQueue<>(2), prepared =
+        new ArrayBlockingQueue<>(2);
+    /** OpenGL thread only: lists free to capture into, the list last drawn, and how many the worker has */
+    private final ArrayDeque<DrawList> free = new ArrayDeque<>();
+    private DrawList shown = null;
+    private int inFlight = 0;
+    /** Null when preparing on the OpenGL thread, e.g. with only one core */
+    private final Thread worker;
+
+    /** @param threaded Whether to prepare on a worker thread, rather than straight away when captured */
+    RenderPrep(boolean threaded) {
+        free.add(new DrawList());
+        free.add(new DrawList());
+        if (threaded) {
+            worker = new Thread(this::work, "render-prep");
+            worker.setDaemon(true);
+            worker.start();
+        } else {
+            worker = null;
+        }
+    }
+
+    private void work() {
+        try {
+            while (true) {
+                DrawList list = toPrepare.take();
+                prepare(list);
+                prepared.put(list);
+            }
+        } catch (InterruptedException e) {
+            // Shutting down
+        }
+    }
+
+    private static void prepare(DrawList list) {
+        try {
+            list.prepare();
+        } catch (RuntimeException e) {
+            // Draw nothing this frame rather than stopping the game
+            e.printStackTrace();
+            list.clearPrepared();
+        }
+    }
+
+    /**
+     * Starts on a World, e.g. a newly opened level, forgetting the last one. Captures it
+     * straight away so there's something to draw on the first frame.
+     */
+    void start(World world, float alpha) throws InterruptedException {
+        while (inFlight > 0) {
+            free.add(prepared.take());
+            inFlight--;
+        }
+        if (shown != null) {
+            free.add(shown);
+            shown = null;
+        }
+        capture(world, alpha);
+    }
+
+    /**
+     * Captures the World as it is now, to be drawn next frame.
+     * @param alpha Fraction of the next tick that has passed
+     */
+    void capture(World world, float alpha) throws InterruptedException {
+        // Last frame's list has been drawn, so it's free again
+        if (shown != null) {
+            free.add(shown);
+            shown = null;
+        }
+        DrawList list = free.poll();
+        if (list == null) {
+            return;
+        }
+        world.capture(list, alpha);
+        inFlight++;
+        if (worker != null) {
+            toPrepare.put(list);
+        } else {
+            prepare(list);
+            prepared.put(list);
+        }
+    }
+
+    /**
+     * Gets the oldest captured list, waiting for the worker to finish it if it hasn't.
+     * Draw it before the next capture.
+     * @return The list to draw, or null if nothing has been captured since start
+     */
+    DrawList take() throws InterruptedException {
+        if (inFlight > 0) {
+            shown = prepared.take();
+            inFlight--;
+        }
+        return shown;
+    }
+
+    /** Stops the worker thread. */
+    void shutdown() {
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package alistair_game;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.newdawn.slick.AppGameContainer;
+import org.newdawn.slick.BasicGame;
+import org.newdawn.slick.Color;
+import org.newdawn.slick.GameContainer;
+import org.newdawn.slick.Graphics;
+import org.newdawn.slick.SlickException;
+import org.newdawn.slick.opengl.renderer.ImmediateModeOGLRenderer;
+import org.newdawn.slick.opengl.renderer.Renderer;
+import org.newdawn.slick.opengl.renderer.SGL;
+import org.newdawn.slick.opengl.renderer.VAOGLRenderer;
+import org.newdawn.slick.tests.FontPerformanceTest;
+import org.newdawn.slick.tests.GeomTest;
+import org.newdawn.slick.tests.GraphicsTest;
+import org.newdawn.slick.tests.ImageTest;
+import org.newdawn.slick.tests.ParticleTest;
+import org.newdawn.slick.tests.TileMapTest;
+
+/**
+ * Measures fps, vertices per second and batches sent to the card per frame for each
+ * renderer on Slick's demo scenes, drawn uncapped one after another. Each renderer runs
+ * in its own JVM, since Slick only takes the renderer before anything draws. Run it from
+ * lib/slick, where the scenes' testdata is, with the natives on java.library.path.
+ * Args: [renderer (immediate, vertex-array or vbo), all of them if left out] [seconds per scene]
+ */
+class RendererBench extends BasicGame {
+    private static final String[] RENDERERS = {"immediate", "vertex-array", "vbo"};
+    private static final Class<?>[] SCENES = {GeomTest.class, GraphicsTest.class, ImageTest.class,
+        FontPerformanceTest.class, ParticleTest.class, TileMapTest.class};
+    /** Time each scene is drawn before measuring, so the JIT has settled (ms) */
+    private static final int WARM_UP = 2000;
+
+    private static DrawCounter draws;
+    /** Set for vertex-array, which doesn't go through glBegin once per batch */
+    private static CountingVAO vao = null;
+
+    private final String rendererName;
+    private final int measureTime;
+    private GameContainer container;
+    private BasicGame scene;
+    private int index = -1;
+    /** Time the current scene has been drawn (ms), and whether the warm up is over */
+    private int elapsed;
+    private boolean measuring;
+    private int frames;
+    private long startTime, vertices, batches, vaoBatchesBefore;
+    private StringBuilder results = new StringBuilder();
+
+    RendererBench(String rendererName, int measureTime) {
+        super("Renderer Bench");
+        this.rendererName = rendererName;
+        this.measureTime = measureTime;
+    }
+
+    @Override
+    public void init(GameContainer container) throws SlickException {
+        this.container = container;
+        results.append(String.format("%-20s %8s %14s %14s%n", "Scene", "fps", "vertices/s", "batches/frame"));
+        nextScene();
+    }
+
+    /** Moves to the next scene, or reports and exits after the last. */
+    private void nextScene() {
+        scene = null;
+        while (scene == null) {
+            index++;
+            if (index >= SCENES.length) {
+                System.out.println();
+                System.out.println("Renderer: " + rendererName);
+                System.out.print(results);
+                container.exit();
+                return;
+            }
+            try {
+                scene = (BasicGame) SCENES[index].getDeclaredConstructor().newInstance();
+                container.getGraphics().setBackground(Color.black);
+                scene.init(container);
+            } catch (Exception e) {
+                e.printStackTrace();
+                results.append(String.format("%-20s %s%n", SCENES[index].getSimpleName(), "failed"));
+                scene = null;
+            }
+        }
+        // Some scenes cap the frame rate themselves
+        container.setTargetFrameRate(-1);
+        elapsed = 0;
+        measuring = false;
+    }
+
+    @Override
+    public void update(GameContainer container, int delta) throws SlickException {
+        if (scene == null) {
+            return;
+        }
+        scene.update(container, delta);
+
+        elapsed += delta;
+        if (!measuring && elapsed >= WARM_UP) {
+            measuring = true;
+            frames = 0;
+            vertices = batches = 0;
+            startTime = System.nanoTime();
+            vaoBatchesBefore = vao == null ? 0 : vao.getBatches();
+        } else if (measuring && elapsed >= WARM_UP + measureTime) {
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            if (vao != null) {
+                batches = vao.getBatches() - vaoBatchesBefore;
+            }
+            results.append(String.format("%-20s %8.1f %14.0f %14.1f%n", SCENES[index].getSimpleName(),
+                frames / seconds, vertices / seconds, (double) batches / Math.max(1, frames)));
+            nextScene();
+        }
+    }
+
+    @Override
+    public void render(GameContainer container, Graphics g) throws SlickException {
+        if (scene == null) {
+            return;
+        }
+        scene.render(container, g);
+        draws.endFrame();
+        if (measuring) {
+            frames++;
+            vertices += draws.getVertices();
+            batches += draws.getDraws();
+        }
+    }
+
+    /**
+     * Slick's vertex array renderer, counting the batches it draws. They're private to it,
+     * so a batch is counted whenever a vertex goes into an empty one.
+     */
+    private static class CountingVAO extends VAOGLRenderer {
+        private static final VarHandle VERT_INDEX, LIST_MODE;
+        static {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(VAOGLRenderer.class,
+                    MethodHandles.lookup());
+                VERT_INDEX = lookup.findVarHandle(VAOGLRenderer.class, "vertIndex", int.class);
+                LIST_MODE = lookup.findVarHandle(VAOGLRenderer.class, "listMode", int.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+        private long batches = 0;
+
+        // glVertex2f passes through to this
+        @Override
+        public void glVertex3f(float x, float y, float z) {
+            if ((int) VERT_INDEX.get(this) == 0 && (int) LIST_MODE.get(this) == 0) {
+                batches++;
+            }
+            super.glVertex3f(x, y, z);
+        }
+
+        long getBatches() { return batches; }
+    }
+
+    /**
+     * Runs every renderer in turn, each in its own JVM, then prints the fps of each scene
+     * side by side, with how much faster VBO is than immediate mode (the old renderer).
+     */
+    private static void runAll(int seconds) throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Map<String, double[]> fps = new LinkedHashMap<>();
+        for (int r = 0; r < RENDERERS.length; r++) {
+            String renderer = RENDERERS[r];
+            ProcessBuilder builder = new ProcessBuilder(java,
+                "-cp", System.getProperty("java.class.path"),
+                "-Djava.library.path=" + System.getProperty("java.library.path"),
+                RendererBench.class.getName(), renderer, String.valueOf(seconds));
+            builder.redirectErrorStream(true);
+            Process process = builder.start();
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    System.out.println(line);
+                    String[] cols = line.trim().split("\\s+");
+                    if (cols.length == 4 && cols[1].matches("[0-9.]+")) {
+                        fps.computeIfAbsent(cols[0], k -> new double[RENDERERS.length])[r] =
+                            Double.parseDouble(cols[1]);
+                    }
+                }
+            }
+            process.waitFor();
+        }
+
+        System.out.println();
+        System.out.printf("%-20s", "Scene fps");
+        for (String renderer : RENDERERS) {
+            System.out.printf(" %12s", renderer);
+        }
+        System.out.printf(" %14s%n", "vbo/immediate");
+        for (Map.Entry<String, double[]> scene : fps.entrySet()) {
+            double[] f = scene.getValue();
+            System.out.printf("%-20s", scene.getKey());
+            for (double v : f) {
+                System.out.printf(" %12.1f", v);
+            }
+            System.out.printf(" %14s%n", f[0] > 0 ? String.format("%.2fx", f[RENDERERS.length - 1] / f[0]) : "-");
+        }
+    }
+
+    public static void main(String[] args) {
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        try {
+            if (args.length == 0) {
+                runAll(seconds);
+                return;
+            }
+
+            SGL renderer;
+            if (args[0].equals("vbo")) {
+                renderer = new VBOGLRenderer();
+            } else if (args[0].equals("vertex-array")) {
+                renderer = vao = new CountingVAO();
+            } else {
+                renderer = new ImmediateModeOGLRenderer();
+            }
+            draws = new DrawCounter(renderer);
+            Renderer.setRenderer(draws);
+
+            AppGameContainer container = new AppGameContainer(new RendererBench(args[0], seconds * 1000));
+            container.setDisplayMode(800, 600, false);
+            container.setVSync(false);
+            container.setShowFPS(false);
+            container.setAlwaysRender(true);
+            container.start();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package alistair_game;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Compact copy of everything a remote client needs to draw one tick of a World.
+ * Entities are kept sorted by id, with positions quantised to quarter pixels.
+ */
+class Snapshot {
+    /**
+     * What each entity is, so the client knows what to draw. Towers come first, one kind
+     * per World.TOWER_TYPES entry in the same order
+     */
+    static final byte KIND_TOWER = 0, KIND_HOMING_TOWER = 1, KIND_SPLASH_TOWER = 2, KIND_CHAIN_TOWER = 3,
+        KIND_PROJECTILE = 4, KIND_PYTHON = 5, KIND_COMMERCE = 6;
+    /** Quantisation steps per pixel */
+    static final float QUANT = 4f;
+
+    int tick = -1, health, wave, size = 0;
+    int[] ids;
+    byte[] kinds;
+    int[] xs, ys;
+
+    Snapshot(int capacity) {
+        ids = new int[capacity];
+        kinds = new byte[capacity];
+        xs = new int[capacity];
+        ys = new int[capacity];
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /** Adds an entity. Must be called in increasing id order. */
+    void add(int id, byte kind, int x, int y) {
+        if (size == ids.length) {
+            int cap = ids.length * 2;
+            ids = Arrays.copyOf(ids, cap);
+            kinds = Arrays.copyOf(kinds, cap);
+            xs = Arrays.copyOf(xs, cap);
+            ys = Arrays.copyOf(ys, cap);
+        }
+        ids[size] = id;
+        kinds[size] = kind;
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+    }
+
+    /** Replaces the contents with the current state of a World. */
+    void capture(World world, int tick) {
+        clear();
+        this.tick = tick;
+        health = world.getHealth();
+        wave = world.getWaveNum();
+
+        // Each list is already in id order, so merging them keeps the whole thing sorted. World's lists
+        // are linked, so walk them rather than indexing
+        Iterator<Tower> towers = world.getTowers().iterator();
+        Iterator<Enemy> enemies = world.getEnemies().iterator();
+        Iterator<Projectile> projectiles = world.getProjectiles().iterator();
+        Tower tower = towers.hasNext() ? towers.next() : null;
+        Enemy enemy = enemies.hasNext() ? enemies.next() : null;
+        Projectile proj = projectiles.hasNext() ? projectiles.next() : null;
+        while (tower != null || enemy != null || proj != null) {
+            int tId = tower != null ? tower.getId() : Integer.MAX_VALUE;
+            int eId = enemy != null ? enemy.getId() : Integer.MAX_VALUE;
+            int pId = proj != null ? proj.getId() : Integer.MAX_VALUE;
+            if (tId < eId && tId < pId) {
+                add(tId, towerKind(tower.getType()), quantise(tower.getX()), quantise(tower.getY()));
+                tower = towers.hasNext() ? towers.next() : null;
+            } else if (eId < pId) {
+                add(eId, enemy.getName().equals("python") ? KIND_PYTHON : KIND_COMMERCE, quantise(enemy.getX()),
+                        quantise(enemy.getY()));
+                enemy = enemies.hasNext() ? enemies.next() : null;
+            } else {
+                add(pId, KIND_PROJECTILE, quantise(proj.getX()), quantise(proj.getY()));
+                proj = projectiles.hasNext() ? projectiles.next() : null;
+            }
+        }
+    }
+
+    void copyFrom(Snapshot other) {
+        clear();
+        tick = other.tick;
+        health = other.health;
+        wave = other.wave;
+        for (int i = 0; i < other.size; i++) {
+            add(other.ids[i], other.kinds[i], other.xs[i], other.ys[i]);
+        }
+    }
+
+    /** Kind for towers of the type, its index in World.TOWER_TYPES. */
+    static byte towerKind(String type) {
+        for (byte kind = 0; kind < World.TOWER_TYPES.length; kind++) {
+            if (World.TOWER_TYPES[kind].equals(type)) {
+                return kind;
+            }
+        }
+        throw new IllegalArgumentException("No such tower '" + type + "'");
+    }
+
+    static int quantise(float pos) {
+        return Math.round(pos * QUANT);
+    }
+
+    static float toPos(int q) {
+        return q / QUANT;
+    }
+}
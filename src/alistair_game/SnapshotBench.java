@@ -0,0 +1,87 @@
+package alistair_game;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.newdawn.slick.geom.Vector2f;
+
+/**
+ * Measures snapshot size, capture time and encode time for a headless level1 World
+ * holding 10k entities: a tower of each type on every wall cell, then enemies walking
+ * the path and fast projectiles in about a 5:3 mix. Enemies that reach Alistair are
+ * replaced, so a few entities appear and disappear each tick like in a busy match.
+ * Args: [entities] [ticks]
+ */
+class SnapshotBench {
+    public static void main(String[] args) throws IOException {
+        int entities = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        Random rng = new Random(1);
+        LevelData level = LevelData.load("level1", "game1", MatchHost.TILE_SIZE);
+        World world = MatchHost.newWorld(level, Assets.headless());
+        SpriteDef projDef = world.getAssets().def("defaultproj.png");
+
+        int towers = 0;
+        for (int x = 0; x < world.getGridWidth(); x++) {
+            for (int y = 0; y < world.getGridHeight(); y++) {
+                if (towers < entities && world.isWall(x, y)
+                        && world.placeTower(x, y, World.TOWER_TYPES[towers % World.TOWER_TYPES.length])) {
+                    towers++;
+                }
+            }
+        }
+        int enemies = (entities - towers) * 5 / 8, projectiles = entities - towers - enemies;
+
+        SnapshotCodec codec = new SnapshotCodec();
+        BinaryWriter out = new BinaryWriter(1 << 16);
+        Snapshot prev = new Snapshot(entities), cur = new Snapshot(entities);
+        long bytes = 0, fullBytes = 0, captureTime = 0, encodeTime = 0;
+        for (int t = 0; t < ticks; t++) {
+            // Move everything along, then replace enemies that reached Alistair. Projectiles just fly,
+            // without checking every enemy for hits as a step would
+            world.moveEnemies();
+            for (Projectile p : world.getProjectiles()) {
+                p.advance();
+            }
+            while (world.getEnemyCount() < enemies) {
+                int x = rng.nextInt(world.getGridWidth()), y = rng.nextInt(world.getGridHeight());
+                if (!world.isWall(x, y)) {
+                    world.spawnEnemy(world.toPos(x), world.toPos(y), rng.nextBoolean() ? "python" : "commerce");
+                }
+            }
+            while (world.getProjectileCount() < projectiles) {
+                double angle = rng.nextDouble() * 2 * Math.PI;
+                world.newProjectile(new Projectile(rng.nextFloat() * world.getGridWidth() * MatchHost.TILE_SIZE,
+                        rng.nextFloat() * world.getGridHeight() * MatchHost.TILE_SIZE,
+                        new Vector2f((float) Math.cos(angle) * 4, (float) Math.sin(angle) * 4), projDef));
+            }
+
+            long start = System.nanoTime();
+            cur.capture(world, t);
+            long captured = System.nanoTime();
+            out.reset();
+            codec.encode(t == 0 ? null : prev, cur, out);
+            long encoded = System.nanoTime();
+
+            // Skip the first quarter while the JIT warms up
+            if (t >= ticks / 4) {
+                captureTime += captured - start;
+                encodeTime += encoded - captured;
+                bytes += out.size();
+                // Uncompressed: id, kind, x, y for every entity
+                fullBytes += cur.size * (4 + 1 + 4 + 4);
+            }
+            Snapshot swap = prev;
+            prev = cur;
+            cur = swap;
+        }
+
+        int measured = ticks - ticks / 4;
+        System.out.printf("%d entities (%d towers): %.0f bytes/tick delta vs %.0f uncompressed (%.1fx smaller)%n",
+                prev.size, towers, (double) bytes / measured, (double) fullBytes / measured,
+                (double) fullBytes / bytes);
+        System.out.printf("Capture: %.1f us/tick, encode: %.1f us/tick, together %.1f%% of a %d ms tick%n",
+                captureTime / 1000.0 / measured, encodeTime / 1000.0 / measured,
+                100.0 * (captureTime + encodeTime) / measured / (MatchHost.TICK_MS * 1e6), MatchHost.TICK_MS);
+    }
+}
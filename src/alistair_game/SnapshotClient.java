@@ -0,0 +1,161 @@
+package alistair_game;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.newdawn.slick.AppGameContainer;
+import org.newdawn.slick.BasicGame;
+import org.newdawn.slick.Color;
+import org.newdawn.slick.GameContainer;
+import org.newdawn.slick.Graphics;
+import org.newdawn.slick.Image;
+import org.newdawn.slick.SlickException;
+
+/**
+ * Thin client for a SnapshotServer. Applies the snapshots it receives and draws
+ * them, with no game logic of its own.
+ */
+class SnapshotClient extends BasicGame {
+    /** Snapshots kept as possible bases, must match the server */
+    private static final int HISTORY = 64;
+    private static final String[] TILE_NAMES = {"wall", "path", "alistair"};
+
+    private String host;
+    private int port;
+    private Socket socket;
+    private TileMap map;
+    private Assets assets;
+    private Image[] kindImages;
+    private Color[] kindColors;
+    /** Most recent complete snapshot, replaced (never modified) by the network thread */
+    private volatile Snapshot latest = null;
+
+    SnapshotClient(String host, int port) {
+        super("Alistair vs The World (spectating)");
+        this.host = host;
+        this.port = port;
+    }
+
+    @Override
+    public void init(GameContainer gc) throws SlickException {
+        gc.setShowFPS(false);
+        gc.setVSync(true);
+        assets = Assets.textured();
+        kindImages = new Image[Snapshot.KIND_COMMERCE + 1];
+        kindColors = new Color[kindImages.length];
+        Arrays.fill(kindColors, Color.white);
+        // Every tower type has the same image, tinted like in the game
+        for (int kind = 0; kind < World.TOWER_TYPES.length; kind++) {
+            kindImages[kind] = assets.get("alistair32.png");
+            kindColors[kind] = Tower.baseColor(World.TOWER_TYPES[kind]);
+        }
+        kindImages[Snapshot.KIND_PROJECTILE] = assets.get("defaultproj.png");
+        kindImages[Snapshot.KIND_PYTHON] = assets.get("enemies/python-icon.png");
+        kindImages[Snapshot.KIND_COMMERCE] = assets.get("enemies/fbe1.png");
+
+        try {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            String levelName = in.readUTF(), wavesName = in.readUTF();
+            map = LevelData.load(levelName, wavesName, MatchHost.TILE_SIZE).newMap();
+
+            Thread receiver = new Thread(() -> receive(in, out), "snapshot-receiver");
+            receiver.setDaemon(true);
+            receiver.start();
+        } catch (IOException e) {
+            throw new SlickException("Couldn't connect to " + host + ":" + port, e);
+        }
+    }
+
+    /** Reads messages, rebuilds each snapshot from its base and acknowledges it. */
+    private void receive(DataInputStream in, DataOutputStream out) {
+        Snapshot[] history = new Snapshot[HISTORY];
+        byte[] buf = new byte[4096];
+        try {
+            while (true) {
+                int len = in.readInt();
+                if (len > buf.length) {
+                    buf = new byte[Math.max(len, buf.length * 2)];
+                }
+                in.readFully(buf, 0, len);
+
+                int baseTick = SnapshotCodec.readBaseTick(buf, 0, len);
+                Snapshot base = baseTick < 0 ? null : history[baseTick % HISTORY];
+                if (baseTick >= 0 && (base == null || base.tick != baseTick)) {
+                    // Don't have that base any more. Skip it, the server will move on to our latest ack
+                    continue;
+                }
+                Snapshot snap = new Snapshot(base == null ? 256 : base.size + 16);
+                SnapshotCodec.decode(base, new BinaryReader(buf, 0, len), snap);
+                history[snap.tick % HISTORY] = snap;
+                latest = snap;
+
+                out.writeInt(snap.tick);
+                out.flush();
+            }
+        } catch (IOException e) {
+            System.out.println("CLIENT: Lost connection to server");
+        }
+    }
+
+    @Override
+    public void update(GameContainer gc, int delta) throws SlickException {
+        // Everything comes from the server
+    }
+
+    @Override
+    public void render(GameContainer gc, Graphics g) throws SlickException {
+        // Only the top left of big maps fits in the window
+        int tSize = MatchHost.TILE_SIZE;
+        int cols = Math.min(map.getWidth(), (gc.getWidth() + tSize - 1) / tSize),
+            rows = Math.min(map.getHeight(), (gc.getHeight() + tSize - 1) / tSize);
+        for (int x = 0; x < cols; x++) {
+            for (int y = 0; y < rows; y++) {
+                assets.get("tiles/" + TILE_NAMES[map.get(x, y)] + ".png").draw(x * tSize, y * tSize);
+            }
+        }
+
+        Snapshot snap = latest;
+        if (snap == null) {
+            g.drawString("Waiting for server...", 10, 10);
+            return;
+        }
+        for (int i = 0; i < snap.size; i++) {
+            Image im = kindImages[snap.kinds[i]];
+            im.draw(Snapshot.toPos(snap.xs[i]) - im.getWidth() / 2f, Snapshot.toPos(snap.ys[i]) - im.getHeight() / 2f,
+                    kindColors[snap.kinds[i]]);
+        }
+        g.drawString("Wave: " + snap.wave + "  Health: " + snap.health + "  Tick: " + snap.tick, 10, 10);
+    }
+
+    @Override
+    public boolean closeRequested() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Closing anyway
+        }
+        return true;
+    }
+
+    /** Args: [host] [port] */
+    public static void main(String[] args) {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : SnapshotServer.DEFAULT_PORT;
+        try {
+            AppGameContainer appgc = new AppGameContainer(new SnapshotClient(host, port));
+            appgc.setDisplayMode(MatchHost.WINDOW_W, MatchHost.WINDOW_H, false);
+            appgc.start();
+        } catch (SlickException e) {
+            Logger.getLogger(SnapshotClient.class.getName()).log(Level.SEVERE, null, e);
+        }
+    }
+}
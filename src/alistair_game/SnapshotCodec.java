@@ -0,0 +1,147 @@
+package alistair_game;
+
+/**
+ * Delta compression between two Snapshots. Only entities that appeared, moved or
+ * disappeared since the base snapshot are written, with ids and movements as
+ * varints, so a tick where most things are standing still costs very little.
+ * <p>
+ * Format: tick, base tick + 1 (0 for none), health, wave, then the removed ids
+ * and then the changed entities. Ids are written as the gap from the previous id.
+ * Each changed entity has a flag byte saying whether it's new (kind and full
+ * position follow) or which of x and y moved (the difference follows).
+ */
+class SnapshotCodec {
+    private static final int NEW = 1, MOVED_X = 2, MOVED_Y = 4;
+
+    private BinaryWriter removed = new BinaryWriter(256), changed = new BinaryWriter(4096);
+
+    /**
+     * Writes the changes from base to cur.
+     * @param base Snapshot the receiver already has, or null to send everything
+     * @param cur Snapshot to send
+     */
+    void encode(Snapshot base, Snapshot cur, BinaryWriter out) {
+        removed.reset();
+        changed.reset();
+        int removedCount = 0, changedCount = 0, lastRemoved = 0, lastChanged = 0;
+
+        int b = 0, c = 0, baseSize = base == null ? 0 : base.size;
+        while (b < baseSize || c < cur.size) {
+            int bId = b < baseSize ? base.ids[b] : Integer.MAX_VALUE;
+            int cId = c < cur.size ? cur.ids[c] : Integer.MAX_VALUE;
+            if (bId < cId) {
+                // Gone since the base
+                removed.writeVarint(bId - lastRemoved);
+                lastRemoved = bId;
+                removedCount++;
+                b++;
+            } else if (cId < bId || base.kinds[b] != cur.kinds[c]) {
+                // New since the base
+                changed.writeVarint(cId - lastChanged);
+                changed.writeByte(NEW);
+                changed.writeByte(cur.kinds[c]);
+                changed.writeSigned(cur.xs[c]);
+                changed.writeSigned(cur.ys[c]);
+                lastChanged = cId;
+                changedCount++;
+                if (cId == bId) {
+                    b++;
+                }
+                c++;
+            } else {
+                int dx = cur.xs[c] - base.xs[b], dy = cur.ys[c] - base.ys[b];
+                if (dx != 0 || dy != 0) {
+                    changed.writeVarint(cId - lastChanged);
+                    changed.writeByte((dx != 0 ? MOVED_X : 0) | (dy != 0 ? MOVED_Y : 0));
+                    if (dx != 0) {
+                        changed.writeSigned(dx);
+                    }
+                    if (dy != 0) {
+                        changed.writeSigned(dy);
+                    }
+                    lastChanged = cId;
+                    changedCount++;
+                }
+                b++;
+                c++;
+            }
+        }
+
+        out.writeVarint(cur.tick);
+        out.writeVarint(base == null ? 0 : base.tick + 1);
+        out.writeSigned(cur.health);
+        out.writeVarint(cur.wave);
+        out.writeVarint(removedCount);
+        out.writeAll(removed);
+        out.writeVarint(changedCount);
+        out.writeAll(changed);
+    }
+
+    /** Reads which snapshot a message was encoded against (-1 for none). */
+    static int readBaseTick(byte[] data, int off, int len) {
+        BinaryReader in = new BinaryReader(data, off, len);
+        in.readVarint();
+        return in.readVarint() - 1;
+    }
+
+    /**
+     * Applies an encoded message to its base snapshot.
+     * @param base The snapshot it was encoded against, or null if it didn't have one
+     * @param out Filled with the resulting snapshot
+     */
+    static void decode(Snapshot base, BinaryReader in, Snapshot out) {
+        out.clear();
+        out.tick = in.readVarint();
+        int baseTick = in.readVarint() - 1;
+        if (baseTick >= 0 && (base == null || base.tick != baseTick)) {
+            throw new IllegalStateException("Message needs snapshot " + baseTick + " as its base");
+        }
+        out.health = in.readSigned();
+        out.wave = in.readVarint();
+
+        int removedLeft = in.readVarint();
+        int[] removedIds = new int[removedLeft];
+        for (int i = 0, id = 0; i < removedIds.length; i++) {
+            id += in.readVarint();
+            removedIds[i] = id;
+        }
+
+        int changedLeft = in.readVarint(), lastChanged = 0;
+        int nextChanged = changedLeft > 0 ? (lastChanged += in.readVarint()) : Integer.MAX_VALUE;
+        int b = 0, r = 0, baseSize = baseTick < 0 ? 0 : base.size;
+        while (b < baseSize || nextChanged != Integer.MAX_VALUE) {
+            int bId = b < baseSize ? base.ids[b] : Integer.MAX_VALUE;
+            if (bId < nextChanged) {
+                // Unchanged, unless it's been removed
+                if (r < removedIds.length && removedIds[r] == bId) {
+                    r++;
+                } else {
+                    out.add(bId, base.kinds[b], base.xs[b], base.ys[b]);
+                }
+                b++;
+                continue;
+            }
+
+            int flags = in.readByte();
+            if ((flags & NEW) != 0) {
+                byte kind = (byte) in.readByte();
+                out.add(nextChanged, kind, in.readSigned(), in.readSigned());
+                if (bId == nextChanged) {
+                    // Replaced an old entity with the same id
+                    b++;
+                }
+            } else {
+                int x = base.xs[b], y = base.ys[b];
+                if ((flags & MOVED_X) != 0) {
+                    x += in.readSigned();
+                }
+                if ((flags & MOVED_Y) != 0) {
+                    y += in.readSigned();
+                }
+                out.add(nextChanged, base.kinds[b], x, y);
+                b++;
+            }
+            nextChanged = --changedLeft > 0 ? (lastChanged += in.readVarint()) : Integer.MAX_VALUE;
+        }
+    }
+}
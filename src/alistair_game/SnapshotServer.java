@@ -0,0 +1,174 @@
+package alistair_game;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authoritative match server. Runs a headless World and every tick sends each
+ * connected client the changes since the last snapshot that client acknowledged.
+ * If a client falls behind, messages are dropped rather than queued, and the next
+ * one is simply encoded against an older base.
+ * <p>
+ * Wire format: the server sends the level and wave file names, then length-prefixed
+ * snapshot messages (see SnapshotCodec). Clients send back each tick they've applied.
+ */
+class SnapshotServer {
+    static final int DEFAULT_PORT = 7777;
+    /** Number of past snapshots kept to encode against */
+    private static final int HISTORY = 64;
+    /** Ticks between stats reports */
+    private static final int REPORT_TICKS = 250;
+
+    private String levelName, wavesName;
+    private LevelData level;
+    private Assets assets = Assets.headless();
+    private World world;
+    private int tick = 0;
+
+    private Snapshot[] history = new Snapshot[HISTORY];
+    private SnapshotCodec codec = new SnapshotCodec();
+    private BinaryWriter message = new BinaryWriter(4096);
+    private List<Connection> clients = new CopyOnWriteArrayList<>();
+    private long bytesSent = 0, encodeTime = 0, messages = 0;
+
+    /** A connected client, with its own writer thread so a slow client can't stall the tick. */
+    private class Connection {
+        private Socket socket;
+        private volatile int acked = -1;
+        private BlockingQueue<byte[]> outbox = new ArrayBlockingQueue<>(8);
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            out.writeUTF(levelName);
+            out.writeUTF(wavesName);
+            out.flush();
+
+            Thread writer = new Thread(() -> {
+                try {
+                    while (true) {
+                        byte[] msg = outbox.take();
+                        out.writeInt(msg.length);
+                        out.write(msg);
+                        out.flush();
+                    }
+                } catch (IOException | InterruptedException e) {
+                    close();
+                }
+            }, "snapshot-writer");
+            Thread reader = new Thread(() -> {
+                try {
+                    while (true) {
+                        acked = in.readInt();
+                    }
+                } catch (IOException e) {
+                    close();
+                }
+            }, "snapshot-acks");
+            writer.setDaemon(true);
+            reader.setDaemon(true);
+            writer.start();
+            reader.start();
+        }
+
+        void close() {
+            if (clients.remove(this)) {
+                System.out.println("SERVER: Client disconnected " + socket.getRemoteSocketAddress());
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    SnapshotServer(String levelName, String wavesName) throws IOException {
+        this.levelName = levelName;
+        this.wavesName = wavesName;
+        level = LevelData.load(levelName, wavesName, MatchHost.TILE_SIZE);
+        world = MatchHost.newMatch(level, assets, 3);
+        for (int i = 0; i < HISTORY; i++) {
+            history[i] = new Snapshot(256);
+        }
+    }
+
+    /** Advances the match and sends the new state to everyone. */
+    void tick() {
+        world.step(MatchHost.TICK_MS);
+        if (world.isGameOver() || world.isCleared()) {
+            // Keep the server going with a fresh match
+            world = MatchHost.newMatch(level, assets, 3);
+        }
+        tick++;
+
+        Snapshot cur = history[tick % HISTORY];
+        cur.capture(world, tick);
+        for (Connection c : clients) {
+            int acked = c.acked;
+            Snapshot base = null;
+            if (acked >= 0 && tick - acked < HISTORY && history[acked % HISTORY].tick == acked) {
+                base = history[acked % HISTORY];
+            }
+            long start = System.nanoTime();
+            message.reset();
+            codec.encode(base, cur, message);
+            encodeTime += System.nanoTime() - start;
+            messages++;
+            if (c.outbox.offer(message.toByteArray())) {
+                bytesSent += message.size();
+            }
+        }
+
+        if (tick % REPORT_TICKS == 0 && messages > 0) {
+            System.out.printf("SERVER: %d entities, %.0f bytes/tick, %.1f us encode/tick per client%n",
+                    cur.size, (double) bytesSent / messages, encodeTime / 1000.0 / messages);
+            bytesSent = encodeTime = messages = 0;
+        }
+    }
+
+    /** Accepts clients on localhost until the process is stopped. */
+    void serve(int port) throws IOException {
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor();
+        ticker.scheduleAtFixedRate(() -> {
+            try {
+                tick();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }, MatchHost.TICK_MS, MatchHost.TICK_MS, TimeUnit.MILLISECONDS);
+
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.out.println("SERVER: Listening on " + server.getLocalSocketAddress());
+            while (true) {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                clients.add(new Connection(socket));
+                System.out.println("SERVER: Client connected " + socket.getRemoteSocketAddress());
+            }
+        } finally {
+            ticker.shutdownNow();
+        }
+    }
+
+    /** Args: [port] [level] [waves] */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        String levelName = args.length > 1 ? args[1] : "level1";
+        String wavesName = args.length > 2 ? args[2] : "game1";
+        new SnapshotServer(levelName, wavesName).serve(port);
+    }
+}
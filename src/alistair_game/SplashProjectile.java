@@ -0,0 +1,31 @@
+package alistair_game;
+
+import org.newdawn.slick.geom.Vector2f;
+
+/**
+ * Projectile that bursts when it hits, damaging every enemy within a radius of the one it hit
+ * and setting that one on fire.
+ */
+class SplashProjectile extends Projectile {
+    private float radius;
+    private int burnDamage, burnMs;
+
+    /**
+     * @param radius How far the burst reaches from the enemy that was hit (pixels)
+     * @param burnDamage Damage the burn does every World.BURN_INTERVAL
+     * @param burnMs How long the burn lasts
+     */
+    SplashProjectile(float startx, float starty, Vector2f vec, SpriteDef def, float radius, int burnDamage,
+            int burnMs) {
+        super(startx, starty, vec, def);
+        this.radius = radius;
+        this.burnDamage = burnDamage;
+        this.burnMs = burnMs;
+    }
+
+    @Override
+    void hit(Enemy e, World world) {
+        world.damageArea(e.getX(), e.getY(), radius, getDamage());
+        world.burnEnemy(e, burnDamage, burnMs);
+    }
+}
@@ -3,37 +3,38 @@ package alistair_game;
 import org.newdawn.slick.Color;
 import org.newdawn.slick.Image;
 
-/** On-screen object */
+/** On-screen object. The image and sizes are shared with every sprite of the same kind (see SpriteDef) */
 class Sprite {
     private float x, y;
-    private Image im;
+    private SpriteDef def;
     private Color col = Color.white;
-    private int w, h; // Half of the image's width and height
+    private int id = -1; // Unique within a World, in order of creation (-1 for tiles and icons)
 
     /**
      * Create a sprite (stationary for the frame)
      * @param x x-pos
      * @param y y-pos
-     * @param im sprite image
+     * @param def sprite image and size, from Assets.def
      */
-    Sprite(float x, float y, Image im) {
+    Sprite(float x, float y, SpriteDef def) {
         this.x = x;
         this.y = y;
-        this.im = im;
-        
-        if (im != null) {
-            w = im.getWidth() / 2;
-            h = im.getWidth() / 2;
-        }
+        this.def = def;
     }
     
     /** Checks whether the mouse position intersects the Sprite. */
     boolean isMouseOver(int mouseX, int mouseY) {
+        int w = def.getHalfWidth(), h = def.getHalfHeight();
         return (mouseX >= x-w && mouseX <= x+w && mouseY >= y-h && mouseY <= y+h);
     }
     
-    void drawSelf() {
-        im.draw(x-w, y-h, col);
+    void drawSelf(SpriteBatch batch) {
+        drawAt(batch, x, y);
+    }
+
+    /** Draws the sprite centred somewhere other than its actual position. */
+    void drawAt(SpriteBatch batch, float drawX, float drawY) {
+        batch.draw(def.getImage(), drawX - def.getHalfWidth(), drawY - def.getHalfHeight(), col);
     }
 
     /**
@@ -42,14 +43,52 @@ class Sprite {
      * @return Returns true if touching
      */
     boolean checkCollision(Sprite other) {
-        Image im2 = other.getImage();
-        int w2 = im2.getWidth() / 2, h2 = im2.getHeight() / 2;
+        int w = def.getBoxHalfWidth(), h = def.getBoxHalfHeight();
+        int w2 = other.def.getBoxHalfWidth(), h2 = other.def.getBoxHalfHeight();
         float x2 = other.x, y2 = other.y;
 
         return (x + w >= x2 - w2 && x2 + w2 >= x - w && y + h >= y2 - h2 && y2 + h2 >= y - h);
         // I'm honestly amazed this works -James
     }
 
+    /**
+     * Swept version of checkCollision, for sprites that moved in a straight line
+     * from (fromX, fromY) to where they are now. Catches fast sprites that would
+     * otherwise pass straight through the other one between ticks.
+     * @param fromX x-position at the start of the move
+     * @param fromY y-position at the start of the move
+     * @param other Sprite to check against (assumed stationary)
+     * @return Fraction of the move (0-1) at which they first touch, or -1 if they don't
+     */
+    float checkSweptCollision(float fromX, float fromY, Sprite other) {
+        // Grow the other box by our own half-size and sweep our centre as a point
+        float halfW = def.getBoxHalfWidth() + other.def.getBoxHalfWidth(),
+            halfH = def.getBoxHalfHeight() + other.def.getBoxHalfHeight();
+        float dx = x - fromX, dy = y - fromY;
+        float tMin = 0, tMax = 1;
+
+        // Clip the move against the box's x-range, then its y-range
+        if (dx == 0) {
+            if (fromX < other.x - halfW || fromX > other.x + halfW) {
+                return -1;
+            }
+        } else {
+            float t1 = (other.x - halfW - fromX) / dx, t2 = (other.x + halfW - fromX) / dx;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        if (dy == 0) {
+            if (fromY < other.y - halfH || fromY > other.y + halfH) {
+                return -1;
+            }
+        } else {
+            float t1 = (other.y - halfH - fromY) / dy, t2 = (other.y + halfH - fromY) / dy;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        return tMin <= tMax ? tMin : -1;
+    }
+
     /**
      * Calculate the Euclidian distance to another sprite.
      * @param other Other sprite
@@ -66,10 +105,15 @@ class Sprite {
      * @return Returns true if off the screen
      */
     boolean isOffScreen(int windowW, int windowH) {
-        int w = im.getWidth() / 2, h = im.getHeight() / 2;
+        int w = def.getHalfWidth(), h = def.getHalfHeight();
         return x - w >= windowW || x + w < 0 || y - h >= windowH || y + h < 0;
     }
 
+    /** Whether any of the sprite is in the camera's view */
+    boolean isVisible(Camera camera) {
+        return camera.isVisible(x, y, def.getHalfWidth(), def.getHalfHeight());
+    }
+
     /**
      * Moves relative to the current position.
      * @param xdist signed pixels in the x-plane to move
@@ -92,13 +136,12 @@ class Sprite {
 
     float getX() { return x; }
     float getY() { return y; }
-    Image getImage() { return im; }
+    Image getImage() { return def.getImage(); }
+    SpriteDef getDef() { return def; }
     Color getColor() { return col; }
+    int getId() { return id; }
 
     void setColor(Color col) { this.col = col; }
-    void setImage(Image im) {
-        this.im = im;
-        w = im.getWidth() / 2;
-        h = im.getWidth() / 2;
-    }
+    void setId(int id) { this.id = id; }
+    void setDef(SpriteDef def) { this.def = def; }
 }
@@ -0,0 +1,111 @@
+package alistair_game;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.newdawn.slick.Image;
+import org.newdawn.slick.ImageBuffer;
+import org.newdawn.slick.opengl.ImageData;
+
+/**
+ * Every sprite image packed into one texture, so a whole layer of tiles, enemies, towers
+ * or projectiles can be drawn in one batch with one texture bind (see SpriteBatch).
+ * <p>
+ * The images are packed in rows, tallest first. Each one's edge pixels are repeated into
+ * the gap around it, so filtering at fractional positions doesn't pick up its neighbours.
+ * Packing only touches memory and can run on any thread. Only upload() needs OpenGL.
+ */
+class SpriteAtlas {
+    /** Gap around each image */
+    private static final int PAD = 2;
+    /** Largest texture side worth trying (every GL 2 card manages this) */
+    private static final int MAX_SIZE = 4096;
+
+    private final ImageBuffer pixels;
+    /** Where each image went: x, y, width, height */
+    private final Map<String, int[]> regions = new HashMap<>();
+
+    /**
+     * Lays out and copies in decoded images.
+     * @param images Decoded images by name
+     * @throws IllegalArgumentException If they don't fit in the biggest texture
+     */
+    SpriteAtlas(Map<String, ImageData> images) {
+        List<String> names = new ArrayList<>(images.keySet());
+        names.sort((a, b) -> images.get(b).getHeight() - images.get(a).getHeight());
+
+        // Start narrow, and widen until the rows fit in a square
+        int side = 64;
+        while (!layOut(names, images, side)) {
+            side *= 2;
+            if (side > MAX_SIZE) {
+                throw new IllegalArgumentException("Sprites don't fit in a " + MAX_SIZE + " texture");
+            }
+        }
+        pixels = new ImageBuffer(side, side);
+        for (String name : names) {
+            copy(images.get(name), regions.get(name));
+        }
+    }
+
+    /** Places every image in rows across a square texture. @return Whether they all fit */
+    private boolean layOut(List<String> names, Map<String, ImageData> images, int side) {
+        regions.clear();
+        int x = 0, y = 0, rowHeight = 0;
+        for (String name : names) {
+            ImageData im = images.get(name);
+            int w = im.getWidth() + 2 * PAD, h = im.getHeight() + 2 * PAD;
+            if (x + w > side) {
+                x = 0;
+                y += rowHeight;
+                rowHeight = 0;
+            }
+            if (x + w > side || y + h > side) {
+                return false;
+            }
+            regions.put(name, new int[] {x + PAD, y + PAD, im.getWidth(), im.getHeight()});
+            x += w;
+            rowHeight = Math.max(rowHeight, h);
+        }
+        return true;
+    }
+
+    /** Copies an image into its region, repeating its edges out into the gap around it */
+    private void copy(ImageData im, int[] region) {
+        ByteBuffer src = im.getImageBufferData();
+        int perPixel = im.getDepth() / 8, stride = im.getTexWidth() * perPixel;
+        byte[] dst = pixels.getRGBA();
+        int dstStride = pixels.getTexWidth() * 4;
+        for (int y = -PAD; y < region[3] + PAD; y++) {
+            int srcRow = Math.max(0, Math.min(region[3] - 1, y)) * stride;
+            int dstRow = (region[1] + y) * dstStride;
+            for (int x = -PAD; x < region[2] + PAD; x++) {
+                int s = srcRow + Math.max(0, Math.min(region[2] - 1, x)) * perPixel;
+                int d = dstRow + (region[0] + x) * 4;
+                dst[d] = src.get(s);
+                dst[d + 1] = src.get(s + 1);
+                dst[d + 2] = src.get(s + 2);
+                dst[d + 3] = perPixel == 4 ? src.get(s + 3) : (byte) 255;
+            }
+        }
+    }
+
+    /**
+     * Makes the texture. Must be called from the OpenGL thread.
+     * @return An image for each packed sprite, all sharing the one texture
+     */
+    Map<String, Image> upload() {
+        Image texture = new Image(pixels);
+        Map<String, Image> images = new HashMap<>();
+        for (Map.Entry<String, int[]> e : regions.entrySet()) {
+            int[] r = e.getValue();
+            images.put(e.getKey(), texture.getSubImage(r[0], r[1], r[2], r[3]));
+        }
+        System.out.println("GAME STATE: Packed " + images.size() + " sprites into a " + pixels.getWidth() + "x"
+                + pixels.getHeight() + " texture");
+        return images;
+    }
+}
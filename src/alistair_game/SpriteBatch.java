@@ -0,0 +1,54 @@
+package alistair_game;
+
+import org.newdawn.slick.Color;
+import org.newdawn.slick.Image;
+import org.newdawn.slick.opengl.Texture;
+
+/**
+ * Draws sprites with as few draw calls and texture binds as possible. Sprites in a row
+ * that share a texture all go out in one batch, and since the sprites are packed into
+ * one texture (see SpriteAtlas), that's usually a whole layer. Colour tints are set per
+ * sprite inside the batch.
+ * <p>
+ * Call end() after each layer. Nothing else can be drawn while a batch is open.
+ */
+class SpriteBatch {
+    /** Image whose startUse opened the batch, and its texture (null when there's no batch open) */
+    private Image opened = null;
+    private Texture texture = null;
+    private Color col = Color.white;
+
+    /**
+     * Queues an image at its own size.
+     * @param x Left edge
+     * @param y Top edge
+     * @param tint Colour to multiply it by
+     */
+    void draw(Image im, float x, float y, Color tint) {
+        if (opened == null || im.getTexture() != texture) {
+            end();
+            im.startUse();
+            opened = im;
+            texture = im.getTexture();
+            col = Color.white;
+        }
+        if (tint != col) {
+            tint.bind();
+            col = tint;
+        }
+        im.drawEmbedded(x, y, im.getWidth(), im.getHeight());
+    }
+
+    /** Draws whatever is queued. */
+    void end() {
+        if (opened == null) {
+            return;
+        }
+        opened.endUse();
+        if (col != Color.white) {
+            Color.white.bind();
+        }
+        opened = null;
+        texture = null;
+    }
+}
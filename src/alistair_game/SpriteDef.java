@@ -0,0 +1,49 @@
+package alistair_game;
+
+import org.newdawn.slick.Image;
+import org.newdawn.slick.opengl.Texture;
+
+/**
+ * What every sprite of one kind shares: its image and the box used for collisions.
+ * Handed out by Assets, one per image, so sprites only carry their own position and state.
+ * Also keeps where the image is in its texture, so other threads can build vertices for
+ * it without touching the Image (see DrawList).
+ */
+class SpriteDef {
+    private final Image image;
+    /** The image's width and height, and half of each */
+    private final int width, height, halfW, halfH;
+    /** Half the collision box's width and height (the image's bounds) */
+    private final int boxHalfW, boxHalfH;
+    /** Texture the image is in (null when headless), and its corners in texture coordinates */
+    private final Texture texture;
+    private final float u0, v0, u1, v1;
+
+    SpriteDef(Image image) {
+        this.image = image;
+        width = image == null ? 0 : image.getWidth();
+        height = image == null ? 0 : image.getHeight();
+        halfW = width / 2;
+        halfH = height / 2;
+        boxHalfW = halfW;
+        boxHalfH = halfH;
+        texture = image == null ? null : image.getTexture();
+        u0 = image == null ? 0 : image.getTextureOffsetX();
+        v0 = image == null ? 0 : image.getTextureOffsetY();
+        u1 = image == null ? 0 : u0 + image.getTextureWidth();
+        v1 = image == null ? 0 : v0 + image.getTextureHeight();
+    }
+
+    Image getImage() { return image; }
+    int getWidth() { return width; }
+    int getHeight() { return height; }
+    int getHalfWidth() { return halfW; }
+    int getHalfHeight() { return halfH; }
+    int getBoxHalfWidth() { return boxHalfW; }
+    int getBoxHalfHeight() { return boxHalfH; }
+    Texture getTexture() { return texture; }
+    float getU0() { return u0; }
+    float getV0() { return v0; }
+    float getU1() { return u1; }
+    float getV1() { return v1; }
+}
@@ -0,0 +1,77 @@
+package alistair_game;
+
+import java.lang.management.ManagementFactory;
+
+import org.newdawn.slick.AppGameContainer;
+import org.newdawn.slick.GameContainer;
+import org.newdawn.slick.Graphics;
+import org.newdawn.slick.SlickException;
+
+/**
+ * Measures how long the game takes to start, from JVM launch:
+ * <ul>
+ * <li>time to first frame - the menu has been drawn once</li>
+ * <li>time to playable - a level has been opened (as soon as the menu is up) and drawn</li>
+ * </ul>
+ * It then plays the level for a couple of seconds, reports when the background audio
+ * loading finished, and exits. Because it runs the usual startup and a bit of play,
+ * it also serves as the training run for the class data sharing archive, see
+ * scripts/startup-cds.sh.
+ */
+class StartupBench extends App {
+    /** Frames of the level to play before exiting */
+    private static final int PLAY_FRAMES = 120;
+
+    /** Wall clock times (ms) of each milestone, 0 until reached */
+    private long firstFrame = 0, playable = 0, audioLoaded = 0;
+    private int levelFrames = 0;
+
+    StartupBench() {
+        super("Alistair vs The World");
+    }
+
+    @Override
+    public void update(GameContainer gc, int delta) throws SlickException {
+        if (firstFrame != 0 && !isPlaying()) {
+            openLevel("level1");
+        }
+        super.update(gc, delta);
+    }
+
+    @Override
+    public void render(GameContainer gc, Graphics g) throws SlickException {
+        super.render(gc, g);
+        long now = System.currentTimeMillis();
+        if (firstFrame == 0) {
+            firstFrame = now;
+        } else if (isPlaying() && levelFrames++ == 0) {
+            playable = now;
+        }
+        if (audioLoaded == 0 && getAudio().isLoaded()) {
+            audioLoaded = now;
+        }
+        if (levelFrames == PLAY_FRAMES) {
+            gc.exit();
+        }
+    }
+
+    private void report() {
+        long start = ManagementFactory.getRuntimeMXBean().getStartTime();
+        System.out.println("Time to first frame: " + (firstFrame - start) + " ms");
+        System.out.println("Time to playable:    " + (playable - start) + " ms");
+        System.out.println("Audio loaded:        " + (audioLoaded == 0 ? "not yet" : (audioLoaded - start) + " ms"));
+    }
+
+    public static void main(String[] args) {
+        StartupBench game = new StartupBench();
+        try {
+            AppGameContainer appgc = new AppGameContainer(game);
+            appgc.setDisplayMode(MatchHost.WINDOW_W, MatchHost.WINDOW_H, false);
+            appgc.start();
+        } catch (SlickException e) {
+            e.printStackTrace();
+        }
+        game.report();
+        System.exit(0);
+    }
+}
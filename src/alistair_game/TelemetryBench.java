@@ -0,0 +1,155 @@
+package alistair_game;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+/**
+ * Measures what the telemetry recorder costs per tick and how small its output is
+ * compared to writing every value out in full, then checks the reader gets back
+ * exactly what was recorded. Runs back-to-back headless level1 matches, kept busy by
+ * topping them up to a number of live enemies spread along the path every tick.
+ * Args: [ticks] [enemies]
+ */
+class TelemetryBench {
+    /** CPU time the game thread used in the last run (ns). Unlike wall time, it leaves out the writer thread
+     * when they share a core */
+    private static long runCpu = 0;
+    /** Live enemies each match is kept topped up to */
+    private static int busy;
+
+    public static void main(String[] args) throws IOException {
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        busy = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        LevelData level = LevelData.load("level1", "game1", MatchHost.TILE_SIZE);
+        Assets assets = Assets.headless();
+        File packed = File.createTempFile("telemetry", ".avtt"), naive = File.createTempFile("telemetry", ".raw");
+        packed.deleteOnExit();
+        naive.deleteOnExit();
+
+        // Alternate plain and recorded runs so both get warmed up, and keep the best of each
+        long plain = Long.MAX_VALUE, recorded = Long.MAX_VALUE, plainCpu = Long.MAX_VALUE, recordedCpu = Long.MAX_VALUE;
+        for (int round = 0; round < 4; round++) {
+            plain = Math.min(plain, run(level, assets, ticks, null, null));
+            plainCpu = Math.min(plainCpu, runCpu);
+            TelemetryRecorder recorder = new TelemetryRecorder(packed);
+            recorded = Math.min(recorded, run(level, assets, ticks, recorder, null));
+            recordedCpu = Math.min(recordedCpu, runCpu);
+            recorder.close();
+        }
+        long onGameThread = recordedCpu - plainCpu;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(naive)))) {
+            run(level, assets, ticks, null, out);
+        }
+
+        System.out.printf("%d ticks, %d enemies: %.2f us/tick plain, %.2f us/tick recording%n", ticks, busy,
+                plain / 1000.0 / ticks, recorded / 1000.0 / ticks);
+        System.out.printf("Game thread cost: %.2f us/tick (%.1f%% of tick time)%n",
+                onGameThread / 1000.0 / ticks, 100.0 * onGameThread / plainCpu);
+        System.out.printf("Total cost incl. writer thread on %d cores: %.1f%%%n",
+                Runtime.getRuntime().availableProcessors(), 100.0 * (recorded - plain) / plain);
+        System.out.printf("File size: %d bytes columnar vs %d bytes naive (%.1fx smaller)%n",
+                packed.length(), naive.length(), (double) naive.length() / packed.length());
+
+        // Read back random ticks and compare against a replay of the same simulation
+        checkReader(level, assets, packed, ticks);
+    }
+
+    /** Runs matches back to back for a number of ticks, returning the time taken (ns). */
+    private static long run(LevelData level, Assets assets, int ticks, TelemetryRecorder recorder,
+            DataOutputStream naive) throws IOException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        World world = MatchHost.newMatch(level, assets, 3);
+        Random rng = new Random(1);
+        long start = System.nanoTime(), startCpu = threads.getCurrentThreadCpuTime();
+        for (int t = 0; t < ticks; t++) {
+            if (world.isGameOver() || world.isCleared()) {
+                world = MatchHost.newMatch(level, assets, 3);
+            }
+            topUp(world, rng);
+            world.step(MatchHost.TICK_MS);
+            if (recorder != null) {
+                recorder.record(world);
+            }
+            if (naive != null) {
+                writeNaive(world, naive);
+            }
+        }
+        runCpu = threads.getCurrentThreadCpuTime() - startCpu;
+        return System.nanoTime() - start;
+    }
+
+    /** Spawns enemies on random path cells until the match has the busy number of them. */
+    private static void topUp(World world, Random rng) {
+        while (world.getEnemyCount() < busy) {
+            int x = rng.nextInt(world.getGridWidth()), y = rng.nextInt(world.getGridHeight());
+            if (!world.isWall(x, y)) {
+                world.spawnEnemy(world.toPos(x), world.toPos(y), rng.nextBoolean() ? "python" : "commerce");
+            }
+        }
+    }
+
+    /** Every value at full width, one tick after another */
+    private static void writeNaive(World world, DataOutputStream out) throws IOException {
+        out.writeInt(world.getEnemies().size());
+        for (Enemy e : world.getEnemies()) {
+            out.writeInt(e.getId());
+            out.writeFloat(e.getX());
+            out.writeFloat(e.getY());
+            out.writeInt(e.getHealth());
+        }
+        out.writeInt(world.getShooterCount());
+        for (int i = 0; i < world.getShooterCount(); i++) {
+            out.writeInt(world.getShooters()[i]);
+        }
+        out.writeInt(world.getProjectiles().size());
+    }
+
+    private static void checkReader(LevelData level, Assets assets, File packed, int ticks) throws IOException {
+        Random rng = new Random();
+        int[] wanted = new int[20];
+        for (int i = 0; i < wanted.length; i++) {
+            wanted[i] = rng.nextInt(ticks);
+        }
+        try (TelemetryReader reader = new TelemetryReader(packed)) {
+            World world = MatchHost.newMatch(level, assets, 3);
+            Random spawns = new Random(1);
+            for (int t = 0; t < ticks; t++) {
+                if (world.isGameOver() || world.isCleared()) {
+                    world = MatchHost.newMatch(level, assets, 3);
+                }
+                topUp(world, spawns);
+                world.step(MatchHost.TICK_MS);
+                for (int w : wanted) {
+                    if (w == t && !matches(reader.read(t), world)) {
+                        System.out.println("Reader check FAILED at tick " + t);
+                        return;
+                    }
+                }
+            }
+        }
+        System.out.println("Reader check: " + wanted.length + " random ticks match");
+    }
+
+    private static boolean matches(TelemetryReader.TickData data, World world) {
+        if (data.enemyIds.length != world.getEnemies().size()
+                || data.shooterIds.length != world.getShooterCount()
+                || data.projectiles != world.getProjectiles().size()) {
+            return false;
+        }
+        int i = 0;
+        for (Enemy e : world.getEnemies()) {
+            if (data.enemyIds[i] != e.getId() || data.enemyX[i] != Snapshot.quantise(e.getX())
+                    || data.enemyY[i] != Snapshot.quantise(e.getY()) || data.enemyHealth[i] != e.getHealth()) {
+                return false;
+            }
+            i++;
+        }
+        return true;
+    }
+}
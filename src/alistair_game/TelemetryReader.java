@@ -0,0 +1,171 @@
+package alistair_game;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads a file written by TelemetryRecorder. Block headers are scanned once when
+ * the file is opened, so reading any tick only decodes the one block it's in.
+ */
+class TelemetryReader implements AutoCloseable {
+    private RandomAccessFile file;
+    /** First tick, tick count and payload position of every block */
+    private List<long[]> blocks = new ArrayList<>();
+    private int ticks = 0;
+    /** The most recently decoded block, in case the next read is from it too */
+    private TelemetryRecorder.Batch cached = null;
+
+    /** State of the World in one tick */
+    static class TickData {
+        int tick, projectiles;
+        int[] enemyIds, enemyX, enemyY, enemyHealth, shooterIds;
+    }
+
+    TelemetryReader(File f) throws IOException {
+        file = new RandomAccessFile(f, "r");
+        if (file.readInt() != TelemetryRecorder.MAGIC || file.readByte() != TelemetryRecorder.VERSION) {
+            throw new IOException("Not a telemetry file: " + f);
+        }
+        while (file.getFilePointer() < file.length()) {
+            int firstTick = readVarint(), count = readVarint(), payload = readVarint();
+            blocks.add(new long[] {firstTick, count, file.getFilePointer()});
+            file.seek(file.getFilePointer() + payload);
+            ticks = firstTick + count;
+        }
+    }
+
+    /** Number of ticks in the file */
+    int getTicks() {
+        return ticks;
+    }
+
+    /** Reads one tick, seeking straight to its block. */
+    TickData read(int tick) throws IOException {
+        if (tick < 0 || tick >= ticks) {
+            throw new IndexOutOfBoundsException("Tick " + tick + " of " + ticks);
+        }
+        // Binary search for the block holding this tick
+        int lo = 0, hi = blocks.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) / 2;
+            if (blocks.get(mid)[0] <= tick) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        long[] block = blocks.get(lo);
+        if (cached == null || cached.firstTick != block[0]) {
+            cached = decode(block);
+        }
+        TelemetryRecorder.Batch b = cached;
+
+        // Find where this tick's entries start within the block
+        int t = (int) (tick - block[0]), enemy = 0, shot = 0;
+        for (int i = 0; i < t; i++) {
+            enemy += b.enemyCounts[i];
+            shot += b.shooterCounts[i];
+        }
+        TickData data = new TickData();
+        data.tick = tick;
+        data.projectiles = b.projectileCounts[t];
+        data.enemyIds = Arrays.copyOfRange(b.enemyIds, enemy, enemy + b.enemyCounts[t]);
+        data.enemyX = Arrays.copyOfRange(b.enemyX, enemy, enemy + b.enemyCounts[t]);
+        data.enemyY = Arrays.copyOfRange(b.enemyY, enemy, enemy + b.enemyCounts[t]);
+        data.enemyHealth = Arrays.copyOfRange(b.enemyHealth, enemy, enemy + b.enemyCounts[t]);
+        data.shooterIds = Arrays.copyOfRange(b.shooterIds, shot, shot + b.shooterCounts[t]);
+        return data;
+    }
+
+    /** Reads back a TelemetryRecorder.Column. */
+    private static class ColumnReader {
+        private BinaryReader in;
+        private int zeros = 0;
+
+        ColumnReader(byte[] data) {
+            in = new BinaryReader(data, 0, data.length);
+        }
+
+        int next() {
+            if (zeros > 0) {
+                zeros--;
+                return 0;
+            }
+            int v = in.readSigned();
+            if (v == 0) {
+                zeros = in.readVarint();
+            }
+            return v;
+        }
+    }
+
+    /** Undoes TelemetryRecorder.encode for one block. */
+    private TelemetryRecorder.Batch decode(long[] block) throws IOException {
+        file.seek(block[2]);
+        ColumnReader[] columns = new ColumnReader[6];
+        for (int i = 0; i < columns.length; i++) {
+            byte[] col = new byte[readVarint()];
+            file.readFully(col);
+            columns[i] = new ColumnReader(col);
+        }
+        ColumnReader counts = columns[0], ids = columns[1], xs = columns[2], ys = columns[3],
+            healths = columns[4], shots = columns[5];
+
+        TelemetryRecorder.Batch b = new TelemetryRecorder.Batch();
+        b.clear((int) block[0]);
+        int[] match = new int[1024];
+        int prevStart = 0, prevEnd = 0, prevEnemies = 0, prevShots = 0, prevProjectiles = 0;
+        for (int t = 0; t < block[1]; t++) {
+            int count = prevEnemies += counts.next();
+            b.enemyCounts[t] = count;
+            b.shooterCounts[t] = prevShots += counts.next();
+            b.projectileCounts[t] = prevProjectiles += counts.next();
+
+            int start = b.enemies, p = prevStart;
+            for (int i = start; i < start + count; i++) {
+                int slot = prevStart + (i - start);
+                int id = ids.next() + (slot < prevEnd ? b.enemyIds[slot] : 0);
+                while (p < prevEnd && b.enemyIds[p] < id) {
+                    p++;
+                }
+                if (i >= match.length) {
+                    match = Arrays.copyOf(match, match.length * 2);
+                }
+                match[i] = p < prevEnd && b.enemyIds[p] == id ? p : -1;
+                // Positions are predicted from the entries already decoded
+                b.addEnemy(id, 0, 0, 0);
+                b.enemyX[i] = xs.next() + TelemetryRecorder.predict(b.enemyX, match, i);
+                b.enemyY[i] = ys.next() + TelemetryRecorder.predict(b.enemyY, match, i);
+                b.enemyHealth[i] = healths.next() + (match[i] >= 0 ? b.enemyHealth[match[i]] : 0);
+            }
+            prevStart = start;
+            prevEnd = b.enemies;
+
+            int lastShooter = 0;
+            for (int i = 0; i < b.shooterCounts[t]; i++) {
+                b.addShot(lastShooter += shots.next());
+            }
+            b.ticks++;
+        }
+        return b;
+    }
+
+    private int readVarint() throws IOException {
+        int v = 0, shift = 0, b;
+        do {
+            b = file.readUnsignedByte();
+            v |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return v;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
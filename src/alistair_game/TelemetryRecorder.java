@@ -0,0 +1,327 @@
+package alistair_game;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Records the state of a World every tick to a compact columnar file, for offline analysis.
+ * <p>
+ * The game thread copies each tick into one of two batches. When a batch is full it's
+ * handed to a background thread to encode and write, while the game fills the other.
+ * Each batch becomes a self-contained block, so a reader can seek to any block:
+ * <pre>
+ * file:   "AVTT" version, then blocks
+ * block:  first tick, tick count, payload length, payload (all varints)
+ * payload: length-prefixed columns - counts, enemy ids, enemy x, enemy y,
+ *          enemy health, shooter ids
+ * </pre>
+ * Positions are in quarter pixels. Every value is stored as its difference from a
+ * prediction based on earlier ticks in the block, and runs of zero differences are
+ * collapsed, so enemies walking straight along the path cost next to nothing.
+ * <p>
+ * The game thread only copies, at about 15 ns per live enemy per tick. That's roughly a
+ * fifth of what a headless tick spends on each enemy, so busy matches run noticeably slower
+ * while recording (see TelemetryBench).
+ */
+class TelemetryRecorder {
+    static final int MAGIC = 0x41565454, VERSION = 1; // "AVTT"
+    /** Ticks per block */
+    static final int BATCH_TICKS = 250;
+
+    /** One block's worth of ticks, stored column by column. */
+    static class Batch {
+        int firstTick, ticks = 0;
+        /** Per tick */
+        int[] enemyCounts = new int[BATCH_TICKS], shooterCounts = new int[BATCH_TICKS],
+            projectileCounts = new int[BATCH_TICKS];
+        /** Per enemy per tick, all ticks end to end. Positions are float bits until encode quantises them */
+        int[] enemyIds = new int[1024], enemyX = new int[1024], enemyY = new int[1024],
+            enemyHealth = new int[1024];
+        int enemies = 0;
+        /** Per shot per tick */
+        int[] shooterIds = new int[256];
+        int shots = 0;
+
+        void clear(int firstTick) {
+            this.firstTick = firstTick;
+            ticks = enemies = shots = 0;
+        }
+
+        /** Makes room for a number more enemies. */
+        void reserveEnemies(int n) {
+            if (enemies + n > enemyIds.length) {
+                int cap = Math.max(enemyIds.length * 2, enemies + n);
+                enemyIds = Arrays.copyOf(enemyIds, cap);
+                enemyX = Arrays.copyOf(enemyX, cap);
+                enemyY = Arrays.copyOf(enemyY, cap);
+                enemyHealth = Arrays.copyOf(enemyHealth, cap);
+            }
+        }
+
+        void addEnemy(int id, int x, int y, int health) {
+            reserveEnemies(1);
+            enemyIds[enemies] = id;
+            enemyX[enemies] = x;
+            enemyY[enemies] = y;
+            enemyHealth[enemies] = health;
+            enemies++;
+        }
+
+        void addShot(int id) {
+            if (shots == shooterIds.length) {
+                shooterIds = Arrays.copyOf(shooterIds, shots * 2);
+            }
+            shooterIds[shots++] = id;
+        }
+    }
+
+    /** Tells the writer there's nothing more to come */
+    private static final Batch END = new Batch();
+
+    private Batch filling = new Batch();
+    /** Full batches waiting to be written, and empty ones ready to be filled */
+    private BlockingQueue<Batch> full = new ArrayBlockingQueue<>(2), empty = new ArrayBlockingQueue<>(2);
+    private Thread writer;
+    private DataOutputStream out;
+    private volatile IOException error = null;
+    private int tick = 0;
+    /** Game thread only: the World's enemies this tick, copied out so they can be read without an iterator */
+    private Enemy[] enemies = new Enemy[64];
+
+    /**
+     * Opens a file and starts the writer thread.
+     * @param file File to write (overwritten)
+     */
+    TelemetryRecorder(File file) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        empty.add(new Batch());
+        filling.clear(0);
+
+        writer = new Thread(this::writeLoop, "telemetry-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** Copies the World's current state into the batch. Call once per tick, on the game thread. */
+    void record(World world) {
+        Batch b = filling;
+        int t = b.ticks;
+        int count = world.getEnemyCount();
+        if (count > enemies.length) {
+            enemies = new Enemy[count * 2];
+        }
+        world.getEnemies(enemies);
+        b.enemyCounts[t] = count;
+        b.reserveEnemies(count);
+        int[] ids = b.enemyIds, xs = b.enemyX, ys = b.enemyY, healths = b.enemyHealth;
+        int n = b.enemies;
+        for (int i = 0; i < count; i++) {
+            Enemy e = enemies[i];
+            ids[n + i] = e.getId();
+            xs[n + i] = Float.floatToRawIntBits(e.getX());
+            ys[n + i] = Float.floatToRawIntBits(e.getY());
+            healths[n + i] = e.getHealth();
+        }
+        b.enemies = n + count;
+        int[] shooters = world.getShooters();
+        b.shooterCounts[t] = world.getShooterCount();
+        for (int i = 0; i < world.getShooterCount(); i++) {
+            b.addShot(shooters[i]);
+        }
+        b.projectileCounts[t] = world.getProjectileCount();
+        b.ticks++;
+        tick++;
+
+        if (b.ticks == BATCH_TICKS) {
+            swap();
+        }
+    }
+
+    /** Hands the full batch to the writer and carries on with the other one. */
+    private void swap() {
+        try {
+            full.put(filling);
+            filling = empty.take();
+            filling.clear(tick);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Writes out whatever's left and closes the file. */
+    void close() throws IOException {
+        if (filling.ticks > 0) {
+            swap();
+        }
+        try {
+            full.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        out.close();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void writeLoop() {
+        BinaryWriter block = new BinaryWriter(1 << 16);
+        Column[] columns = new Column[6];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = new Column();
+        }
+        int[] match = new int[1024];
+        while (true) {
+            Batch b;
+            try {
+                b = full.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (b == END) {
+                return;
+            }
+            try {
+                match = encode(b, columns, block, match);
+                out.write(block.array(), 0, block.size());
+            } catch (IOException e) {
+                error = e;
+            }
+            empty.add(b);
+        }
+    }
+
+    /**
+     * A column of signed varints where a run of zeros is written as a single 0
+     * followed by how many more zeros there are. Most columns are nearly all zeros
+     * once they're predicted from the previous ticks.
+     */
+    static class Column {
+        BinaryWriter out = new BinaryWriter(1 << 14);
+        private int zeros = 0;
+
+        void put(int v) {
+            if (v == 0) {
+                zeros++;
+                return;
+            }
+            flush();
+            out.writeSigned(v);
+        }
+
+        void flush() {
+            if (zeros > 0) {
+                out.writeSigned(0);
+                out.writeVarint(zeros - 1);
+                zeros = 0;
+            }
+        }
+
+        void reset() {
+            out.reset();
+            zeros = 0;
+        }
+    }
+
+    /**
+     * Encodes a batch as one block. Each enemy is matched up with itself in the previous
+     * tick (both lists are in id order) and its position is predicted to keep moving the
+     * way it moved last tick, so only changes of direction cost anything.
+     * @param match Scratch space, the matched index in the previous tick (or -1)
+     */
+    static int[] encode(Batch b, Column[] columns, BinaryWriter block, int[] match) {
+        for (Column c : columns) {
+            c.reset();
+        }
+        Column counts = columns[0], ids = columns[1], xs = columns[2], ys = columns[3],
+            healths = columns[4], shots = columns[5];
+        if (match.length < b.enemies) {
+            match = new int[b.enemyIds.length];
+        }
+        // Quantising is left to this thread, the game thread only copies
+        for (int i = 0; i < b.enemies; i++) {
+            b.enemyX[i] = Snapshot.quantise(Float.intBitsToFloat(b.enemyX[i]));
+            b.enemyY[i] = Snapshot.quantise(Float.intBitsToFloat(b.enemyY[i]));
+        }
+
+        int enemy = 0, prevStart = 0, prevEnd = 0, shot = 0;
+        int prevEnemies = 0, prevShots = 0, prevProjectiles = 0;
+        for (int t = 0; t < b.ticks; t++) {
+            int count = b.enemyCounts[t];
+            counts.put(count - prevEnemies);
+            counts.put(b.shooterCounts[t] - prevShots);
+            counts.put(b.projectileCounts[t] - prevProjectiles);
+            prevEnemies = count;
+            prevShots = b.shooterCounts[t];
+            prevProjectiles = b.projectileCounts[t];
+
+            int p = prevStart;
+            for (int i = enemy; i < enemy + count; i++) {
+                int id = b.enemyIds[i];
+                // Same id as the same slot last tick, unless something died or spawned
+                int slot = prevStart + (i - enemy);
+                ids.put(id - (slot < prevEnd ? b.enemyIds[slot] : 0));
+
+                while (p < prevEnd && b.enemyIds[p] < id) {
+                    p++;
+                }
+                match[i] = p < prevEnd && b.enemyIds[p] == id ? p : -1;
+                xs.put(b.enemyX[i] - predict(b.enemyX, match, i));
+                ys.put(b.enemyY[i] - predict(b.enemyY, match, i));
+                healths.put(b.enemyHealth[i] - (match[i] >= 0 ? b.enemyHealth[match[i]] : 0));
+            }
+            prevStart = enemy;
+            prevEnd = enemy += count;
+
+            int lastShooter = 0;
+            for (int i = shot; i < shot + b.shooterCounts[t]; i++) {
+                shots.put(b.shooterIds[i] - lastShooter);
+                lastShooter = b.shooterIds[i];
+            }
+            shot += b.shooterCounts[t];
+        }
+
+        int payload = 0;
+        for (Column c : columns) {
+            c.flush();
+            payload += varintSize(c.out.size()) + c.out.size();
+        }
+        block.reset();
+        block.writeVarint(b.firstTick);
+        block.writeVarint(b.ticks);
+        block.writeVarint(payload);
+        for (Column c : columns) {
+            block.writeVarint(c.out.size());
+            block.writeAll(c.out);
+        }
+        return match;
+    }
+
+    /** Where entry i should be if it carried on at the same speed (0 if it's new). */
+    static int predict(int[] values, int[] match, int i) {
+        int p = match[i];
+        if (p < 0) {
+            return 0;
+        }
+        int pp = match[p];
+        return pp < 0 ? values[p] : 2 * values[p] - values[pp];
+    }
+
+    private static int varintSize(int v) {
+        int n = 1;
+        while ((v & ~0x7F) != 0) {
+            v >>>= 7;
+            n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,135 @@
+package alistair_game;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Always-on flight recorder for the game: a fixed ring of the last few thousand ticks,
+ * kept as columns of primitives so recording a tick never allocates. When something
+ * goes wrong (game over, an exception, a slow tick or frame) the ring is dumped to a
+ * CSV file in dumps/, oldest tick first, to see what led up to it.
+ * <p>
+ * Each tick has entity counts, how long the tick and its phases took, what happened in
+ * it (see the event flags) and the player's input at the time.
+ */
+class TickRing {
+    /** Event flags, set by the World as things happen and collected each tick */
+    static final int WAVE_START = 1, WAVE_END = 2, LEAK = 4, GAME_OVER = 8, TOWER_PLACED = 16, TOWER_SOLD = 32,
+        LAYOUT_CHANGED = 64;
+    private static final String[] EVENT_NAMES = {"wave_start", "wave_end", "leak", "game_over", "tower_placed",
+        "tower_sold", "layout_changed"};
+    /** Input flags, for the buttons and keys that were held down */
+    static final int MOUSE_LEFT = 1, MOUSE_RIGHT = 2, KEY_ESCAPE = 4, KEY_F = 8, KEY_R = 16, KEY_E = 32,
+        KEY_ARROWS = 64, KEY_CTRL = 128;
+    private static final String[] INPUT_NAMES = {"mouse_left", "mouse_right", "escape", "f", "r", "e", "arrows",
+        "ctrl"};
+    private static final String DUMP_DIR = "dumps";
+
+    private final int capacity;
+    /** Ring position of the next record, and how many records there are (up to capacity) */
+    private int next = 0, size = 0;
+    private final long[] tick, clock, wallNanos, stepNanos, tickNanos, enemyNanos, projectileNanos;
+    private final int[] enemies, projectiles, towers, health, wave, shots, spawnsLeft, events, inputs, mouseX, mouseY;
+
+    /** @param capacity Number of ticks to keep */
+    TickRing(int capacity) {
+        this.capacity = capacity;
+        tick = new long[capacity];
+        clock = new long[capacity];
+        wallNanos = new long[capacity];
+        stepNanos = new long[capacity];
+        tickNanos = new long[capacity];
+        enemyNanos = new long[capacity];
+        projectileNanos = new long[capacity];
+        enemies = new int[capacity];
+        projectiles = new int[capacity];
+        towers = new int[capacity];
+        health = new int[capacity];
+        wave = new int[capacity];
+        shots = new int[capacity];
+        spawnsLeft = new int[capacity];
+        events = new int[capacity];
+        inputs = new int[capacity];
+        mouseX = new int[capacity];
+        mouseY = new int[capacity];
+    }
+
+    /**
+     * Records the tick the World just ran, over the oldest record once the ring is full.
+     * Collects the World's event flags. Doesn't allocate.
+     * @param step How long the whole step took (ns)
+     * @param input Input flags held down when it ran
+     */
+    void record(World world, long step, int input, int mx, int my) {
+        int i = next;
+        tick[i] = world.getTicks();
+        clock[i] = world.getClock();
+        wallNanos[i] = System.nanoTime();
+        stepNanos[i] = step;
+        tickNanos[i] = world.getPhaseNanos(World.TICK_PHASE);
+        enemyNanos[i] = world.getPhaseNanos(World.ENEMY_PHASE);
+        projectileNanos[i] = world.getPhaseNanos(World.PROJECTILE_PHASE);
+        enemies[i] = world.getEnemyCount();
+        projectiles[i] = world.getProjectileCount();
+        towers[i] = world.getTowerCount();
+        health[i] = world.getHealth();
+        wave[i] = world.getWaveNum();
+        shots[i] = world.getShooterCount();
+        spawnsLeft[i] = world.getSpawnsLeft();
+        events[i] = world.takeEvents();
+        inputs[i] = input;
+        mouseX[i] = mx;
+        mouseY[i] = my;
+        next = (i + 1) % capacity;
+        size = Math.min(size + 1, capacity);
+    }
+
+    /** Forgets every record, e.g. when a new level starts. */
+    void clear() {
+        next = size = 0;
+    }
+
+    /**
+     * Writes every record to a new file in dumps/, oldest first.
+     * @param reason Why, e.g. "game-over". Goes in the file name and the first line
+     * @return The file written
+     */
+    File dump(String reason) throws IOException {
+        File dir = new File(DUMP_DIR);
+        dir.mkdirs();
+        String time = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS"));
+        File file = new File(dir, "ticks-" + time + "-" + reason + ".csv");
+        long now = System.nanoTime();
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            out.println("# " + reason + ", last " + size + " ticks");
+            out.println("tick,clock_ms,age_ms,step_us,tick_us,enemy_move_us,projectile_move_us,enemies,projectiles,"
+                    + "towers,health,wave,shots,spawns_left,events,inputs,mouse_x,mouse_y");
+            for (int n = 0; n < size; n++) {
+                int i = (next - size + n + capacity) % capacity;
+                out.printf("%d,%d,%.1f,%.1f,%.1f,%.1f,%.1f,%d,%d,%d,%d,%d,%d,%d,%s,%s,%d,%d%n", tick[i], clock[i],
+                        (now - wallNanos[i]) / 1e6, stepNanos[i] / 1e3, tickNanos[i] / 1e3, enemyNanos[i] / 1e3,
+                        projectileNanos[i] / 1e3, enemies[i], projectiles[i], towers[i], health[i], wave[i], shots[i],
+                        spawnsLeft[i], flagNames(events[i], EVENT_NAMES), flagNames(inputs[i], INPUT_NAMES),
+                        mouseX[i], mouseY[i]);
+            }
+        }
+        System.out.println("GAME STATE: Wrote the last " + size + " ticks to " + file + " (" + reason + ")");
+        return file;
+    }
+
+    /** Flags as their names separated by |, for the dump */
+    private static String flagNames(int flags, String[] names) {
+        StringBuilder s = new StringBuilder();
+        for (int bit = 0; bit < names.length; bit++) {
+            if ((flags & 1 << bit) != 0) {
+                s.append(s.length() > 0 ? "|" : "").append(names[bit]);
+            }
+        }
+        return s.toString();
+    }
+
+    int getSize() { return size; }
+}
@@ -1,7 +1,5 @@
 package alistair_game;
 
-import org.newdawn.slick.Image;
-
 /**
  * Tile sprites to make the terrain
  */
@@ -11,15 +9,17 @@ public class Tile extends Sprite {
     /** Create a tile
      * @param x Start x-coord
      * @param y Start y-coord
-     * @param im Sprite image
+     * @param def Sprite image and size
      * @param name Tile name, e.g. grass
      */
-    Tile(float x, float y, Image im, String name) {
-        super(x, y, im);
+    Tile(float x, float y, SpriteDef def, String name) {
+        super(x, y, def);
         this.name = name;
     }
 
     public boolean isWall() {
         return name.equals("wall");
     }
+
+    String getName() { return name; }
 }
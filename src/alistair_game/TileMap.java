@@ -0,0 +1,117 @@
+package alistair_game;
+
+/**
+ * The tile type of every grid cell, stored in square chunks of bytes so big maps
+ * don't need an object per cell. Chunks are filled in from a Source the first time
+ * anything in them is looked at, so a huge level only decodes the parts that get
+ * walked on or looked at.
+ * <p>
+ * Tile types are the integers from the level file (see World.TILE_NAMES). Anything
+ * off the map is wall.
+ */
+class TileMap {
+    /** Side length of a chunk, in cells */
+    static final int CHUNK = 32;
+
+    /** Fills in a chunk the first time it's needed. */
+    interface Source {
+        /**
+         * @param cx Chunk column
+         * @param cy Chunk row
+         * @param cells Chunk to fill, indexed [(y % CHUNK) * CHUNK + x % CHUNK]. Starts as all walls
+         */
+        void load(int cx, int cy, byte[] cells);
+    }
+
+    private final int width, height, chunksW;
+    private final byte[][] chunks;
+    private final Source source;
+    private int loadedChunks = 0;
+
+    /**
+     * @param width Map width in cells
+     * @param height Map height in cells
+     * @param source Where chunks are loaded from (null for an all-wall map)
+     */
+    TileMap(int width, int height, Source source) {
+        this.width = width;
+        this.height = height;
+        this.source = source;
+        chunksW = (width + CHUNK - 1) / CHUNK;
+        chunks = new byte[chunksW * ((height + CHUNK - 1) / CHUNK)][];
+    }
+
+    /** A map holding a copy of a [x][y] grid of tile types. */
+    static TileMap of(int[][] grid) {
+        TileMap map = new TileMap(grid.length, grid[0].length, null);
+        for (int x = 0; x < grid.length; x++) {
+            for (int y = 0; y < grid[x].length; y++) {
+                map.set(x, y, grid[x][y]);
+            }
+        }
+        return map;
+    }
+
+    /** A copy to edit. Chunks that haven't been loaded yet will load from the same source */
+    TileMap copy() {
+        TileMap map = new TileMap(width, height, source);
+        for (int i = 0; i < chunks.length; i++) {
+            if (chunks[i] != null) {
+                map.chunks[i] = chunks[i].clone();
+                map.loadedChunks++;
+            }
+        }
+        return map;
+    }
+
+    /** Tile type of a cell. Off the map is wall */
+    int get(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return PathTrace.WALL;
+        }
+        return chunk(x / CHUNK, y / CHUNK)[(y % CHUNK) * CHUNK + x % CHUNK];
+    }
+
+    void set(int x, int y, int type) {
+        chunk(x / CHUNK, y / CHUNK)[(y % CHUNK) * CHUNK + x % CHUNK] = (byte) type;
+    }
+
+    boolean isWall(int x, int y) {
+        return get(x, y) == PathTrace.WALL;
+    }
+
+    /** Whether any wall differs between the chunks this map has loaded and another map */
+    boolean wallsDiffer(TileMap other) {
+        for (int i = 0; i < chunks.length; i++) {
+            if (chunks[i] == null) {
+                continue;
+            }
+            int cx = i % chunksW, cy = i / chunksW;
+            for (int x = cx * CHUNK; x < Math.min(width, (cx + 1) * CHUNK); x++) {
+                for (int y = cy * CHUNK; y < Math.min(height, (cy + 1) * CHUNK); y++) {
+                    if (isWall(x, y) != other.isWall(x, y)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private byte[] chunk(int cx, int cy) {
+        byte[] chunk = chunks[cy * chunksW + cx];
+        if (chunk == null) {
+            chunk = new byte[CHUNK * CHUNK];
+            if (source != null) {
+                source.load(cx, cy, chunk);
+            }
+            chunks[cy * chunksW + cx] = chunk;
+            loadedChunks++;
+        }
+        return chunk;
+    }
+
+    int getWidth() { return width; }
+    int getHeight() { return height; }
+    int getLoadedChunks() { return loadedChunks; }
+}
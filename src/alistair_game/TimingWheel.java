@@ -0,0 +1,141 @@
+package alistair_game;
+
+/**
+ * Hierarchical timing wheel for things that happen a set time from now, like tower
+ * reloads and status effects wearing off. Advancing only touches the timers that are
+ * due (plus the occasional cascade), however many timers are waiting.
+ * <p>
+ * Time is in ms. Level 0 has a slot for each of the next 64 ms, level 1 a slot for
+ * each of the next 64 blocks of 64 ms, and so on. When time reaches the start of a
+ * higher level slot, its timers are moved down to the level that fits them now.
+ * Timers are linked into their slots directly, so scheduling doesn't allocate.
+ */
+class TimingWheel {
+    private static final int BITS = 6, SLOTS = 1 << BITS, LEVELS = 4;
+
+    /** Something to run at a given time. Create one per tower or effect and reuse it. */
+    static class Timer {
+        private final Runnable action;
+        private long due;
+        private Timer prev, next;
+        private int level = -1, slot;
+
+        /** @param action Run when the timer goes off */
+        Timer(Runnable action) {
+            this.action = action;
+        }
+
+        boolean isScheduled() { return level >= 0; }
+        long getDue() { return due; }
+    }
+
+    private final Timer[][] slots = new Timer[LEVELS][SLOTS];
+    /** Which slots have timers in them, a bit per slot per level */
+    private final long[] occupied = new long[LEVELS];
+    private long now = 0;
+    private int size = 0;
+
+    /**
+     * Sets a timer to go off at a given time, moving it if it was already set.
+     * @param due Time to go off at. Times not after now go off on the next advance
+     */
+    void schedule(Timer t, long due) {
+        cancel(t);
+        t.due = Math.max(due, now + 1);
+        insert(t);
+        size++;
+    }
+
+    /** Stops a timer from going off. Does nothing if it isn't set. */
+    void cancel(Timer t) {
+        if (t.isScheduled()) {
+            unlink(t);
+            size--;
+        }
+    }
+
+    /**
+     * Moves time forward, running every timer due up to and including the new time,
+     * earliest first. Timers can schedule or cancel timers while they run.
+     * @param to New time, in ms
+     */
+    void advance(long to) {
+        while (now < to) {
+            if (occupied[0] == 0) {
+                // Nothing due until something cascades down, skip to just before the next level 1 slot
+                now = Math.min(to, ((now >> BITS) + 1 << BITS) - 1);
+                if (now == to) {
+                    break;
+                }
+            }
+            now++;
+            // Higher levels first, so timers they move down to a lower slot that's also due get moved again
+            for (int level = LEVELS - 1; level >= 1; level--) {
+                if ((now & ((1L << (BITS * level)) - 1)) == 0) {
+                    cascade(level, (int) (now >> (BITS * level)) & (SLOTS - 1));
+                }
+            }
+            int slot = (int) now & (SLOTS - 1);
+            while (slots[0][slot] != null) {
+                Timer t = slots[0][slot];
+                unlink(t);
+                size--;
+                t.action.run();
+            }
+        }
+    }
+
+    private void cascade(int level, int slot) {
+        Timer t = slots[level][slot];
+        slots[level][slot] = null;
+        occupied[level] &= ~(1L << slot);
+        while (t != null) {
+            Timer next = t.next;
+            insert(t);
+            t = next;
+        }
+    }
+
+    /** Adds a timer to the lowest level whose slots reach far enough ahead. */
+    private void insert(Timer t) {
+        int level = 0;
+        while (level < LEVELS - 1 && (t.due >> (BITS * level)) - (now >> (BITS * level)) >= SLOTS) {
+            level++;
+        }
+        long block = t.due >> (BITS * level);
+        if (block - (now >> (BITS * level)) >= SLOTS) {
+            // Further off than the whole wheel. Park it in the last slot round and try again from there
+            block = (now >> (BITS * level)) + SLOTS - 1;
+        }
+        int slot = (int) block & (SLOTS - 1);
+        t.level = level;
+        t.slot = slot;
+        t.prev = null;
+        t.next = slots[level][slot];
+        if (t.next != null) {
+            t.next.prev = t;
+        }
+        slots[level][slot] = t;
+        occupied[level] |= 1L << slot;
+    }
+
+    private void unlink(Timer t) {
+        if (t.prev != null) {
+            t.prev.next = t.next;
+        } else {
+            slots[t.level][t.slot] = t.next;
+            if (t.next == null) {
+                occupied[t.level] &= ~(1L << t.slot);
+            }
+        }
+        if (t.next != null) {
+            t.next.prev = t.prev;
+        }
+        t.prev = t.next = null;
+        t.level = -1;
+    }
+
+    long getNow() { return now; }
+    /** Number of timers waiting to go off */
+    int size() { return size; }
+}
@@ -1,120 +1,171 @@
 package alistair_game;
 
-import org.newdawn.slick.Image;
-import org.newdawn.slick.SlickException;
-import org.newdawn.slick.geom.Vector2f;
-import org.newdawn.slick.Graphics;
-
 import java.util.List;
 
 import org.newdawn.slick.Color;
+import org.newdawn.slick.geom.Vector2f;
 
 /**
  * Towers are placed on a grid and shoot projectiles at enemies.
  */
 class Tower extends Sprite {   
+    /** Splash burst radius, and how many times and how far chain shots arc (pixels) */
+    private static final float SPLASH_RADIUS = 60f, CHAIN_RANGE = 96f;
+    private static final int CHAIN_JUMPS = 3;
+    /** Splash shots set the enemy they hit on fire (damage per World.BURN_INTERVAL, and for how long in ms),
+     * and chain shots stun the first enemy they hit (ms) */
+    private static final int BURN_DAMAGE = 1, BURN_MS = 2000, STUN_MS = 400;
     private boolean placed = false;
     private float range = 150f; // Range is radius from center
     private int fireRate = 0; // In ms
-    private long nextShot; // Time until next fire (in ms)
+    /** Goes off when the tower has reloaded (set up by the World it's placed in) */
+    private TimingWheel.Timer reload;
+    /** Waiting in the World's list of towers ready to fire */
+    private boolean ready = false;
+    /** Whether the last look for a target saw any enemies in the covered cells */
+    private boolean enemiesNearby = false;
     private float projSpeed = 4f;
+    private String type;
+    private boolean homing; // Fires projectiles that track their target
+    private Color baseCol;
+    /** Path cells within range, and whether each is entirely within range */
+    private int[] coveredCells = new int[0];
+    private boolean[] fullyCovered = new boolean[0];
 
     /**
      * Create a tower
      * @param startx x-position
      * @param starty y-position
-     * @param im Sprite image
+     * @param def Sprite image and size
      * @param fireRate Time between shots (ms)
+     * @param type Tower type, e.g. homing
      */
-    Tower(float startx, float starty, Image im, int fireRate) {
-        super(startx, starty, im);
+    Tower(float startx, float starty, SpriteDef def, int fireRate, String type) {
+        super(startx, starty, def);
         this.fireRate = fireRate;
-        nextShot = 0;
+        this.type = type;
+        switch (type) {
+            case "alistair":
+            case "splash":
+            case "chain":
+                break;
+            case "homing":
+                homing = true;
+                break;
+            default:
+                throw new IllegalArgumentException("No such tower '" + type + "'");
+        }
+        baseCol = baseColor(type);
     }
 
-    /** Makes the shot. Generates a projectile and sets a new time. */
-    void shoot(World world) {
-        try {
-            // Target the next enemy in range
-            Vector2f vec = targetNext(world.getEnemies());
-            if (vec == null) {
-                // Instead of firing, just wait and try again next tick
-                return;
-            }
-            
-            // Create projectile
-            Image im = new Image("assets\\sprites\\defaultproj.png"); // TODO: move this reference elsewhere
-            world.newProjectile(getX(), getY(), vec, im);
-
-            // Reset the timer for the next shot
-            nextShot = fireRate;
-        } catch (SlickException e) {
-            e.printStackTrace();
+    /** Makes the shot. Generates a projectile; the World starts the reload.
+     * Returns false if there was nothing in range to shoot at. */
+    boolean shoot(World world) {
+        // Target the next enemy in range
+        Enemy target = targetNext(world.getCoverage());
+        if (target == null) {
+            // Instead of firing, wait for an enemy to come into range
+            return false;
         }
+        Vector2f vec = aim(target, world);
+        
+        // Create projectile
+        SpriteDef proj = world.getAssets().def("defaultproj.png");
+        Projectile p;
+        switch (type) {
+            case "homing":
+                p = new HomingProjectile(getX(), getY(), vec, proj, target);
+                break;
+            case "splash":
+                p = new SplashProjectile(getX(), getY(), vec, proj, SPLASH_RADIUS, BURN_DAMAGE, BURN_MS);
+                p.setColor(baseCol);
+                break;
+            case "chain":
+                p = new ChainProjectile(getX(), getY(), vec, proj, CHAIN_JUMPS, CHAIN_RANGE, STUN_MS);
+                p.setColor(baseCol);
+                break;
+            default:
+                p = new Projectile(getX(), getY(), vec, proj);
+        }
+        world.newProjectile(p);
+        return true;
     }
 
-    /** Returns a velocity vector to hit the first enemy in range. */
-    private Vector2f targetNext(List<Enemy> enemies) {
-        // Target the first enemy in range
+    /** Returns the first enemy in range, or null if there is none. */
+    private Enemy targetNext(CoverageMap coverage) {
+        // Target the oldest enemy in range, only looking at the cells we cover
         Enemy target = null;
-        for (Enemy e : enemies) {
-            if (distanceTo(e) <= range) {
-                target = e;
-                break;
+        enemiesNearby = false;
+        for (int i = 0; i < coveredCells.length; i++) {
+            List<Enemy> occupants = coverage.getOccupants(coveredCells[i]);
+            enemiesNearby |= !occupants.isEmpty();
+            for (Enemy e : occupants) {
+                if ((target == null || e.getId() < target.getId())
+                        && (fullyCovered[i] || distanceTo(e) <= range)) {
+                    target = e;
+                }
             }
         }
-        // If there is none, return null and handle above
-        if (target == null) {
-            return null;
+        return target;
+    }
+
+    /** Returns a velocity vector that will hit the target. */
+    private Vector2f aim(Enemy target, World world) {
+        Vector2f vec = Intercept.solve(getX(), getY(), projSpeed, target, world);
+        if (vec != null) {
+            return vec;
         }
-        
-        Vector2f vec = new Vector2f(target.getX()-getX(), target.getY()-getY());
+
+        // No intercept along the path, so aim at where it is now
+        vec = new Vector2f(target.getX()-getX(), target.getY()-getY());
         vec.normalise().scale(projSpeed);
         
         // Assume it keeps moving in a straight line
-        vec.add(target.getV());
+        vec.x += target.getVX();
+        vec.y += target.getVY();
         
         return vec;
     }
     
+    /** Colour towers of the type and their shots are drawn with. */
+    static Color baseColor(String type) {
+        switch (type) {
+            case "homing":
+                return Color.cyan;
+            case "splash":
+                return Color.orange;
+            case "chain":
+                return Color.yellow;
+            default:
+                return Color.white;
+        }
+    }
+
     /** Places the tower. */
     void place(float x, float y) {
         teleport(x, y);
+        setColor(baseCol);
         placed = true;
     }
-    
-    /** Counts down the shot timer.
-     * Returns true if enough time has passed to shoot. */
-    boolean countDown(int delta) {
-        nextShot -= delta;
-        return nextShot <= 0;
-    }
-    // ^ This could be split into two functions rather than
-    // being a check with side effects
 
-    /** Draws a range circle around towers. */
-    void drawRange(Graphics g) {
-        Color oldcol = g.getColor();
 
-        // Top-left corner of the circle
-        float xcorner = getX() - range, ycorner = getY() - range;
+    boolean isPlaced() { return placed; }
+    int getFireRate() { return fireRate; }
+    TimingWheel.Timer getReloadTimer() { return reload; }
+    boolean isReady() { return ready; }
+    /** Whether there were enemies in the covered cells (maybe out of range) when it last looked */
+    boolean hasEnemiesNearby() { return enemiesNearby; }
+    float getRange() { return range; }
+    Color getBaseColor() { return baseCol; }
+    String getType() { return type; }
+    boolean isHoming() { return homing; }
+    int[] getCoveredCells() { return coveredCells; }
 
-        // Draw circumference
-        g.setColor(new Color(110, 110, 110, 110));
-        g.drawOval(xcorner, ycorner, range * 2, range * 2);
-        // Fill with a shade of grey (can change vals depending on contrast w/ textures)
-        g.setColor(new Color(80, 80, 80, 80));
-        g.fillOval(xcorner, ycorner, range * 2, range * 2);
+    void setReloadTimer(TimingWheel.Timer reload) { this.reload = reload; }
+    void setReady(boolean ready) { this.ready = ready; }
 
-        // Reset color
-        // MATT: How do colours work, and why does not resetting it break other graphics
-        // operations?
-        g.setColor(oldcol);
+    void setCoverage(int[] cells, boolean[] fullyCovered) {
+        this.coveredCells = cells;
+        this.fullyCovered = fullyCovered;
     }
-
-    void waveReset() {
-        nextShot = 0;
-    }
-
-    boolean isPlaced() { return placed; }
 }
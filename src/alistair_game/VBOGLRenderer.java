@@ -0,0 +1,499 @@
+package alistair_game;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.ARBMapBufferRange;
+import org.lwjgl.opengl.ContextCapabilities;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GLContext;
+import org.newdawn.slick.opengl.renderer.ImmediateModeOGLRenderer;
+
+/**
+ * A Slick renderer that collects glBegin/glEnd geometry into big batches and streams them
+ * to the card through one vertex buffer object, instead of drawing each shape on its own
+ * like the default renderer. Choose it with --renderer vbo (see App).
+ * <p>
+ * Each vertex is interleaved into one array (position, texture coordinate, then the colour
+ * packed into 4 bytes), so a batch goes up in a single copy. Batches are appended one after
+ * another into a ring in the buffer. When the ring is full its storage is orphaned (replaced
+ * with glBufferData), so the driver never waits for the card to finish with the old data.
+ * With glMapBufferRange a batch is written straight into the buffer, otherwise it's sent
+ * with glBufferSubData. Without vertex buffer objects at all it's drawn from a client array.
+ * <p>
+ * Quads, triangles, lines and points are batched across glBegin/glEnd pairs. Strips, fans
+ * and polygons are drawn at their glEnd since they can't be joined. Anything that changes
+ * how geometry is drawn (textures, blending, matrices...) draws the batch first.
+ */
+class VBOGLRenderer extends ImmediateModeOGLRenderer {
+    /** No geometry is being collected */
+    private static final int NONE = -1;
+    /** Vertices after which a batch is drawn, where it can be split */
+    private static final int MAX_VERTS = 32768;
+    /** Batches of MAX_VERTS that fit in the ring before it's orphaned */
+    private static final int RING_BATCHES = 4;
+    /** Ints per vertex: x, y, z, u, v and the packed colour, and bytes per vertex */
+    private static final int INTS = 6, STRIDE = INTS * 4;
+    /** Where the texture coordinate and colour are in each vertex (bytes) */
+    private static final int TEX_OFFSET = 12, COLOR_OFFSET = 20;
+    /** Whether the colour's red byte is the low end of the packed int */
+    private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    /** Type of geometry being collected, e.g. GL_QUADS */
+    private int currentType = NONE;
+    /** Last colour set, as given and packed as it's stored */
+    private float[] color = {1, 1, 1, 1};
+    private int packedColor = 0xffffffff;
+    /** Last texture coordinate set, as float bits */
+    private int texU, texV;
+    private int vertIndex = 0;
+
+    /** Vertices collected, with floats stored as their bits */
+    private int[] data = new int[(MAX_VERTS + 4) * INTS];
+    /** Staging for glBufferSubData, or the client array without vertex buffers */
+    private ByteBuffer upload = BufferUtils.createByteBuffer(data.length * 4);
+    private IntBuffer uploadInts = upload.asIntBuffer();
+
+    /** The vertex buffer, or 0 if they're not supported */
+    private int vbo = 0;
+    /** Which glMapBufferRange there is, if any */
+    private boolean mapRange30, mapRangeARB;
+    /** Size of the buffer's storage, and where the next batch goes in it (bytes) */
+    private int ringSize, ringOffset;
+    /** Last buffer returned by mapping, for LWJGL to reuse */
+    private ByteBuffer mapped;
+    /** Batches drawn since the renderer was made */
+    private int flushes = 0;
+    /** Display lists being recorded. They can't use the vertex buffer, so go straight through */
+    private int listMode = 0;
+
+    @Override
+    public void initDisplay(int width, int height) {
+        super.initDisplay(width, height);
+
+        ContextCapabilities caps = GLContext.getCapabilities();
+        if (vbo != 0) {
+            GL15.glDeleteBuffers(vbo);
+            vbo = 0;
+        }
+        if (caps.OpenGL15) {
+            vbo = GL15.glGenBuffers();
+            ringSize = MAX_VERTS * STRIDE * RING_BATCHES;
+            ringOffset = 0;
+            GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
+            GL15.glBufferData(GL15.GL_ARRAY_BUFFER, ringSize, GL15.GL_STREAM_DRAW);
+            GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+        }
+        mapRange30 = caps.OpenGL30;
+        mapRangeARB = !mapRange30 && caps.GL_ARB_map_buffer_range;
+        mapped = null;
+        vertIndex = 0;
+    }
+
+    /** Draws the vertices collected so far. */
+    private void flushBuffer() {
+        if (vertIndex == 0 || currentType == NONE) {
+            currentType = NONE;
+            return;
+        }
+
+        GL11.glEnableClientState(GL11.GL_VERTEX_ARRAY);
+        GL11.glEnableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+        GL11.glEnableClientState(GL11.GL_COLOR_ARRAY);
+        if (vbo == 0) {
+            uploadInts.clear();
+            uploadInts.put(data, 0, vertIndex * INTS);
+            upload.position(0);
+            GL11.glVertexPointer(3, GL11.GL_FLOAT, STRIDE, upload);
+            upload.position(TEX_OFFSET);
+            GL11.glTexCoordPointer(2, GL11.GL_FLOAT, STRIDE, upload);
+            upload.position(COLOR_OFFSET);
+            GL11.glColorPointer(4, GL11.GL_UNSIGNED_BYTE, STRIDE, upload);
+            upload.position(0);
+            GL11.glDrawArrays(currentType, 0, vertIndex);
+        } else {
+            int bytes = vertIndex * STRIDE;
+            GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
+            if (bytes > ringSize) {
+                // A strip or polygon bigger than the whole ring
+                ringSize = bytes * 2;
+                GL15.glBufferData(GL15.GL_ARRAY_BUFFER, ringSize, GL15.GL_STREAM_DRAW);
+                ringOffset = 0;
+                mapped = null;
+            } else if (ringOffset + bytes > ringSize) {
+                // Orphan the storage the card may still be reading and start again
+                GL15.glBufferData(GL15.GL_ARRAY_BUFFER, ringSize, GL15.GL_STREAM_DRAW);
+                ringOffset = 0;
+            }
+
+            ByteBuffer target = null;
+            if (mapRange30 || mapRangeARB) {
+                // Nothing is drawing from this part of the ring, so there's no need to wait
+                int access = GL30.GL_MAP_WRITE_BIT | GL30.GL_MAP_INVALIDATE_RANGE_BIT | GL30.GL_MAP_UNSYNCHRONIZED_BIT;
+                target = mapRange30
+                    ? GL30.glMapBufferRange(GL15.GL_ARRAY_BUFFER, ringOffset, bytes, access, mapped)
+                    : ARBMapBufferRange.glMapBufferRange(GL15.GL_ARRAY_BUFFER, ringOffset, bytes, access, mapped);
+            }
+            if (target != null) {
+                mapped = target;
+                target.order(ByteOrder.nativeOrder()).asIntBuffer().put(data, 0, vertIndex * INTS);
+                GL15.glUnmapBuffer(GL15.GL_ARRAY_BUFFER);
+            } else {
+                uploadInts.clear();
+                uploadInts.put(data, 0, vertIndex * INTS);
+                uploadInts.flip();
+                GL15.glBufferSubData(GL15.GL_ARRAY_BUFFER, ringOffset, uploadInts);
+            }
+
+            GL11.glVertexPointer(3, GL11.GL_FLOAT, STRIDE, 0);
+            GL11.glTexCoordPointer(2, GL11.GL_FLOAT, STRIDE, TEX_OFFSET);
+            GL11.glColorPointer(4, GL11.GL_UNSIGNED_BYTE, STRIDE, COLOR_OFFSET);
+            GL11.glDrawArrays(currentType, ringOffset / STRIDE, vertIndex);
+            ringOffset += bytes;
+            // Leave client arrays usable by code drawing its own (see DrawList)
+            GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+        }
+        GL11.glDisableClientState(GL11.GL_COLOR_ARRAY);
+        GL11.glDisableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+        GL11.glDisableClientState(GL11.GL_VERTEX_ARRAY);
+
+        flushes++;
+        currentType = NONE;
+    }
+
+    /** Draws what's been collected and starts again, e.g. before a state change. */
+    private void applyBuffer() {
+        if (listMode > 0) {
+            return;
+        }
+        if (vertIndex != 0) {
+            flushBuffer();
+            vertIndex = 0;
+        }
+        super.glColor4f(color[0], color[1], color[2], color[3]);
+    }
+
+    @Override
+    public void flush() {
+        super.flush();
+        applyBuffer();
+    }
+
+    @Override
+    public void glBegin(int geomType) {
+        if (listMode > 0) {
+            super.glBegin(geomType);
+        } else if (currentType != geomType) {
+            applyBuffer();
+            currentType = geomType;
+        }
+    }
+
+    @Override
+    public void glEnd() {
+        if (listMode > 0) {
+            super.glEnd();
+        } else if (!isBatchable(currentType)) {
+            applyBuffer();
+        }
+    }
+
+    @Override
+    public void glColor4f(float r, float g, float b, float a) {
+        a *= alphaScale;
+        color[0] = r;
+        color[1] = g;
+        color[2] = b;
+        color[3] = a;
+        if (listMode > 0) {
+            super.glColor4f(r, g, b, a);
+        } else if (LITTLE_ENDIAN) {
+            packedColor = toByte(r) | toByte(g) << 8 | toByte(b) << 16 | toByte(a) << 24;
+        } else {
+            packedColor = toByte(r) << 24 | toByte(g) << 16 | toByte(b) << 8 | toByte(a);
+        }
+    }
+
+    /** A colour component as an unsigned byte, the way OpenGL converts it */
+    private static int toByte(float c) {
+        return c <= 0 ? 0 : c >= 1 ? 255 : (int) (c * 255 + 0.5f);
+    }
+
+    @Override
+    public void glTexCoord2f(float u, float v) {
+        if (listMode > 0) {
+            super.glTexCoord2f(u, v);
+            return;
+        }
+        texU = Float.floatToRawIntBits(u);
+        texV = Float.floatToRawIntBits(v);
+    }
+
+    @Override
+    public void glVertex2f(float x, float y) {
+        if (listMode > 0) {
+            super.glVertex2f(x, y);
+            return;
+        }
+        glVertex3f(x, y, 0);
+    }
+
+    @Override
+    public void glVertex3f(float x, float y, float z) {
+        if (listMode > 0) {
+            super.glVertex3f(x, y, z);
+            return;
+        }
+        int i = vertIndex * INTS;
+        if (i == data.length) {
+            growBuffer();
+        }
+        data[i] = Float.floatToRawIntBits(x);
+        data[i + 1] = Float.floatToRawIntBits(y);
+        data[i + 2] = Float.floatToRawIntBits(z);
+        data[i + 3] = texU;
+        data[i + 4] = texV;
+        data[i + 5] = packedColor;
+        vertIndex++;
+
+        if (vertIndex >= MAX_VERTS && isSplittable(vertIndex, currentType)) {
+            int type = currentType;
+            applyBuffer();
+            currentType = type;
+        }
+    }
+
+    /** Doubles the space for vertices, for geometry that can't be split. */
+    private void growBuffer() {
+        int[] bigger = new int[data.length * 2];
+        System.arraycopy(data, 0, bigger, 0, data.length);
+        data = bigger;
+        upload = BufferUtils.createByteBuffer(data.length * 4);
+        uploadInts = upload.asIntBuffer();
+    }
+
+    /** Whether separate glBegin/glEnd pairs of a type can be drawn as one */
+    private static boolean isBatchable(int type) {
+        return type == GL11.GL_QUADS || type == GL11.GL_TRIANGLES || type == GL11.GL_LINES
+            || type == GL11.GL_POINTS;
+    }
+
+    /** Whether geometry of a type can be split after a number of vertices */
+    private static boolean isSplittable(int count, int type) {
+        switch (type) {
+            case GL11.GL_QUADS:
+                return count % 4 == 0;
+            case GL11.GL_TRIANGLES:
+                return count % 3 == 0;
+            case GL11.GL_LINES:
+                return count % 2 == 0;
+            case GL11.GL_POINTS:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public void glNewList(int id, int option) {
+        applyBuffer();
+        listMode++;
+        super.glNewList(id, option);
+    }
+
+    @Override
+    public void glEndList() {
+        listMode--;
+        super.glEndList();
+    }
+
+    // Everything else that changes how geometry is drawn, or reads what's been drawn
+
+    @Override
+    public void enterOrtho(int xsize, int ysize) {
+        applyBuffer();
+        super.enterOrtho(xsize, ysize);
+    }
+
+    @Override
+    public void glBindTexture(int target, int id) {
+        applyBuffer();
+        super.glBindTexture(target, id);
+    }
+
+    @Override
+    public void glBlendFunc(int src, int dest) {
+        applyBuffer();
+        super.glBlendFunc(src, dest);
+    }
+
+    @Override
+    public void glCallList(int id) {
+        applyBuffer();
+        super.glCallList(id);
+    }
+
+    @Override
+    public void glClear(int value) {
+        applyBuffer();
+        super.glClear(value);
+    }
+
+    @Override
+    public void glClipPlane(int plane, DoubleBuffer buffer) {
+        applyBuffer();
+        super.glClipPlane(plane, buffer);
+    }
+
+    @Override
+    public void glColorMask(boolean red, boolean green, boolean blue, boolean alpha) {
+        applyBuffer();
+        super.glColorMask(red, green, blue, alpha);
+    }
+
+    @Override
+    public void glCopyTexImage2D(int target, int level, int internalFormat, int x, int y, int width, int height,
+            int border) {
+        applyBuffer();
+        super.glCopyTexImage2D(target, level, internalFormat, x, y, width, height, border);
+    }
+
+    @Override
+    public void glDeleteTextures(IntBuffer buffer) {
+        applyBuffer();
+        super.glDeleteTextures(buffer);
+    }
+
+    @Override
+    public void glDepthFunc(int func) {
+        applyBuffer();
+        super.glDepthFunc(func);
+    }
+
+    @Override
+    public void glDepthMask(boolean mask) {
+        applyBuffer();
+        super.glDepthMask(mask);
+    }
+
+    @Override
+    public void glDisable(int item) {
+        applyBuffer();
+        super.glDisable(item);
+    }
+
+    @Override
+    public void glEnable(int item) {
+        applyBuffer();
+        super.glEnable(item);
+    }
+
+    @Override
+    public void glGetTexImage(int target, int level, int format, int type, ByteBuffer pixels) {
+        applyBuffer();
+        super.glGetTexImage(target, level, format, type, pixels);
+    }
+
+    @Override
+    public void glLineWidth(float width) {
+        applyBuffer();
+        super.glLineWidth(width);
+    }
+
+    @Override
+    public void glLoadIdentity() {
+        applyBuffer();
+        super.glLoadIdentity();
+    }
+
+    @Override
+    public void glLoadMatrix(FloatBuffer buffer) {
+        applyBuffer();
+        super.glLoadMatrix(buffer);
+    }
+
+    @Override
+    public void glPointSize(float size) {
+        applyBuffer();
+        super.glPointSize(size);
+    }
+
+    @Override
+    public void glPopMatrix() {
+        applyBuffer();
+        super.glPopMatrix();
+    }
+
+    @Override
+    public void glPushMatrix() {
+        applyBuffer();
+        super.glPushMatrix();
+    }
+
+    @Override
+    public void glReadPixels(int x, int y, int width, int height, int format, int type, ByteBuffer pixels) {
+        applyBuffer();
+        super.glReadPixels(x, y, width, height, format, type, pixels);
+    }
+
+    @Override
+    public void glRotatef(float angle, float x, float y, float z) {
+        applyBuffer();
+        super.glRotatef(angle, x, y, z);
+    }
+
+    @Override
+    public void glScalef(float x, float y, float z) {
+        applyBuffer();
+        super.glScalef(x, y, z);
+    }
+
+    @Override
+    public void glScissor(int x, int y, int width, int height) {
+        applyBuffer();
+        super.glScissor(x, y, width, height);
+    }
+
+    @Override
+    public void glTexEnvi(int target, int mode, int value) {
+        applyBuffer();
+        super.glTexEnvi(target, mode, value);
+    }
+
+    @Override
+    public void glTexImage2D(int target, int i, int dstPixelFormat, int width, int height, int j, int srcPixelFormat,
+            int glUnsignedByte, ByteBuffer textureBuffer) {
+        applyBuffer();
+        super.glTexImage2D(target, i, dstPixelFormat, width, height, j, srcPixelFormat, glUnsignedByte, textureBuffer);
+    }
+
+    @Override
+    public void glTexParameteri(int target, int param, int value) {
+        applyBuffer();
+        super.glTexParameteri(target, param, value);
+    }
+
+    @Override
+    public void glTexSubImage2D(int glTexture2d, int i, int pageX, int pageY, int width, int height, int glBgra,
+            int glUnsignedByte, ByteBuffer scratchByteBuffer) {
+        applyBuffer();
+        super.glTexSubImage2D(glTexture2d, i, pageX, pageY, width, height, glBgra, glUnsignedByte, scratchByteBuffer);
+    }
+
+    @Override
+    public void glTranslatef(float x, float y, float z) {
+        applyBuffer();
+        super.glTranslatef(x, y, z);
+    }
+
+    @Override
+    public float[] getCurrentColor() { return color; }
+    /** Batches drawn since the renderer was made */
+    int getFlushCount() { return flushes; }
+}
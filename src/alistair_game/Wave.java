@@ -39,6 +39,39 @@ public class Wave {
     void addInstruction(String enemy, float spawnTime) {
         instructions.add(new SpawnInstruction(enemy, spawnTime));
     }
+
+    /** Returns a copy of the wave with all of its remaining spawns. */
+    Wave copy() {
+        Wave w = new Wave();
+        for (SpawnInstruction si : instructions) {
+            w.addInstruction(si.enemy, si.spawnTime);
+        }
+        return w;
+    }
+
+    /** Returns a copy of the wave without the spawns that were due before the given time. */
+    Wave copyFrom(long timer) {
+        Wave w = new Wave();
+        for (SpawnInstruction si : instructions) {
+            if (si.spawnTime > timer) {
+                w.addInstruction(si.enemy, si.spawnTime);
+            }
+        }
+        return w;
+    }
     
+    /** Number of spawns due by a given time that haven't happened yet (one happens per tick) */
+    int countDue(long timer) {
+        int due = 0;
+        for (SpawnInstruction si : instructions) {
+            if (timer >= si.spawnTime) {
+                due++;
+            }
+        }
+        return due;
+    }
+
     boolean isFinished() { return instructions.isEmpty(); }
+    /** Number of spawns that haven't happened yet */
+    int getSpawnsLeft() { return instructions.size(); }
 }
\ No newline at end of file
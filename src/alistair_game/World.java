@@ -1,6 +1,7 @@
 package alistair_game;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -8,10 +9,7 @@ import java.util.List;
 
 import org.newdawn.slick.Color;
 import org.newdawn.slick.Graphics;
-import org.newdawn.slick.Image;
 import org.newdawn.slick.Input;
-import org.newdawn.slick.SlickException;
-import org.newdawn.slick.geom.Vector2f;
 
 /**
  * Handles all the game logic for a level. Created by App.
@@ -19,127 +17,151 @@ import org.newdawn.slick.geom.Vector2f;
 class World {
     private int w, h, tSize, gridW, gridH, sidebarW;
     private float startX, startY, enemySpeed = 1f;
-    private int health = 100, waveNum = 1;
-    private long timer = 0;
+    private int health = 100, waveNum = 1, nextId = 0, gameSpeed = 1;
+    /** Time since the wave started, and since the level started (ms) */
+    private long timer = 0, clock = 0, ticks = 0;
+    /** Aiming stats for the current wave */
+    private int shotsFired = 0, shotsHit = 0, peakProjectiles = 0;
+    /** Ids of the towers that fired in the last tick */
+    private int[] shooters = new int[16];
+    private int shooterCount = 0;
+    /** Things that have happened since they were last collected (TickRing event flags) */
+    private int eventFlags = 0;
+    /** Step phases, and how long each took last step (ns) if they're being timed */
+    static final int TICK_PHASE = 0, ENEMY_PHASE = 1, PROJECTILE_PHASE = 2;
+    private long[] phaseNanos = new long[3];
+    private boolean timePhases = false;
     private Tile alistair;
     private Tower myTower; // Tower currently being placed
     
-    /** 2D array of tiles for each grid cell */
-    private Tile[][] tiles;
+    /** Tile type of each grid cell */
+    private TileMap map;
+    /** Image for each tile type */
+    private SpriteDef[] tileDefs;
+    /** Which part of the map is on screen */
+    private Camera camera;
     /** List of waves, each with set of spawn instructions */
     private List<Wave> waves;
-    /** Enemy path. 3D array for x-coord, y-coord and direction for enemy to move move */
-    private int[][][] path;
+    /** Enemy path, with the direction for enemies to move in from each cell */
+    private PathTrace path;
     /** List of enemies in crder of creation (oldest first) */
     private List<Enemy> enemies = new LinkedList<>();
     /** List of all projectiles */
     private List<Projectile> projectiles = new LinkedList<>();
     /** List of all towers */
     private List<Tower> towers = new LinkedList<>();
+    /** Which towers cover which path cells, and where enemies are on the path */
+    private CoverageMap coverage;
+    /** Tower reloads and enemy status effects, by when they run out */
+    private TimingWheel timers = new TimingWheel();
+    /** Towers that have reloaded and have enemies near them, in the order they were placed.
+     * Reloading towers wait on their timer and idle ones wait for an enemy to walk into range */
+    private Tower[] ready = new Tower[16];
+    private int readyCount = 0;
+    /** Enemies hit since damage was last applied. Each is listed once, its total is on the enemy */
+    private Enemy[] damaged = new Enemy[16];
+    private int damagedCount = 0;
+    /** Scratch lists for area and chain damage */
+    private List<Enemy> nearby = new ArrayList<>(), chained = new ArrayList<>();
     /** List of Sidebar icons */
     private List<Sprite> sidebarIcons = new ArrayList<Sprite>();
+    /** Tower type for each sidebar icon */
+    static final String[] TOWER_TYPES = {"alistair", "homing", "splash", "chain"};
 
-    private static Image[] tileset;
-    private static String[] tile_names;
-    private static final int ALISTAIR_INDEX = 2;
-    static {
-        // Initialise tileset and tile names
-        // Meaning of integers in level file
-        tile_names = new String[3]; // TODO: add all this to a file (?)
-        tile_names[0] = "wall";
-        tile_names[1] = "path";
-        tile_names[2] = "alistair";
-
-        // Assign ints to images
-        tileset = new Image[tile_names.length];
-        try {
-            for (int i = 0; i < tileset.length; i++) {
-                tileset[i] = new Image("assets\\sprites\\tiles\\" + tile_names[i] + ".png");
-            }
-        } catch (SlickException e) {
-            e.printStackTrace();
-        }
-    }
+    /** Meaning of integers in level file */
+    private static final String[] TILE_NAMES = {"wall", "path", "alistair"}; // TODO: add all this to a file (?)
+    /** How fast the arrow keys scroll the map (pixels per ms) */
+    private static final float SCROLL_SPEED = 0.6f;
+    /** How often burning enemies take damage (ms) */
+    private static final int BURN_INTERVAL = 500;
+
+    /** Where images come from, and where sounds and progress get reported to */
+    private Assets assets;
+    private GameEvents events;
+    /** Decides which optional drawing to skip when frames are slow */
+    private QualityController quality = new QualityController(Float.MAX_VALUE);
+    /** HUD text, and the values it shows. Only updated as often as the quality level allows */
+    private HudText waveText = new HudText("Wave: ", ""), speedText = new HudText("Speed: ", "x"),
+        healthText = new HudText("", "");
+    private int hudWave, hudSpeed, hudHealth;
+    private long lastHudRefresh = -1;
+    /** Draws the sidebar icons in one go */
+    private SpriteBatch batch = new SpriteBatch();
+    /** Range circles, shown for the tower under the mouse or for every tower */
+    private RangeOverlays rangeOverlays = new RangeOverlays();
+    private boolean showAllRanges = false;
+    /** Mouse position on the map, if it's over the map rather than the sidebar */
+    private int mouseX, mouseY;
+    private boolean mouseOnMap = false;
+    /** Level editor, while the layout is being edited (the game is paused until it's done) */
+    private LevelEditor editor = null;
+    /** Overlay colours for the editor: path, forks, where the path goes wrong, path tiles it misses, spawn */
+    private static final Color PATH_COL = new Color(0, 255, 0, 60), FORK_COL = new Color(255, 255, 0, 90),
+        PROBLEM_COL = new Color(255, 0, 0, 140), STRAY_COL = new Color(255, 0, 255, 70),
+        SPAWN_COL = new Color(0, 128, 255, 140);
+    private static final String[] EDITOR_HELP = {"0 wall  1 path", "2 Alistair", "S spawn", "Right click: wall",
+        "Ctrl+S save", "E play  Esc undo"};
 
     /**
      * Create the world.
-     * @param w Map width
-     * @param h Map height
+     * @param w Window width
+     * @param h Window height
      * @param tSize Side length of each tile in pixels
      * @param startX Enemy origin (x-axis)
      * @param startY Enemy origin (y-axis)
-     * @param level Map layout
+     * @param level Map layout. Any size, the window scrolls around it
      * @param waves Data on waves and enemy spawn timing
+     * @param assets Source of sprite images (headless for no window)
+     * @param events Receives sounds and game progress
      */
-    World(int w, int h, int tSize, int sidebarW, float startX, float startY, int[][] level, ArrayList<Wave> waves) {
+    World(int w, int h, int tSize, int sidebarW, float startX, float startY, TileMap level, ArrayList<Wave> waves,
+            Assets assets, GameEvents events) {
         this.w = w;
         this.h = h;
         this.tSize = tSize;
-        this.gridW = (w-sidebarW)/tSize;
-        this.gridH = h/tSize;
+        this.map = level;
+        this.gridW = level.getWidth();
+        this.gridH = level.getHeight();
         this.startX = startX;
         this.startY = startY;
         this.waves = waves;
         this.sidebarW = sidebarW;
+        this.assets = assets;
+        this.events = events;
 
-        // Initialise tile sprites from level + tileset
-        tiles = new Tile[gridW][gridH];
-        for (int x = 0; x < level.length; x++) {
-            for (int y = 0; y < level[x].length; y++) {
-                int i = level[x][y];
-                tiles[x][y] = new Tile((x + 0.5f) * tSize, (y + 0.5f) * tSize, tileset[i], tile_names[i]);
-                if (i == ALISTAIR_INDEX) {
-                    alistair = tiles[x][y];
-                }
-            }
+        // One image per tile type, tiles themselves are just bytes in the map
+        tileDefs = new SpriteDef[TILE_NAMES.length];
+        for (int i = 0; i < TILE_NAMES.length; i++) {
+            tileDefs[i] = assets.def("tiles/" + TILE_NAMES[i] + ".png");
         }
 
+        coverage = new CoverageMap(map, tSize);
+
         // Traverse the path and store direction values in a grid
-        path = new int[gridW][gridH][2];
-        int x = toGrid(startX), y = toGrid(startY);
-        int i = defaultDir(x);
-        int j = defaultDir(y);
-        while (x < 0 || x >= gridW || y < 0 || y >= gridH) {
-            x += i;
-            y += j;
-        }
-        while (toPos(x) != alistair.getX() || toPos(y) != alistair.getY()) {
-            // Move along the path
-            // Check if we've hit a wall yet
-            if (x + i < 0 || x + i >= gridW || y + j < 0 || y + j >= gridH || tiles[x + i][y + j].isWall()) {
-                // OK, try turning left (anti-clockwise)
-                int old_i = i;
-                i = j;
-                j = -old_i;
-
-                // Check again
-                if (tiles[x + i][y + j].isWall()) {
-                    // Failed, turn right then (need to do a 180)
-                    i = -i;
-                    j = -j;
-                }
-            }
-            // Update x, y and our direction
-            path[x][y][0] = i;
-            path[x][y][1] = j;
-            x += i;
-            y += j;
+        path = PathTrace.trace(map, toGrid(startX), toGrid(startY));
+        if (path == null) {
+            throw new IllegalArgumentException("Level's path doesn't lead to Alistair");
         }
+        alistair = new Tile(toPos(path.getEndX()), toPos(path.getEndY()), alistairDef(),
+                TILE_NAMES[PathTrace.ALISTAIR]);
+
+        camera = new Camera(w - sidebarW, h, gridW * tSize, gridH * tSize);
+        camera.centreOn(alistair.getX(), alistair.getY());
         
         // Create sidebar
         // TODO: update when we add more towers
-        String path = "assets\\sprites\\";
         float xPos = w - sidebarW/2, yPos = 100;
-        try {
-            Image im = new Image(path + "alistair32.png");
-            sidebarIcons.add(new Sprite(xPos, yPos, im));
+        SpriteDef im = assets.def("alistair32.png");
+        for (String type : TOWER_TYPES) {
+            Sprite icon = new Sprite(xPos, yPos, im);
+            icon.setColor(new Tower(0, 0, im, 0, type).getBaseColor());
+            sidebarIcons.add(icon);
             yPos += 50;
-        } catch (SlickException e) {
-            e.printStackTrace();
         }
         
         // Intro sound
-        AudioController.play("intro");
+        events.onSound("intro");
+        JfrEvents.waveStart(waveNum);
     }
 
     /**
@@ -148,11 +170,118 @@ class World {
      * @return A string for an action to take. (Empty string by default).
      */
     String processInput(Input input) {
+        if (editor != null) {
+            return processEditorInput(input);
+        }
+        if (input.isKeyPressed(Input.KEY_E)) {
+            startEditing();
+            return "";
+        }
         if (input.isKeyPressed(Input.KEY_ESCAPE)) {
             return "Exit";
         }
+        if (input.isKeyPressed(Input.KEY_F)) {
+            return "Speed";
+        }
+        if (input.isKeyPressed(Input.KEY_R)) {
+            showAllRanges = !showAllRanges;
+        }
+        if (input.isKeyPressed(Input.KEY_F3)) {
+            return "DrawStats";
+        }
+        return "";
+    }
+
+    /**
+     * Editor keys: 0-2 pick a tile to paint (see TILE_NAMES), S the spawn point, Ctrl+S saves,
+     * E goes back to the game with the edits and Esc throws them away.
+     * @return "Save" to save the level, otherwise an empty string
+     */
+    private String processEditorInput(Input input) {
+        boolean ctrl = input.isKeyDown(Input.KEY_LCONTROL) || input.isKeyDown(Input.KEY_RCONTROL);
+        if (input.isKeyPressed(Input.KEY_S)) {
+            if (ctrl) {
+                return "Save";
+            }
+            editor.setBrush(LevelEditor.SPAWN);
+        }
+        int[] keys = {Input.KEY_0, Input.KEY_1, Input.KEY_2};
+        for (int type = 0; type < keys.length; type++) {
+            if (input.isKeyPressed(keys[type])) {
+                editor.setBrush(type);
+            }
+        }
+        if (input.isKeyPressed(Input.KEY_E)) {
+            finishEditing();
+        } else if (input.isKeyPressed(Input.KEY_ESCAPE)) {
+            editor = null;
+            System.out.println("GAME STATE: Level edits thrown away");
+        }
         return "";
     }
+
+    /** Pauses the game and opens the level editor on the current layout. */
+    void startEditing() {
+        myTower = null;
+        editor = new LevelEditor(map, toGrid(startX), toGrid(startY));
+        System.out.println("GAME STATE: Editing level");
+    }
+
+    /**
+     * Goes back to the game with the edited layout, like a reload of the level file.
+     * The editor stays open if the path doesn't reach Alistair.
+     * @return Whether the editor was closed
+     */
+    boolean finishEditing() {
+        LivePath live = editor.getPath();
+        PathTrace edited = live.toPath();
+        if (edited == null) {
+            System.out.println("GAME STATE: Fix the level path first (" + live.getProblem() + ")");
+            return false;
+        }
+        reloadLevel(editor.getMap(), toPos(live.getStartX()), toPos(live.getStartY()), edited);
+        editor = null;
+        System.out.println("GAME STATE: Finished editing level");
+        return true;
+    }
+
+    /**
+     * Paints the cell under the mouse in the level editor.
+     * @param screenX Mouse position on screen (x-axis)
+     * @param screenY Mouse position on screen (y-axis)
+     * @param paint Paint with the current brush (left button held)
+     * @param erase Paint wall (right button held)
+     */
+    void processEditor(int screenX, int screenY, boolean paint, boolean erase) {
+        mouseOnMap = camera.isOnView(screenX, screenY);
+        mouseX = screenX + (int) camera.getX();
+        mouseY = screenY + (int) camera.getY();
+        if (mouseOnMap && (paint || erase)) {
+            editor.paint(mouseX / tSize, mouseY / tSize, erase);
+        }
+    }
+
+    /**
+     * Scrolls the map with the arrow keys.
+     * @param input Obtained from App's GameContainer
+     * @param delta ms since the last update
+     */
+    void scrollCamera(Input input, int delta) {
+        float dist = SCROLL_SPEED * delta, dx = 0, dy = 0;
+        if (input.isKeyDown(Input.KEY_LEFT)) {
+            dx -= dist;
+        }
+        if (input.isKeyDown(Input.KEY_RIGHT)) {
+            dx += dist;
+        }
+        if (input.isKeyDown(Input.KEY_UP)) {
+            dy -= dist;
+        }
+        if (input.isKeyDown(Input.KEY_DOWN)) {
+            dy += dist;
+        }
+        camera.move(dx, dy);
+    }
     
     /**
      * Keeps track of the time (in ms) from the start of the wave. Spawns enemies
@@ -161,6 +290,11 @@ class World {
      */
     void tick(int delta) {
         timer += delta;
+        clock += delta;
+
+        // Reloads finishing and effects wearing off
+        timers.advance(clock);
+        applyDamage();
 
         // Enemy spawning (based on the current wave)
         if (waveNum-1 < waves.size()) {
@@ -176,27 +310,149 @@ class World {
             }
         }
 
-        // Tower shots
-        for (Tower t : towers) {
-            if (t.countDown(delta)) {
-                t.shoot(this);
+        // Tower shots. Only ready towers are looked at
+        shooterCount = 0;
+        int kept = 0;
+        for (int i = 0; i < readyCount; i++) {
+            Tower t = ready[i];
+            if (t.shoot(this)) {
+                if (shooterCount == shooters.length) {
+                    shooters = Arrays.copyOf(shooters, shooters.length * 2);
+                }
+                shooters[shooterCount++] = t.getId();
+                t.setReady(false);
+                timers.schedule(t.getReloadTimer(), clock + t.getFireRate());
+            } else if (t.hasEnemiesNearby()) {
+                // Enemies in cells it only partly covers, they may walk into range without changing cell
+                ready[kept++] = t;
+            } else {
+                // Idle until an enemy walks into one of its cells
+                t.setReady(false);
+            }
+        }
+        Arrays.fill(ready, kept, readyCount, null);
+        readyCount = kept;
+    }
+
+    /** Adds a tower to the ready list, keeping it in placement (id) order. */
+    private void readyTower(Tower t) {
+        if (t.isReady()) {
+            return;
+        }
+        int lo = 0, hi = readyCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ready[mid].getId() < t.getId()) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
             }
         }
+        if (readyCount == ready.length) {
+            ready = Arrays.copyOf(ready, ready.length * 2);
+        }
+        System.arraycopy(ready, lo, ready, lo + 1, readyCount - lo);
+        ready[lo] = t;
+        readyCount++;
+        t.setReady(true);
+    }
+
+    /** Wakes the idle towers covering a cell an enemy just walked into. */
+    private void wakeTowers(int cell) {
+        List<Tower> covering = coverage.getCoveringTowers(cell);
+        if (covering == null) {
+            return;
+        }
+        for (Tower t : covering) {
+            if (!t.getReloadTimer().isScheduled()) {
+                readyTower(t);
+            }
+        }
+    }
+
+    /** Starts tracking a newly placed tower. It's ready to fire straight away. */
+    private void addTower(Tower t) {
+        eventFlags |= TickRing.TOWER_PLACED;
+        t.setReloadTimer(new TimingWheel.Timer(() -> readyTower(t)));
+        towers.add(t);
+        coverage.addTower(t);
+        readyTower(t);
+    }
+
+    /** Stops tracking a tower that's been taken out of the tower list. */
+    private void removeTower(Tower t) {
+        coverage.removeTower(t);
+        timers.cancel(t.getReloadTimer());
+        if (t.isReady()) {
+            int i = Arrays.asList(ready).subList(0, readyCount).indexOf(t);
+            System.arraycopy(ready, i + 1, ready, i, readyCount - i - 1);
+            ready[--readyCount] = null;
+            t.setReady(false);
+        }
     }
 
     /** Call every time a new wave starts */
     void newWave() {
+        events.onWaveOver(waveNum, shotsFired, shotsHit, peakProjectiles);
+        JfrEvents.waveEnd(waveNum, shotsFired, shotsHit, peakProjectiles);
+        eventFlags |= TickRing.WAVE_END | TickRing.WAVE_START;
+        shotsFired = shotsHit = peakProjectiles = 0;
         waveNum++;
+        JfrEvents.waveStart(waveNum);
         timer = 0;
+        // Every tower starts the wave loaded
         for (Tower t : towers) {
-            t.waveReset();
+            timers.cancel(t.getReloadTimer());
+            readyTower(t);
+        }
+    }
+
+    /**
+     * Runs one simulation step: spawning, shooting and movement.
+     * @param delta ms to simulate
+     */
+    void step(int delta) {
+        ticks++;
+        long start = timePhases ? System.nanoTime() : 0;
+        JfrEvents.UpdatePhase phase = JfrEvents.beginUpdate("tick");
+        tick(delta);
+        start = endPhase(TICK_PHASE, phase, start);
+        phase = JfrEvents.beginUpdate("enemy move");
+        moveEnemies();
+        start = endPhase(ENEMY_PHASE, phase, start);
+        phase = JfrEvents.beginUpdate("projectile move");
+        moveProjectiles();
+        endPhase(PROJECTILE_PHASE, phase, start);
+    }
+
+    /** Ends a step phase's JFR event and times it if phases are being timed. Returns when it ended */
+    private long endPhase(int index, JfrEvents.UpdatePhase phase, long start) {
+        JfrEvents.end(phase);
+        if (!timePhases) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        phaseNanos[index] = now - start;
+        return now;
+    }
+
+    /** Marks the start of a tick, so moving sprites can be drawn in between ticks */
+    void savePositions() {
+        for (Enemy e : enemies) {
+            e.savePosition();
+        }
+        for (Projectile p : projectiles) {
+            p.savePosition();
         }
     }
 
     /** Create a new enemy at the given position */
     void spawnEnemy(float x, float y, String name) {
-        Vector2f v = new Vector2f(defaultDir(x), defaultDir(y)).scale(enemySpeed);
-        enemies.add(new Enemy(x, y, v, name));
+        Enemy e = new Enemy(x, y, defaultDir(x, gridW * tSize) * enemySpeed, defaultDir(y, gridH * tSize) * enemySpeed,
+                name, assets);
+        e.setId(nextId++);
+        enemies.add(e);
+        enterCell(e);
     }
 
     /** Update enemy positons */
@@ -206,43 +462,226 @@ class World {
             Enemy e = itr.next();
             // Hitting alistair
             e.advance(enemySpeed, this);
+            enterCell(e);
             if (e.checkCollision(alistair)) {
                 takeDamage(e.getDamage());
                 itr.remove();
+                despawn(e);
             }
         }
     }
 
+    /** Moves an enemy to the cell it's now in, waking any towers there */
+    private void enterCell(Enemy e) {
+        int cell = coverage.updateEnemy(e);
+        if (cell >= 0) {
+            wakeTowers(cell);
+        }
+    }
+
+    /** Clean up after an enemy that has been taken out of the enemy list */
+    private void despawn(Enemy e) {
+        coverage.removeEnemy(e);
+        cancel(e.getStunTimer());
+        cancel(e.getBurnTimer());
+        e.setRemoved();
+    }
+
+    private void cancel(TimingWheel.Timer t) {
+        if (t != null) {
+            timers.cancel(t);
+        }
+    }
+
+    /** Stops an enemy in its tracks for a while (or longer, if it's already stunned for longer).
+     * Enemies this tick's hits have already killed are left alone. */
+    void stunEnemy(Enemy e, int ms) {
+        if (e.isDoomed()) {
+            return;
+        }
+        if (e.getStunTimer() == null) {
+            e.setStunTimer(new TimingWheel.Timer(() -> e.setStunned(false)));
+        }
+        e.setStunned(true);
+        timers.schedule(e.getStunTimer(), until(e.getStunTimer(), ms));
+    }
+
+    /**
+     * Sets an enemy on fire. It takes damage every BURN_INTERVAL while it burns.
+     * If it's already burning, the higher damage and the later end time are kept.
+     * Enemies this tick's hits have already killed are left alone.
+     * @param damage Damage per BURN_INTERVAL
+     * @param ms How long it burns for
+     */
+    void burnEnemy(Enemy e, int damage, int ms) {
+        if (e.isDoomed()) {
+            return;
+        }
+        if (e.getBurnTimer() == null) {
+            e.setBurnTimer(new TimingWheel.Timer(() -> burnTick(e)));
+        }
+        boolean burning = e.getBurnTimer().isScheduled();
+        e.setBurn(burning ? Math.max(damage, e.getBurnDamage()) : damage,
+                burning ? Math.max(clock + ms, e.getBurnUntil()) : clock + ms);
+        if (!burning) {
+            timers.schedule(e.getBurnTimer(), clock + BURN_INTERVAL);
+        }
+    }
+
+    private void burnTick(Enemy e) {
+        damage(e, e.getBurnDamage());
+        if (!e.isDoomed() && timers.getNow() + BURN_INTERVAL <= e.getBurnUntil()) {
+            timers.schedule(e.getBurnTimer(), timers.getNow() + BURN_INTERVAL);
+        }
+    }
+
+    /** End time for an effect lasting ms from now, or when the current one ends if that's later */
+    private long until(TimingWheel.Timer current, int ms) {
+        return current.isScheduled() ? Math.max(clock + ms, current.getDue()) : clock + ms;
+    }
+
     /** Update projectile positions */
     void moveProjectiles() {
         Iterator<Projectile> itr = projectiles.iterator();
         while (itr.hasNext()) {
             Projectile p = itr.next();
+            float fromX = p.getX(), fromY = p.getY();
             p.advance();
-            if (p.isOffScreen(w, h)) {
+
+            // Hitting enemies. Sweep along the move so fast projectiles can't skip past one.
+            // Enemies that this tick's hits have already killed don't count
+            Enemy hit = null;
+            float hitTime = 2;
+            for (Enemy e : enemies) {
+                if (e.isDoomed()) {
+                    continue;
+                }
+                float t = p.checkSweptCollision(fromX, fromY, e);
+                if (t >= 0 && t < hitTime) {
+                    hit = e;
+                    hitTime = t;
+                }
+            }
+            if (hit != null) {
+                p.hit(hit, this);
+                itr.remove();
+                shotsHit++;
+            } else if (p.isOffScreen(gridW * tSize, gridH * tSize)) {
                 itr.remove();
             }
+        }
+        applyDamage();
+    }
 
-            // Hitting enemies
-            Iterator<Enemy> eItr = enemies.iterator();
-            while (eItr.hasNext()) {
-                Enemy e = eItr.next();
-                if (p.checkCollision(e)) {
-                    e.takeDamage(p.getDamage(), eItr);
+    /** Queues damage for an enemy. It's applied, and the dead removed, by applyDamage. */
+    void damage(Enemy e, int amount) {
+        if (e.getPendingDamage() == 0) {
+            if (damagedCount == damaged.length) {
+                damaged = Arrays.copyOf(damaged, damaged.length * 2);
+            }
+            damaged[damagedCount++] = e;
+        }
+        e.setPendingDamage(e.getPendingDamage() + amount);
+    }
+
+    /** Damages every enemy whose centre is within a radius of a point. */
+    void damageArea(float x, float y, float radius, int amount) {
+        nearby.clear();
+        coverage.findEnemies(x, y, radius, nearby);
+        for (Enemy e : nearby) {
+            damage(e, amount);
+        }
+    }
+
+    /**
+     * Damages an enemy, then arcs on to the nearest enemy that hasn't been hit by this chain
+     * (and isn't already dead this tick), and so on.
+     * @param jumps How many enemies to arc on to after the first
+     * @param range Furthest the chain can arc between two enemies
+     */
+    void damageChain(Enemy first, int jumps, float range, int amount) {
+        chained.clear();
+        Enemy e = first;
+        damage(e, amount);
+        chained.add(e);
+        for (int i = 0; i < jumps; i++) {
+            nearby.clear();
+            coverage.findEnemies(e.getX(), e.getY(), range, nearby);
+            Enemy next = null;
+            float nextDist = Float.MAX_VALUE;
+            for (Enemy n : nearby) {
+                float dist = n.distanceTo(e);
+                if (dist < nextDist && !n.isDoomed() && !chained.contains(n)) {
+                    next = n;
+                    nextDist = dist;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            damage(next, amount);
+            chained.add(next);
+            e = next;
+        }
+    }
+
+    /** Applies all the damage queued since last time, then removes the dead in one pass. */
+    private void applyDamage() {
+        if (damagedCount == 0) {
+            return;
+        }
+        boolean anyDead = false;
+        for (int i = 0; i < damagedCount; i++) {
+            Enemy e = damaged[i];
+            e.takeDamage(e.getPendingDamage());
+            e.setPendingDamage(0);
+            anyDead |= e.isDead();
+            damaged[i] = null;
+        }
+        damagedCount = 0;
+        if (!anyDead) {
+            return;
+        }
+        Iterator<Enemy> itr = enemies.iterator();
+        while (itr.hasNext()) {
+            Enemy e = itr.next();
+            if (e.isDead()) {
+                itr.remove();
+                despawn(e);
+            }
+        }
+    }
+
+    /**
+     * Handles selecting / placing / selling towers.
+     * @param screenX Mouse position on screen (x-axis)
+     * @param screenY Mouse position on screen (y-axis)
+     */
+    void processTowers(int screenX, int screenY, boolean clicked, boolean rightClicked) {
+        // Towers live on the map, the sidebar stays put on screen
+        mouseOnMap = camera.isOnView(screenX, screenY);
+        mouseX = screenX + (int) camera.getX();
+        mouseY = screenY + (int) camera.getY();
+
+        // Right clicking a placed tower sells it
+        if (!isPlacingTower() && rightClicked && mouseOnMap) {
+            Iterator<Tower> itr = towers.iterator();
+            while (itr.hasNext()) {
+                Tower t = itr.next();
+                if (t.isMouseOver(mouseX, mouseY)) {
                     itr.remove();
+                    removeTower(t);
+                    eventFlags |= TickRing.TOWER_SOLD;
                     break;
                 }
             }
         }
-    }
 
-    /** Handles selecting / placing towers */
-    void processTowers(int mouseX, int mouseY, boolean clicked) {
         // Process selecting towers
         if (!isPlacingTower() && clicked) {
             for (Sprite s : sidebarIcons) {
-                if (s.isMouseOver(mouseX, mouseY)) {
-                    newTower(mouseX, mouseY);
+                if (s.isMouseOver(screenX, screenY)) {
+                    newTower(mouseX, mouseY, TOWER_TYPES[sidebarIcons.indexOf(s)]);
                 }
             }
         }
@@ -253,15 +692,17 @@ class World {
             myTower.teleport((float) mouseX, (float) mouseY);
 
             // Red if out of game bounds
-            if (!inGridBounds(mouseX/tSize, mouseY/tSize)) {
+            if (!mouseOnMap || !inGridBounds(mouseX/tSize, mouseY/tSize)) {
                 myTower.setColor(Color.red);
             }
 
-            // Set the tower to be red if it's touching a non-wall tile or tower
+            // Set the tower to be red if it's touching a non-wall tile or tower.
+            // Only the cells under the tower need checking
+            int halfW = myTower.getDef().getBoxHalfWidth(), halfH = myTower.getDef().getBoxHalfHeight();
             outer:
-            for (Tile[] column : tiles) {
-                for (Tile tile : column) {
-                    if (!tile.isWall() && tile.checkCollision(myTower)) {
+            for (int x = (mouseX - halfW) / tSize; x <= (mouseX + halfW) / tSize; x++) {
+                for (int y = (mouseY - halfH) / tSize; y <= (mouseY + halfH) / tSize; y++) {
+                    if (inGridBounds(x, y) && !map.isWall(x, y)) {
                         myTower.setColor(Color.red);
                         break outer;
                     }
@@ -278,19 +719,37 @@ class World {
             // If the user clicked and it's not colliding with anything, place it
             if (clicked && myTower.getColor() == Color.white) {
                 myTower.place(toPos(toGrid(mouseX)), toPos(toGrid(mouseY)));
-                towers.add(myTower);
+                myTower.setId(nextId++);
+                addTower(myTower);
                 myTower = null;
             }
         }
     }
 
     /** Create a new tower at the given position */
-    void newTower(float xpos, float ypos) {
-        try {
-            myTower = new Tower(xpos, ypos, new Image("assets\\sprites\\alistair32.png"), 3000);
-        } catch (SlickException e) {
-            e.printStackTrace();
+    void newTower(float xpos, float ypos, String type) {
+        myTower = new Tower(xpos, ypos, assets.def("alistair32.png"), 3000, type);
+    }
+
+    /**
+     * Places a tower straight onto a grid cell, without going through the mouse.
+     * Used for headless matches.
+     * @return Whether the tower could be placed there
+     */
+    boolean placeTower(int x, int y, String type) {
+        if (!inGridBounds(x, y) || !map.isWall(x, y)) {
+            return false;
         }
+        for (Tower t : towers) {
+            if (toGrid(t.getX()) == x && toGrid(t.getY()) == y) {
+                return false;
+            }
+        }
+        Tower t = new Tower(toPos(x), toPos(y), assets.def("alistair32.png"), 3000, type);
+        t.place(toPos(x), toPos(y));
+        t.setId(nextId++);
+        addTower(t);
+        return true;
     }
 
     /** Draw game interface */
@@ -299,61 +758,255 @@ class World {
         g.setColor(Color.darkGray);
         g.fillRect(w-sidebarW, 0, sidebarW, h);
         g.setColor(Color.white);
+        if (editor != null) {
+            drawEditorGUI(g);
+            return;
+        }
         for (Sprite s : sidebarIcons) {
-            s.drawSelf();
+            s.drawSelf(batch);
         }
+        batch.end();
         
-        // Tower being placed
-        if (myTower != null) {
-            myTower.drawSelf();
-            myTower.drawRange(g);
+        long now = System.nanoTime() / 1000000;
+        if (lastHudRefresh < 0 || now - lastHudRefresh >= quality.getHudInterval()) {
+            hudWave = waveNum;
+            hudSpeed = gameSpeed;
+            hudHealth = health;
+            lastHudRefresh = now;
         }
-        
+
         // Wave number
-        Util.writeCentered(g, "Wave: " + waveNum,w-(sidebarW/2), 20);
+        waveText.drawCentered(g, hudWave, w-(sidebarW/2), 20);
+        speedText.drawCentered(g, hudSpeed, w-(sidebarW/2), h-30);
         
         // Display Alistair's health
-        Util.writeCentered(g, Integer.toString(health), alistair.getX(), alistair.getY());
+        if (alistair.isVisible(camera)) {
+            healthText.drawCentered(g, hudHealth, alistair.getX() - (int) camera.getX(),
+                    alistair.getY() - (int) camera.getY());
+        }
     }
 
-    void renderTiles() {
-        for (Tile[] column : tiles) {
-            for (Tile t : column) {
-                t.drawSelf();
-            }
+    /** Sidebar for the level editor: the brush, the state of the path and the keys */
+    private void drawEditorGUI(Graphics g) {
+        LivePath live = editor.getPath();
+        int x = w - sidebarW + 8;
+        g.drawString("EDITING", x, 10);
+        g.drawString("Brush: " + editor.getBrushName(), x, 40);
+        g.setColor(live.getProblem() == null ? Color.green : Color.red);
+        g.drawString(live.getProblem() == null ? "Path OK" : live.getProblem(), x, 70);
+        g.setColor(live.getForkCount() > 0 ? Color.yellow : Color.white);
+        g.drawString("Forks: " + live.getForkCount(), x, 90);
+        g.setColor(Color.lightGray);
+        for (int i = 0; i < EDITOR_HELP.length; i++) {
+            g.drawString(EDITOR_HELP[i], x, h - 20 * (EDITOR_HELP.length - i) - 10);
         }
+        g.setColor(Color.white);
     }
 
-    void renderEnemies() {
+    /**
+     * Moves drawing onto the map, so sprites can be drawn at their map positions.
+     * Draw the map with the render methods, then call endMap before drawGUI.
+     */
+    void beginMap(Graphics g) {
+        g.pushTransform();
+        g.translate(-(int) camera.getX(), -(int) camera.getY());
+    }
+
+    /** Goes back to drawing in screen positions. */
+    void endMap(Graphics g) {
+        g.popTransform();
+    }
+
+    /**
+     * Copies what's on screen of the map into a DrawList, to be drawn later: the tiles in
+     * view (tiles off screen aren't even looked up), enemies, towers and projectiles.
+     * @param alpha Fraction of the next tick that has passed, for interpolation
+     */
+    void capture(DrawList list, float alpha) {
+        list.begin(alpha, camera);
+        int minX = Math.max(0, (int) camera.getX() / tSize),
+            maxX = Math.min(gridW - 1, (int) (camera.getX() + camera.getViewWidth() - 1) / tSize),
+            minY = Math.max(0, (int) camera.getY() / tSize),
+            maxY = Math.min(gridH - 1, (int) (camera.getY() + camera.getViewHeight() - 1) / tSize);
+        list.addTiles(editor != null ? editor.getMap() : map, minX, minY, maxX, maxY, tSize, tileDefs);
         for (Enemy e : enemies) {
-            e.drawSelf();
+            list.add(DrawList.ENEMIES, e, e.getPrevX(), e.getPrevY());
+        }
+        for (Tower t : towers) {
+            list.add(DrawList.TOWERS, t);
+        }
+        // Tower being placed
+        if (myTower != null) {
+            list.add(DrawList.TOWERS, myTower);
         }
+        if (quality.showProjectileSprites()) {
+            for (Projectile p : projectiles) {
+                list.add(DrawList.PROJECTILES, p, p.getPrevX(), p.getPrevY());
+            }
+        }
+    }
+
+    /**
+     * Shades the level editor's path over the tiles in view: forks, where it goes wrong,
+     * path tiles it never reaches, and the spawn point. Does nothing when not editing.
+     */
+    void renderEditor(Graphics g) {
+        if (editor == null) {
+            return;
+        }
+        LivePath live = editor.getPath();
+        TileMap shown = editor.getMap();
+        int minX = Math.max(0, (int) camera.getX() / tSize),
+            maxX = Math.min(gridW - 1, (int) (camera.getX() + camera.getViewWidth() - 1) / tSize),
+            minY = Math.max(0, (int) camera.getY() / tSize),
+            maxY = Math.min(gridH - 1, (int) (camera.getY() + camera.getViewHeight() - 1) / tSize);
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                if (live.isFork(x, y)) {
+                    g.setColor(FORK_COL);
+                } else if (live.isOnPath(x, y)) {
+                    g.setColor(PATH_COL);
+                } else if (shown.get(x, y) == PathTrace.WALL || (x == live.getStopX() && y == live.getStopY())) {
+                    continue;
+                } else {
+                    g.setColor(STRAY_COL);
+                }
+                g.fillRect(x * tSize, y * tSize, tSize, tSize);
+            }
+        }
+        if (live.getProblem() != null) {
+            g.setColor(PROBLEM_COL);
+            g.fillRect(live.getStopX() * tSize, live.getStopY() * tSize, tSize, tSize);
+        }
+        // The spawn is off the map, so mark the edge cell next to it
+        int sx = Math.max(0, Math.min(gridW - 1, live.getStartX())), sy = Math.max(0, Math.min(gridH - 1,
+                live.getStartY()));
+        g.setColor(SPAWN_COL);
+        g.drawRect(sx * tSize + 2, sy * tSize + 2, tSize - 4, tSize - 4);
+        g.setColor(Color.white);
     }
 
-    void renderTowers(Graphics g) {
+    /** Draws the range circles of the tower under the mouse (or every tower), and the one being placed */
+    void renderRangeOverlays() {
+        if (!quality.showRangeOverlays()) {
+            return;
+        }
         for (Tower t : towers) {
-            t.drawSelf();
+            if ((showAllRanges || (mouseOnMap && t.isMouseOver(mouseX, mouseY)))
+                    && camera.isVisible(t.getX(), t.getY(), t.getRange(), t.getRange())) {
+                rangeOverlays.add(t);
+            }
         }
+        if (myTower != null) {
+            rangeOverlays.add(myTower);
+        }
+        rangeOverlays.flush();
     }
 
-    void renderProjectiles() {
-        for (Projectile p : projectiles) {
-            p.drawSelf();
+    /**
+     * Swaps in an edited level layout. The tower coverage is only worked out again if a
+     * wall was added or removed. Towers no longer on a wall are sold and enemies now
+     * inside a wall are removed. Call between ticks.
+     * @param level New layout. The World takes it over
+     * @param path The new layout's path, from PathTrace
+     */
+    void reloadLevel(TileMap level, float startX, float startY, PathTrace path) {
+        // Only chunks this World has loaded can have towers, enemies or coverage in them
+        boolean resized = level.getWidth() != gridW || level.getHeight() != gridH;
+        boolean wallsChanged = resized || map.wallsDiffer(level);
+        eventFlags |= TickRing.LAYOUT_CHANGED;
+        map = level;
+        gridW = level.getWidth();
+        gridH = level.getHeight();
+        alistair = new Tile(toPos(path.getEndX()), toPos(path.getEndY()), alistairDef(),
+                TILE_NAMES[PathTrace.ALISTAIR]);
+        this.startX = startX;
+        this.startY = startY;
+        this.path = path;
+        if (resized) {
+            float camX = camera.getX(), camY = camera.getY();
+            camera = new Camera(w - sidebarW, h, gridW * tSize, gridH * tSize);
+            camera.move(camX, camY);
+        }
+        if (!wallsChanged) {
+            return;
+        }
+
+        coverage = new CoverageMap(map, tSize);
+        Iterator<Tower> towerItr = towers.iterator();
+        while (towerItr.hasNext()) {
+            Tower t = towerItr.next();
+            if (map.isWall(toGrid(t.getX()), toGrid(t.getY()))) {
+                coverage.addTower(t);
+                // Its cells have changed, so let it look again
+                if (!t.getReloadTimer().isScheduled()) {
+                    readyTower(t);
+                }
+            } else {
+                towerItr.remove();
+                removeTower(t);
+            }
+        }
+        Iterator<Enemy> enemyItr = enemies.iterator();
+        while (enemyItr.hasNext()) {
+            Enemy e = enemyItr.next();
+            e.setCell(-1);
+            int x = toGrid(e.getX()), y = toGrid(e.getY());
+            if (inGridBounds(x, y) && map.isWall(x, y)) {
+                enemyItr.remove();
+                despawn(e);
+            } else {
+                enterCell(e);
+            }
         }
     }
 
+    /**
+     * Swaps in edited waves. Waves already played are left alone, and the current wave
+     * only gets the spawns that aren't due yet. Call between ticks.
+     * @param level Where the edited waves come from
+     * @param changed Which waves were edited (waves past the end of this are unchanged)
+     */
+    void reloadWaves(LevelData level, boolean[] changed) {
+        for (int i = waveNum - 1; i < level.getWaveCount(); i++) {
+            if (i < waves.size() && (i >= changed.length || !changed[i])) {
+                continue;
+            }
+            Wave wave = i == waveNum - 1 ? level.getWave(i).copyFrom(timer) : level.getWave(i).copy();
+            if (i < waves.size()) {
+                waves.set(i, wave);
+            } else {
+                waves.add(wave);
+            }
+        }
+        // Waves that were deleted from the end of the file
+        while (waves.size() > Math.max(level.getWaveCount(), waveNum - 1)) {
+            waves.remove(waves.size() - 1);
+        }
+    }
+
+    /** Frees textures made while drawing. Call when leaving the level. */
+    void destroy() {
+        rangeOverlays.destroy();
+    }
+
     /** Make alistair take damage
      * @param damage Health reduction, <=100
      * */
     void takeDamage(int damage) {
         health -= damage;
+        eventFlags |= TickRing.LEAK | (health <= 0 ? TickRing.GAME_OVER : 0);
         if (health <= 0) {
-            System.out.println("we ded");
-            AudioController.play("gameover");
+            events.onGameOver(waveNum);
+            events.onSound("gameover");
             // TODO: add handling for game overs (SEGFAULTS!)
         }
     }
 
+    private SpriteDef alistairDef() {
+        return assets.def("tiles/" + TILE_NAMES[PathTrace.ALISTAIR] + ".png");
+    }
+
     /** Converts from literal position to position on grid */
     int toGrid(float pos) {
         // Choose closest grid position
@@ -370,28 +1023,61 @@ class World {
         return x >= 0 && y >= 0 && x < gridW && y < gridH;
     }
 
-    /** Returns a grid direction to point inwards from the current position */
-    int defaultDir(int gridval) {
-        return gridval < 0 ? 1 : (gridval >= gridW ? -1 : 0);
+    /**
+     * Returns a direction to point inwards from the current position.
+     * @param val Grid or literal position on one axis
+     * @param size Size of the map on that axis, in the same units
+     */
+    int defaultDir(float val, int size) {
+        return val < 0 ? 1 : (val >= size ? -1 : 0);
     }
 
-    /** Returns a literal direction to point inwards */
-    float defaultDir(float pos) {
-        return pos < 0 ? 1 : (pos >= gridW * tSize ? -1 : 0);
+    /** Whether the level editor is open. The game doesn't run while it is */
+    boolean isEditing() {
+        return editor != null;
     }
 
     boolean isPlacingTower() {
         return myTower != null;
     }
 
-    /** Create a new projectile
-     * @param x Initial x-coord
-     * @param y Initial y-coord
-     * @param vec Initial movement vector
-     * @param im Sprite image
-     */
-    void newProjectile(float x, float y, Vector2f vec, Image im) {
-        projectiles.add(new Projectile(x, y, vec, im));
+    /** True once Alistair has run out of health */
+    boolean isGameOver() {
+        return health <= 0;
+    }
+
+    /** True once every wave has been cleared */
+    boolean isCleared() {
+        return waveNum > waves.size();
+    }
+
+    /** Add a newly fired projectile */
+    void newProjectile(Projectile p) {
+        p.setId(nextId++);
+        projectiles.add(p);
+        shotsFired++;
+        peakProjectiles = Math.max(peakProjectiles, projectiles.size());
+    }
+
+    /** Sets the simulation speed multiplier shown in the sidebar */
+    void setGameSpeed(int speed) {
+        gameSpeed = speed;
+    }
+
+    /** Times each phase of every step from now on, for getPhaseNanos */
+    void setPhaseTiming(boolean timePhases) {
+        this.timePhases = timePhases;
+    }
+
+    /** Returns the TickRing event flags for everything since last time, and clears them */
+    int takeEvents() {
+        int e = eventFlags;
+        eventFlags = 0;
+        return e;
+    }
+
+    void setQuality(QualityController quality) {
+        this.quality = quality;
     }
 
     void setWaves(ArrayList<Wave> waves) {
@@ -401,9 +1087,37 @@ class World {
     int getGridWidth() { return gridW; }
     int getGridHeight() { return gridH; }
     int getTileSize() { return tSize; }
-    Tile getTile(int x, int y) { return tiles[x][y]; }
-    int getPathXDir(int x, int y) { return path[x][y][0]; }
-    int getPathYDir(int x, int y) { return path[x][y][1]; }
+    int getHealth() { return health; }
+    /** Spawns still to come in the current wave */
+    int getSpawnsLeft() { return waveNum - 1 < waves.size() ? waves.get(waveNum - 1).getSpawnsLeft() : 0; }
+    /** Spawns in the current wave that are due but haven't happened yet */
+    int getSpawnsOverdue() { return waveNum - 1 < waves.size() ? waves.get(waveNum - 1).countDue(timer) : 0; }
+    int getWaveNum() { return waveNum; }
+    long getTicks() { return ticks; }
+    /** Time since the level started (ms) */
+    long getClock() { return clock; }
+    TimingWheel getTimers() { return timers; }
+    int[] getShooters() { return shooters; }
+    int getShooterCount() { return shooterCount; }
+    /** How long a phase (TICK_PHASE etc.) took last step (ns), if phases are being timed */
+    long getPhaseNanos(int phase) { return phaseNanos[phase]; }
+    Assets getAssets() { return assets; }
+    /** Whether a grid cell is wall. Off the map counts as wall */
+    boolean isWall(int x, int y) { return map.isWall(x, y); }
+    TileMap getMap() { return map; }
+    Camera getCamera() { return camera; }
+    /** The level editor, null when not editing */
+    LevelEditor getEditor() { return editor; }
+    int getPathXDir(int x, int y) { return path.getXDir(x, y); }
+    int getPathYDir(int x, int y) { return path.getYDir(x, y); }
     List<Enemy> getEnemies() { return Collections.unmodifiableList(enemies); }
+    /** Copies the enemies, oldest first, into an array if they fit (see List.toArray), without wrapping the list */
+    Enemy[] getEnemies(Enemy[] into) { return enemies.toArray(into); }
+    /** Counts, without wrapping the lists */
+    int getEnemyCount() { return enemies.size(); }
+    int getProjectileCount() { return projectiles.size(); }
+    int getTowerCount() { return towers.size(); }
     List<Projectile> getProjectiles() { return Collections.unmodifiableList(projectiles); }
+    List<Tower> getTowers() { return Collections.unmodifiableList(towers); }
+    CoverageMap getCoverage() { return coverage; }
 }